@@ -0,0 +1,104 @@
+package com.antidoxx.backend;
+
+import java.util.Random;
+
+/**
+ * Generates synthetic documents for the detector benchmarks.
+ * <p>
+ * A document is built line by line from filler words until it reaches the requested size.
+ * A {@code piiDensity} fraction of the lines get one planted value (email, phone, SSN,
+ * card number or IPv4 address). The {@link Shape} adds inputs that are expensive for the
+ * prefilter or the regex engine. The output is deterministic for a given seed.
+ */
+final class CorpusGenerator {
+
+    enum Shape {
+        /** Prose with the occasional number. */
+        PROSE,
+        /** Lines dominated by long digit runs that almost, but not quite, match. */
+        DIGIT_RUNS,
+        /** Lines full of '.', '-' and '@', so every category passes the prefilter. */
+        SEPARATORS,
+        /** A single line without any line break. */
+        ONE_LINE
+    }
+
+    private static final String[] WORDS = {
+        "the", "quarterly", "report", "shows", "revenue", "and", "customer", "growth",
+        "across", "all", "regions", "with", "notes", "on", "pricing", "for", "review",
+        "meeting", "agenda", "draft", "version", "update", "team", "project", "timeline"
+    };
+
+    private final Random random;
+
+    CorpusGenerator(long seed) {
+        this.random = new Random(seed);
+    }
+
+    /**
+     * @param chars      approximate document size in characters
+     * @param lineLength approximate characters per line
+     * @param piiDensity fraction of lines with one planted sensitive value
+     * @param shape      the kind of filler around the planted values
+     */
+    String generate(int chars, int lineLength, double piiDensity, Shape shape) {
+        StringBuilder document = new StringBuilder(chars + lineLength);
+        while (document.length() < chars) {
+            int lineStart = document.length();
+            int lineEnd = lineStart + Math.max(1, lineLength);
+            boolean plant = random.nextDouble() < piiDensity;
+            int plantAt = lineStart + random.nextInt(Math.max(1, lineLength));
+            while (document.length() < lineEnd && document.length() < chars) {
+                if (plant && document.length() >= plantAt) {
+                    document.append(sensitiveValue()).append(' ');
+                    plant = false;
+                }
+                appendFiller(document, shape);
+            }
+            if (shape != Shape.ONE_LINE) {
+                document.append('\n');
+            }
+        }
+        return document.toString();
+    }
+
+    private void appendFiller(StringBuilder document, Shape shape) {
+        switch (shape) {
+            case PROSE, ONE_LINE -> {
+                document.append(WORDS[random.nextInt(WORDS.length)]);
+                if (random.nextInt(20) == 0) {
+                    document.append(' ').append(random.nextInt(1000));
+                }
+                document.append(' ');
+            }
+            case DIGIT_RUNS -> {
+                // Runs of 12 or 17+ digits never form a card number, but the engine has to try
+                int run = random.nextBoolean() ? 12 : 17 + random.nextInt(64);
+                for (int i = 0; i < run; i++) {
+                    document.append((char) ('0' + random.nextInt(10)));
+                }
+                document.append(' ');
+            }
+            case SEPARATORS -> {
+                document.append(WORDS[random.nextInt(WORDS.length)]).append('.')
+                    .append(random.nextInt(100)).append('-').append(random.nextInt(100))
+                    .append(random.nextInt(4) == 0 ? "@" : "").append(' ');
+            }
+        }
+    }
+
+    private String sensitiveValue() {
+        return switch (random.nextInt(5)) {
+            case 0 -> WORDS[random.nextInt(WORDS.length)] + "." + random.nextInt(100)
+                + "@example.com";
+            case 1 -> String.format("%03d-%03d-%04d", 200 + random.nextInt(800),
+                random.nextInt(1000), random.nextInt(10000));
+            case 2 -> String.format("%03d-%02d-%04d", 100 + random.nextInt(800),
+                10 + random.nextInt(90), 1000 + random.nextInt(9000));
+            case 3 -> "4" + String.format("%015d",
+                Math.floorMod(random.nextLong(), 999_999_999_999_999L));
+            default -> (1 + random.nextInt(254)) + "." + random.nextInt(256) + "."
+                + random.nextInt(256) + "." + (1 + random.nextInt(254));
+        };
+    }
+}
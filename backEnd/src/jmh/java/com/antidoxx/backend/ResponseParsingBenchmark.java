@@ -0,0 +1,89 @@
+package com.antidoxx.backend;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import com.google.genai.types.Candidate;
+import com.google.genai.types.Content;
+import com.google.genai.types.GenerateContentResponse;
+import com.google.genai.types.Part;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+/**
+ * Cost of turning Gemini answers into findings.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class ResponseParsingBenchmark {
+
+    /**
+     * The forms Gemini answers in: the requested JSON array, the same array inside a
+     * Markdown code fence, and a bullet list that needs the fallback parser.
+     */
+    public enum AnswerForm {
+        JSON, FENCED_JSON, BULLETS
+    }
+
+    @Param({"0", "5", "50"})
+    int findings;
+
+    @Param({"JSON", "FENCED_JSON", "BULLETS"})
+    AnswerForm form;
+
+    private AnalysisService analysisService;
+    private String answer;
+    private GenerateContentResponse response;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        PipelineMetrics metrics = new PipelineMetrics(new SimpleMeterRegistry(),
+            new AnalysisCache(1 << 20, 600));
+        // Only the parsing methods are exercised, so the remaining collaborators are unused
+        DependencyGuards guards = new DependencyGuards(metrics,
+            64, 10_000, 0.5, 30_000, 16, 15_000, 0.5, 30_000);
+        analysisService = new AnalysisService(null, null, null, null, null, null, null, null,
+            null, metrics, guards, 1 << 20, 20_000, 16, false);
+
+        StringBuilder items = new StringBuilder();
+        for (int i = 0; i < findings; i++) {
+            String finding = "Email address jane.doe" + i + "@example.com found in paragraph " + i;
+            switch (form) {
+                case JSON, FENCED_JSON -> items.append(i == 0 ? "" : ", ")
+                    .append('"').append(finding).append('"');
+                case BULLETS -> items.append("- ").append(finding).append('\n');
+            }
+        }
+        answer = switch (form) {
+            case JSON -> "[" + items + "]";
+            case FENCED_JSON -> "```json\n[" + items + "]\n```";
+            case BULLETS -> findings == 0 ? "No sensitive information found." : items.toString();
+        };
+        response = GenerateContentResponse.builder()
+            .candidates(List.of(Candidate.builder()
+                .content(Content.fromParts(Part.fromText(answer)))
+                .build()))
+            .build();
+    }
+
+    @Benchmark
+    public List<String> parseGeminiResponse() {
+        return analysisService.parseGeminiResponse(answer);
+    }
+
+    @Benchmark
+    public String extractContentFromResponse() {
+        return analysisService.extractContentFromResponse(response);
+    }
+}
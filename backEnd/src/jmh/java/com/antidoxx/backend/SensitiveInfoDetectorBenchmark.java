@@ -0,0 +1,79 @@
+package com.antidoxx.backend;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * Throughput of the regex detector over synthetic documents, for the in-memory path and
+ * both file paths: the byte-level scanner (with or without the Vector API) and the
+ * streaming scanner it replaced. Documents are generated once per trial; see
+ * {@link CorpusGenerator} for the shapes.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class SensitiveInfoDetectorBenchmark {
+
+    @Param({"65536", "4194304"})
+    int documentChars;
+
+    @Param({"80", "4000"})
+    int lineLength;
+
+    @Param({"0.01", "0.2"})
+    double piiDensity;
+
+    @Param({"PROSE", "DIGIT_RUNS", "SEPARATORS", "ONE_LINE"})
+    CorpusGenerator.Shape shape;
+
+    // Only takes effect when the jdk.incubator.vector module is added, as the build does
+    @Param({"true", "false"})
+    boolean vectorScan;
+
+    private SensitiveInfoDetector detector;
+    private String document;
+    private Path documentFile;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        detector = new SensitiveInfoDetector(1 << 20, vectorScan);
+        document = new CorpusGenerator(42).generate(documentChars, lineLength, piiDensity, shape);
+        documentFile = Files.createTempFile("antidoxx-bench", ".txt");
+        Files.writeString(documentFile, document, StandardCharsets.UTF_8);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(documentFile);
+    }
+
+    @Benchmark
+    public List<String> detectString() {
+        return detector.detectSensitiveInfo(document);
+    }
+
+    @Benchmark
+    public List<String> detectPath() throws IOException {
+        return detector.detectSensitiveInfo(documentFile);
+    }
+
+    @Benchmark
+    public List<String> detectPathStreaming() throws IOException {
+        return detector.scanStreaming(documentFile).descriptions();
+    }
+}
@@ -0,0 +1,38 @@
+package com.antidoxx.backend;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Cost of sanitizing upload file names.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class StorageHandlerBenchmark {
+
+    @Param({"report.txt", "Quarterly Report (final) – v2 ✓ copy.2024.txt"})
+    String filename;
+
+    private StorageHandler storageHandler;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        storageHandler = new StorageHandler(3600, 1L << 30, 0, 0, false);
+    }
+
+    @Benchmark
+    public String sanitizeFilename() {
+        return storageHandler.sanitizeFilename(filename);
+    }
+}
@@ -0,0 +1,359 @@
+package com.antidoxx.backend;
+
+import java.awt.Color;
+import java.awt.Font;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import javax.imageio.ImageIO;
+
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * End-to-end load test. Starts {@link StubServers} in place of Gemini and OCR.space, boots
+ * the application against them on a random port, and drives it at a fixed request rate.
+ * <p>
+ * Scenarios are picked at random by weight:
+ * <ul>
+ *   <li>{@code text} - {@code GET /text-advice}</li>
+ *   <li>{@code file} - {@code POST /upload-file?scan=true} with a text file, then
+ *       {@code GET /file-advice}</li>
+ *   <li>{@code image} - {@code POST /upload-file} with a PNG, then {@code GET /file-advice},
+ *       which goes through OCR</li>
+ * </ul>
+ * The load is open-loop: scenarios start on schedule whether or not earlier ones have
+ * finished, and latency is measured from the scheduled start. A server that falls behind
+ * therefore shows up in the percentiles instead of lowering the request rate. Every
+ * request carries unique content, so the analysis and OCR caches do not hide the work.
+ * <p>
+ * Run with {@code ./gradlew loadTest}; settings are {@code -Dloadtest.*} system properties:
+ * <ul>
+ *   <li>{@code rate} (scenarios per second, 20), {@code duration-seconds} (30),
+ *       {@code warmup-seconds} (5), {@code mix} ({@code text=6,file=3,image=1}),
+ *       {@code text-chars} (1500)</li>
+ *   <li>{@code gemini.latency-ms} (400), {@code gemini.jitter-ms} (200),
+ *       {@code gemini.error-rate} (0), {@code gemini.error-status} (503), and the same four
+ *       for {@code ocr} (800, 400, 0, 503)</li>
+ *   <li>{@code app.<property>} - passed to the application, e.g.
+ *       {@code -Dloadtest.app.gemini-batch.max-items=1}</li>
+ * </ul>
+ */
+public final class LoadTestHarness {
+
+    private static final String[] WORDS = {
+        "meeting", "notes", "for", "the", "quarterly", "review", "with", "customer",
+        "feedback", "and", "follow", "up", "items", "from", "team", "project"
+    };
+    private static final String[] PII = {
+        "jane.doe@example.com", "555-123-4567", "123-45-6789", "4111 1111 1111 1111",
+        "192.168.10.24"
+    };
+
+    private final String baseUrl;
+    private final int textChars;
+    private final HttpClient client;
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final AtomicLong sequence = new AtomicLong();
+    private final Map<String, Recorder> recorders = new ConcurrentHashMap<>();
+
+    private LoadTestHarness(String baseUrl, int textChars) {
+        this.baseUrl = baseUrl;
+        this.textChars = textChars;
+        this.client = HttpClient.newBuilder()
+            .version(HttpClient.Version.HTTP_1_1)
+            .connectTimeout(Duration.ofSeconds(5))
+            .executor(Executors.newVirtualThreadPerTaskExecutor())
+            .build();
+    }
+
+    public static void main(String[] args) throws Exception {
+        double rate = Double.parseDouble(setting("rate", "20"));
+        long durationSeconds = Long.parseLong(setting("duration-seconds", "30"));
+        long warmupSeconds = Long.parseLong(setting("warmup-seconds", "5"));
+        Map<String, Integer> mix = parseMix(setting("mix", "text=6,file=3,image=1"));
+        int textChars = Integer.parseInt(setting("text-chars", "1500"));
+
+        StubServers stubs = new StubServers(faults("gemini", 400, 200), faults("ocr", 800, 400));
+        stubs.start();
+
+        Map<String, Object> appProperties = new HashMap<>();
+        appProperties.put("server.port", "0");
+        appProperties.put("gemini.base-url", stubs.geminiBaseUrl());
+        appProperties.put("gemini.api-key", "load-test");
+        appProperties.put("ocr.url", stubs.ocrUrl());
+        appProperties.put("ocr.api-key", "load-test");
+        System.getProperties().forEach((key, value) -> {
+            if (key.toString().startsWith("loadtest.app.")) {
+                appProperties.put(key.toString().substring("loadtest.app.".length()), value);
+            }
+        });
+        ConfigurableApplicationContext app = new SpringApplicationBuilder(BackEndApplication.class)
+            .properties(appProperties)
+            .run();
+        try {
+            String port = app.getEnvironment().getProperty("local.server.port");
+            LoadTestHarness harness = new LoadTestHarness("http://127.0.0.1:" + port, textChars);
+            System.out.printf("Driving %s at %.1f scenarios/s (mix %s): %ds warm-up, %ds measured%n",
+                harness.baseUrl, rate, mix, warmupSeconds, durationSeconds);
+            long measuredNanos = harness.run(rate, mix, warmupSeconds, durationSeconds);
+            harness.report(measuredNanos);
+            System.out.printf("Stubs: gemini %d requests (%d injected errors), " +
+                    "ocr %d requests (%d injected errors)%n",
+                stubs.geminiRequests.get(), stubs.geminiErrors.get(),
+                stubs.ocrRequests.get(), stubs.ocrErrors.get());
+        } finally {
+            app.close();
+            stubs.stop();
+        }
+    }
+
+    /**
+     * Starts scenarios on a fixed schedule and waits for the stragglers.
+     *
+     * @return length of the measured phase
+     */
+    private long run(double rate, Map<String, Integer> mix, long warmupSeconds,
+                     long durationSeconds) throws InterruptedException {
+        List<String> weighted = new ArrayList<>();
+        mix.forEach((scenario, weight) -> {
+            for (int i = 0; i < weight; i++) {
+                weighted.add(scenario);
+            }
+        });
+        long periodNanos = (long) (TimeUnit.SECONDS.toNanos(1) / rate);
+        long start = System.nanoTime();
+        long measureFrom = start + TimeUnit.SECONDS.toNanos(warmupSeconds);
+        long end = measureFrom + TimeUnit.SECONDS.toNanos(durationSeconds);
+        try (ExecutorService workers = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (long i = 0; ; i++) {
+                long scheduled = start + i * periodNanos;
+                if (scheduled >= end) {
+                    break;
+                }
+                long wait = scheduled - System.nanoTime();
+                if (wait > 0) {
+                    LockSupport.parkNanos(wait);
+                }
+                boolean record = scheduled >= measureFrom;
+                String scenario = weighted.get(ThreadLocalRandom.current().nextInt(weighted.size()));
+                workers.execute(() -> runScenario(scenario, scheduled, record));
+            }
+            // Closing the executor waits for the scenarios still in flight
+        }
+        return end - measureFrom;
+    }
+
+    private void runScenario(String scenario, long scheduled, boolean record) {
+        long started = System.nanoTime();
+        boolean ok;
+        try {
+            ok = switch (scenario) {
+                case "text" -> call("GET /text-advice", scheduled, record, HttpRequest.newBuilder(
+                    URI.create(baseUrl + "/text-advice?text=" + URLEncoder.encode(
+                        uniqueText(), StandardCharsets.UTF_8))).GET().build()) != null;
+                case "file" -> uploadAndAnalyze(scheduled, record, "notes.txt", "text/plain",
+                    uniqueText().getBytes(StandardCharsets.UTF_8), "?scan=true");
+                case "image" -> uploadAndAnalyze(scheduled, record, "scan.png", "image/png",
+                    uniqueImage(), "");
+                default -> throw new IllegalArgumentException("Unknown scenario: " + scenario);
+            };
+        } catch (Exception e) {
+            ok = false;
+        }
+        if (record) {
+            // The scenario as a whole, measured like its steps from the scheduled start
+            recorder("scenario " + scenario).record(System.nanoTime() - scheduled, ok);
+            recorder("scenario " + scenario + " (service time)")
+                .record(System.nanoTime() - started, ok);
+        }
+    }
+
+    private boolean uploadAndAnalyze(long scheduled, boolean record, String filename,
+                                     String contentType, byte[] content, String query)
+        throws IOException, InterruptedException {
+        String boundary = "----antidoxx-load-" + sequence.incrementAndGet();
+        ByteArrayOutputStream body = new ByteArrayOutputStream(content.length + 256);
+        body.writeBytes(("--" + boundary + "\r\n" +
+            "Content-Disposition: form-data; name=\"file\"; filename=\"" + filename + "\"\r\n" +
+            "Content-Type: " + contentType + "\r\n\r\n").getBytes(StandardCharsets.UTF_8));
+        body.writeBytes(content);
+        body.writeBytes(("\r\n--" + boundary + "--\r\n").getBytes(StandardCharsets.UTF_8));
+
+        JsonNode upload = call("POST /upload-file", scheduled, record,
+            HttpRequest.newBuilder(URI.create(baseUrl + "/upload-file" + query))
+                .header("Content-Type", "multipart/form-data; boundary=" + boundary)
+                .POST(HttpRequest.BodyPublishers.ofByteArray(body.toByteArray()))
+                .build());
+        if (upload == null || !upload.hasNonNull("filename")) {
+            return false;
+        }
+        // The analysis step is timed from when it was issued, not from the scenario start
+        return call("GET /file-advice", System.nanoTime(), record, HttpRequest.newBuilder(
+            URI.create(baseUrl + "/file-advice?filename=" + URLEncoder.encode(
+                upload.get("filename").asText(), StandardCharsets.UTF_8))).GET().build()) != null;
+    }
+
+    /**
+     * Sends a request and records its latency under {@code endpoint}.
+     *
+     * @return the JSON response, or null if the request failed
+     */
+    private JsonNode call(String endpoint, long since, boolean record, HttpRequest request)
+        throws InterruptedException {
+        JsonNode json = null;
+        try {
+            HttpResponse<byte[]> response = client.send(request,
+                HttpResponse.BodyHandlers.ofByteArray());
+            if (response.statusCode() == 200) {
+                JsonNode parsed = mapper.readTree(response.body());
+                if (parsed.path("code").asInt(-1) >= 0) {
+                    json = parsed;
+                }
+            }
+        } catch (IOException e) {
+            // Counted as an error below
+        }
+        if (record) {
+            recorder(endpoint).record(System.nanoTime() - since, json != null);
+        }
+        return json;
+    }
+
+    private String uniqueText() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        StringBuilder text = new StringBuilder(textChars + 64);
+        text.append("Load test document ").append(sequence.incrementAndGet()).append(". ");
+        while (text.length() < textChars) {
+            if (random.nextInt(40) == 0) {
+                text.append(PII[random.nextInt(PII.length)]).append(' ');
+            }
+            text.append(WORDS[random.nextInt(WORDS.length)]).append(' ');
+        }
+        return text.toString();
+    }
+
+    private byte[] uniqueImage() throws IOException {
+        BufferedImage image = new BufferedImage(640, 240, BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics = image.createGraphics();
+        try {
+            graphics.setColor(Color.WHITE);
+            graphics.fillRect(0, 0, image.getWidth(), image.getHeight());
+            graphics.setColor(Color.BLACK);
+            graphics.setFont(new Font(Font.SANS_SERIF, Font.PLAIN, 24));
+            graphics.drawString("Jane Doe  555-123-4567", 20, 80);
+            graphics.drawString("Ticket #" + sequence.incrementAndGet(), 20, 160);
+        } finally {
+            graphics.dispose();
+        }
+        ByteArrayOutputStream png = new ByteArrayOutputStream();
+        ImageIO.write(image, "png", png);
+        return png.toByteArray();
+    }
+
+    private Recorder recorder(String name) {
+        return recorders.computeIfAbsent(name, key -> new Recorder());
+    }
+
+    private void report(long measuredNanos) {
+        double seconds = measuredNanos / 1e9;
+        System.out.printf("%n%-40s %8s %7s %9s %9s %9s %9s %9s%n", "", "count", "errors",
+            "req/s", "p50 ms", "p99 ms", "p999 ms", "max ms");
+        new TreeMap<>(recorders).forEach((name, recorder) -> {
+            long[] latencies = recorder.snapshot();
+            Arrays.sort(latencies);
+            System.out.printf("%-40s %8d %7d %9.1f %9.1f %9.1f %9.1f %9.1f%n", name,
+                latencies.length, recorder.errors(), latencies.length / seconds,
+                percentile(latencies, 0.50), percentile(latencies, 0.99),
+                percentile(latencies, 0.999),
+                latencies.length == 0 ? 0.0 : latencies[latencies.length - 1] / 1e6);
+        });
+    }
+
+    private static double percentile(long[] sorted, double quantile) {
+        if (sorted.length == 0) {
+            return 0.0;
+        }
+        int index = (int) Math.ceil(quantile * sorted.length) - 1;
+        return sorted[Math.max(0, index)] / 1e6;
+    }
+
+    private static String setting(String name, String defaultValue) {
+        return System.getProperty("loadtest." + name, defaultValue);
+    }
+
+    private static StubServers.Faults faults(String stub, long latencyMillis, long jitterMillis) {
+        return new StubServers.Faults(
+            Long.parseLong(setting(stub + ".latency-ms", String.valueOf(latencyMillis))),
+            Long.parseLong(setting(stub + ".jitter-ms", String.valueOf(jitterMillis))),
+            Double.parseDouble(setting(stub + ".error-rate", "0")),
+            Integer.parseInt(setting(stub + ".error-status", "503")));
+    }
+
+    private static Map<String, Integer> parseMix(String mix) {
+        Map<String, Integer> weights = new TreeMap<>();
+        for (String entry : mix.split(",")) {
+            String[] parts = entry.trim().split("=");
+            int weight = Integer.parseInt(parts[1].trim());
+            if (weight > 0) {
+                weights.put(parts[0].trim(), weight);
+            }
+        }
+        if (weights.isEmpty()) {
+            throw new IllegalArgumentException("loadtest.mix selects no scenario: " + mix);
+        }
+        return weights;
+    }
+
+    /**
+     * Latencies of one endpoint or scenario; kept in full, so percentiles are exact.
+     */
+    private static final class Recorder {
+        private long[] latencies = new long[1024];
+        private int size;
+        private long errors;
+
+        synchronized void record(long nanos, boolean ok) {
+            if (size == latencies.length) {
+                latencies = Arrays.copyOf(latencies, size * 2);
+            }
+            latencies[size++] = nanos;
+            if (!ok) {
+                errors++;
+            }
+        }
+
+        synchronized long[] snapshot() {
+            return Arrays.copyOf(latencies, size);
+        }
+
+        synchronized long errors() {
+            return errors;
+        }
+    }
+}
@@ -0,0 +1,180 @@
+package com.antidoxx.backend;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Local stand-ins for the Gemini API and OCR.space, used by {@link LoadTestHarness}.
+ * <p>
+ * Every request waits {@code latency + random(0, jitter)} milliseconds. Then, with
+ * probability {@code errorRate}, it fails with {@code errorStatus}; otherwise it gets a
+ * canned answer in the real service's format. Each request runs on its own virtual
+ * thread, so slow answers do not queue behind each other.
+ */
+final class StubServers {
+
+    /**
+     * How a stub misbehaves.
+     */
+    record Faults(long latencyMillis, long jitterMillis, double errorRate, int errorStatus) {
+    }
+
+    private static final String OCR_RESPONSE =
+        "{\"ParsedResults\":[{\"ParsedText\":\"Jane Doe\\ncall 555-123-4567\\n\"}]," +
+            "\"OCRExitCode\":1,\"IsErroredOnProcessing\":false}";
+    private static final List<String> FINDINGS =
+        List.of("Personal name: Jane Doe", "Phone number: 555-123-4567");
+    // Items of a batched request, as they appear inside the JSON-encoded prompt text
+    private static final String BATCH_ITEM_MARKER = "\\\"id\\\"";
+
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+    private final HttpServer gemini;
+    private final HttpServer ocr;
+    private final Faults geminiFaults;
+    private final Faults ocrFaults;
+    final AtomicLong geminiRequests = new AtomicLong();
+    final AtomicLong geminiErrors = new AtomicLong();
+    final AtomicLong ocrRequests = new AtomicLong();
+    final AtomicLong ocrErrors = new AtomicLong();
+
+    StubServers(Faults geminiFaults, Faults ocrFaults) throws IOException {
+        this.geminiFaults = geminiFaults;
+        this.ocrFaults = ocrFaults;
+        gemini = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 1024);
+        gemini.createContext("/", this::handleGemini);
+        gemini.setExecutor(executor);
+        ocr = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 1024);
+        ocr.createContext("/parse/image", this::handleOcr);
+        ocr.setExecutor(executor);
+    }
+
+    void start() {
+        gemini.start();
+        ocr.start();
+    }
+
+    void stop() {
+        gemini.stop(0);
+        ocr.stop(0);
+        executor.shutdownNow();
+    }
+
+    String geminiBaseUrl() {
+        return "http://127.0.0.1:" + gemini.getAddress().getPort();
+    }
+
+    String ocrUrl() {
+        return "http://127.0.0.1:" + ocr.getAddress().getPort() + "/parse/image";
+    }
+
+    private void handleGemini(HttpExchange exchange) throws IOException {
+        geminiRequests.incrementAndGet();
+        String request = new String(exchange.getRequestBody().readAllBytes(),
+            StandardCharsets.UTF_8);
+        if (delayOrFail(exchange, geminiFaults, geminiErrors)) {
+            return;
+        }
+        String path = exchange.getRequestURI().getPath();
+        String answer = geminiAnswer(request);
+        if (path.endsWith(":streamGenerateContent")) {
+            // Server-sent events, with the answer split across two chunks
+            exchange.getResponseHeaders().add("Content-Type", "text/event-stream");
+            exchange.sendResponseHeaders(200, 0);
+            try (OutputStream out = exchange.getResponseBody()) {
+                int split = answer.length() / 2;
+                for (String chunk : List.of(answer.substring(0, split), answer.substring(split))) {
+                    out.write(("data: " + candidateJson(chunk) + "\r\n\r\n")
+                        .getBytes(StandardCharsets.UTF_8));
+                    out.flush();
+                }
+            }
+        } else if (path.endsWith(":generateContent")) {
+            respond(exchange, 200, "application/json", candidateJson(answer));
+        } else {
+            respond(exchange, 404, "application/json", "{\"error\":{\"code\":404}}");
+        }
+    }
+
+    private String geminiAnswer(String request) throws IOException {
+        int items = countOccurrences(request, BATCH_ITEM_MARKER);
+        if (items == 0) {
+            return mapper.writeValueAsString(FINDINGS);
+        }
+        Map<String, List<String>> answers = new LinkedHashMap<>();
+        for (int i = 0; i < items; i++) {
+            answers.put(String.valueOf(i), FINDINGS);
+        }
+        return mapper.writeValueAsString(answers);
+    }
+
+    private String candidateJson(String text) throws IOException {
+        return mapper.writeValueAsString(Map.of("candidates", List.of(Map.of(
+            "content", Map.of("role", "model", "parts", List.of(Map.of("text", text))),
+            "finishReason", "STOP"))));
+    }
+
+    private void handleOcr(HttpExchange exchange) throws IOException {
+        ocrRequests.incrementAndGet();
+        exchange.getRequestBody().transferTo(OutputStream.nullOutputStream());
+        if (delayOrFail(exchange, ocrFaults, ocrErrors)) {
+            return;
+        }
+        respond(exchange, 200, "application/json", OCR_RESPONSE);
+    }
+
+    /**
+     * @return whether the request was answered with an injected error
+     */
+    private boolean delayOrFail(HttpExchange exchange, Faults faults, AtomicLong errors)
+        throws IOException {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        long delay = faults.latencyMillis()
+            + (faults.jitterMillis() > 0 ? random.nextLong(faults.jitterMillis() + 1) : 0);
+        try {
+            Thread.sleep(delay);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            exchange.close();
+            return true;
+        }
+        if (random.nextDouble() < faults.errorRate()) {
+            errors.incrementAndGet();
+            respond(exchange, faults.errorStatus(), "application/json",
+                "{\"error\":{\"code\":" + faults.errorStatus() + ",\"message\":\"injected\"}}");
+            return true;
+        }
+        return false;
+    }
+
+    private static void respond(HttpExchange exchange, int status, String contentType,
+                                String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().add("Content-Type", contentType);
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    private static int countOccurrences(String text, String needle) {
+        int count = 0;
+        for (int i = text.indexOf(needle); i >= 0; i = text.indexOf(needle, i + needle.length())) {
+            count++;
+        }
+        return count;
+    }
+}
@@ -0,0 +1,74 @@
+package com.antidoxx.backend;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * AIMD (additive increase, multiplicative decrease) concurrency limit for calls to one
+ * external service.
+ * <p>
+ * Calls beyond the current limit are rejected rather than queued, so a slow service cannot
+ * tie up an unbounded number of requests. A call that fails, or takes longer than the
+ * latency threshold, cuts the limit by 10%. A call that succeeds in time, while the limit
+ * is at least half used, raises it by {@code 1 / limit}, which adds about one per round of
+ * calls. The limit stays between 1 and the configured maximum.
+ */
+final class AdaptiveLimiter {
+    private static final double BACKOFF_RATIO = 0.9;
+
+    private final int maxLimit;
+    private final long latencyThresholdNanos;
+    private double limit;
+    private int inFlight;
+
+    AdaptiveLimiter(int maxLimit, long latencyThresholdMillis) {
+        this.maxLimit = Math.max(1, maxLimit);
+        this.latencyThresholdNanos = TimeUnit.MILLISECONDS.toNanos(latencyThresholdMillis);
+        this.limit = this.maxLimit;
+    }
+
+    /**
+     * @return whether the call may proceed; if so, exactly one of {@link #onSuccess},
+     * {@link #onFailure} or {@link #onIgnore} must follow
+     */
+    synchronized boolean tryAcquire() {
+        if (inFlight >= (int) limit) {
+            return false;
+        }
+        inFlight++;
+        return true;
+    }
+
+    synchronized void onSuccess(long nanos) {
+        boolean busy = inFlight * 2 >= (int) limit;
+        inFlight--;
+        if (nanos > latencyThresholdNanos) {
+            decrease();
+        } else if (busy) {
+            limit = Math.min(maxLimit, limit + 1.0 / limit);
+        }
+    }
+
+    synchronized void onFailure() {
+        inFlight--;
+        decrease();
+    }
+
+    /**
+     * Releases a permit without judging the call, e.g. when it never reached the service.
+     */
+    synchronized void onIgnore() {
+        inFlight--;
+    }
+
+    private void decrease() {
+        limit = Math.max(1.0, limit * BACKOFF_RATIO);
+    }
+
+    synchronized int limit() {
+        return (int) limit;
+    }
+
+    synchronized int inFlight() {
+        return inFlight;
+    }
+}
@@ -0,0 +1,170 @@
+package com.antidoxx.backend;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+/**
+ * Caches complete analysis results (regex and Gemini findings) by a SHA-256 hash of the
+ * analyzed content, so a repeated document is answered without scanning it again or
+ * calling Gemini.
+ * <p>
+ * Entries are evicted least-recently-used once the total weight (roughly the characters
+ * held) exceeds {@code analysis-cache.max-weight}, and expire after
+ * {@code analysis-cache.ttl-seconds}.
+ */
+@Service
+public class AnalysisCache {
+    private static final int HASH_BUFFER_SIZE = 8 * 1024;
+    // Approximate weight of one structured finding, in characters
+    private static final int FINDING_WEIGHT = 16;
+
+    private final long maxWeight;
+    private final long ttlNanos;
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(64, 0.75f, true);
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private long weight;
+
+    private record Entry(AnalysisResult result, long weight, long storedAt) {
+    }
+
+    public AnalysisCache(@Value("${analysis-cache.max-weight:16777216}") long maxWeight,
+                         @Value("${analysis-cache.ttl-seconds:600}") long ttlSeconds) {
+        this.maxWeight = maxWeight;
+        this.ttlNanos = ttlSeconds * 1_000_000_000L;
+    }
+
+    /**
+     * @return the cached result for {@code key}, or null if absent or expired
+     */
+    public AnalysisResult get(String key) {
+        synchronized (entries) {
+            Entry entry = entries.get(key);
+            if (entry != null && System.nanoTime() - entry.storedAt() > ttlNanos) {
+                remove(key);
+                entry = null;
+            }
+            if (entry == null) {
+                misses.increment();
+                return null;
+            }
+            hits.increment();
+            return entry.result();
+        }
+    }
+
+    public void put(String key, AnalysisResult result) {
+        long entryWeight = key.length() + result.message().length() +
+            (long) result.findings().size() * FINDING_WEIGHT;
+        if (entryWeight > maxWeight) {
+            return;
+        }
+        synchronized (entries) {
+            remove(key);
+            entries.put(key, new Entry(result, entryWeight, System.nanoTime()));
+            weight += entryWeight;
+            Iterator<Entry> eldest = entries.values().iterator();
+            while (weight > maxWeight && eldest.hasNext()) {
+                weight -= eldest.next().weight();
+                eldest.remove();
+            }
+        }
+    }
+
+    private void remove(String key) {
+        Entry removed = entries.remove(key);
+        if (removed != null) {
+            weight -= removed.weight();
+        }
+    }
+
+    public long hits() {
+        return hits.sum();
+    }
+
+    public long misses() {
+        return misses.sum();
+    }
+
+    public int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    /**
+     * Builds the cache key of a piece of text analyzed as {@code contentType}.
+     */
+    public static String key(String content, String contentType) {
+        MessageDigest digest = sha256();
+        CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder()
+            .onMalformedInput(CodingErrorAction.REPLACE);
+        ByteBuffer bytes = ByteBuffer.allocate(HASH_BUFFER_SIZE);
+        CharBuffer chars = CharBuffer.wrap(content);
+        // Encode in chunks so a large paste is not copied into one big byte array
+        while (true) {
+            boolean done = !encoder.encode(chars, bytes, true).isOverflow();
+            bytes.flip();
+            digest.update(bytes);
+            bytes.clear();
+            if (done) {
+                break;
+            }
+        }
+        return key(digest, contentType);
+    }
+
+    /**
+     * Builds the cache key of text analyzed as {@code contentType} from a SHA-256 digest
+     * fed with its UTF-8 bytes, e.g. while the text was being read. Matches
+     * {@link #key(String, String)} of the same text.
+     */
+    public static String key(MessageDigest digest, String contentType) {
+        return contentType + ":" + HexFormat.of().formatHex(digest.digest());
+    }
+
+    /**
+     * Builds the cache key of a stored file analyzed as {@code contentType}.
+     */
+    public static String key(Path file, String contentType) throws IOException {
+        return contentType + ":" + contentHash(file);
+    }
+
+    /**
+     * @return the hex SHA-256 hash of the file's bytes
+     */
+    public static String contentHash(Path file) throws IOException {
+        MessageDigest digest = sha256();
+        byte[] buffer = new byte[HASH_BUFFER_SIZE];
+        try (InputStream in = Files.newInputStream(file)) {
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                digest.update(buffer, 0, read);
+            }
+        }
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+}
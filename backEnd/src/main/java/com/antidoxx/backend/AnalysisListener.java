@@ -0,0 +1,31 @@
+package com.antidoxx.backend;
+
+import java.util.List;
+
+/**
+ * Receives the stages of a streamed analysis as they complete. Callbacks are made from
+ * a single thread, in order: status updates for the slower stages before the scan (e.g.
+ * text extraction or OCR), the regex findings, then Gemini findings one by one. An image
+ * analyzed by Gemini alone has no regex stage, so only its Gemini findings follow the
+ * status updates. A callback that throws ends the analysis with that exception.
+ */
+public interface AnalysisListener {
+
+    /**
+     * Called once the regex scan is done.
+     *
+     * @param findings     the structured findings
+     * @param descriptions a readable description of each finding, in the same order
+     */
+    void onRegexFindings(List<Finding> findings, List<String> descriptions);
+
+    /**
+     * Called when a slower stage starts or finishes, e.g. OCR.
+     */
+    void onStatus(String status);
+
+    /**
+     * Called for each Gemini finding as soon as it has been received.
+     */
+    void onGeminiFinding(String finding);
+}
@@ -0,0 +1,26 @@
+package com.antidoxx.backend;
+
+import java.util.ArrayList;
+
+/**
+ * The outcome of analyzing one piece of content.
+ *
+ * @param code     the response code: 0 for a normal analysis, 1 when an image with no
+ *                 OCR text was analyzed by Gemini directly
+ * @param message  the Markdown summary shown to the user, combining regex and Gemini findings
+ * @param findings the structured regex findings
+ * @param partial  true when Gemini missed the request deadline and only regex findings
+ *                 are included
+ * @param degraded true when Gemini or OCR was unavailable (circuit open, overloaded or
+ *                 failing) and the result was produced without it
+ */
+public record AnalysisResult(int code, String message, ArrayList<Finding> findings,
+                             boolean partial, boolean degraded) {
+
+    /**
+     * @return whether every stage contributed to the result, so it may be cached
+     */
+    public boolean complete() {
+        return !partial && !degraded;
+    }
+}
@@ -0,0 +1,1105 @@
+package com.antidoxx.backend;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Consumer;
+
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.web.multipart.MultipartFile;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.genai.ResponseStream;
+import com.google.genai.types.Content;
+import com.google.genai.types.GenerateContentResponse;
+import com.google.genai.types.Part;
+
+/**
+ * The analysis pipeline behind the advice endpoints: regex detection, OCR, document text
+ * extraction and Gemini, combined into one {@link AnalysisResult}. It is independent of the servlet request so
+ * it can run on the request thread or on a background worker.
+ * <p>
+ * Gemini and OCR calls go through their {@link DependencyGuard}. When either service is
+ * unavailable or fails, the analysis goes on without it and the result is marked
+ * {@linkplain AnalysisResult#degraded() degraded}.
+ */
+@Service
+public class AnalysisService {
+    private final StorageHandler storageHandler;
+    private final SensitiveInfoDetector sensitiveInfoDetector;
+    private final Gemini gemini;
+    private final OCRService ocrService;
+    private final OCRCache ocrCache;
+    private final ImagePreprocessor imagePreprocessor;
+    private final AnalysisCache analysisCache;
+    private final GeminiBatcher geminiBatcher;
+    private final DocumentExtraction documentExtraction;
+    private final PipelineMetrics metrics;
+    private final DependencyGuard geminiGuard;
+    private final int geminiMaxTextBytes;
+    private final long analysisDeadlineMillis;
+    private final boolean deleteAfterAnalysis;
+    // Scans of recent uploads by stored file name, least recently used first
+    private final Map<String, UploadScan> uploadScans;
+    // Gemini calls only wait on the network, so each one gets its own virtual thread
+    private final ExecutorService analysisExecutor = Executors.newVirtualThreadPerTaskExecutor();
+
+    private final String TEXT_PROMPT =
+        "Please analyze the following for any personally identifiable information (PII) " +
+            "such as names, addresses, phone numbers, email addresses, social security numbers, " +
+            "credit card numbers, IP addresses, and other potentially sensitive data. " +
+            "Provide your response as a JSON array of improvements/findings. " +
+            "Each item in the array should be a brief description of the sensitive information found. " +
+            "Format: [\"finding1\", \"finding2\", \"finding3\"] " +
+            "If no sensitive information is found, return an empty array: [] " +
+            "ONLY return the JSON array, no other text or explanation.";
+
+    private static final Logger logger = LoggerFactory.getLogger(AnalysisService.class);
+
+    // Parts of a document that could not be scanned are listed up to this many
+    private static final int MAX_SKIPPED_SHOWN = 10;
+    private static final int BODY_BUFFER_BYTES = 64 * 1024;
+
+    // Marks the end of a streamed Gemini answer in the findings queue
+    private static final String END_OF_FINDINGS = new String("end of findings");
+
+    /**
+     * What was learned about an upload while it was being stored.
+     *
+     * @param contentHash hex SHA-256 of the file
+     * @param findings    regex findings, or null if the file was not scanned as text
+     */
+    private record UploadScan(String contentHash, Findings findings) {
+    }
+
+    /**
+     * A stored upload and the regex findings produced while storing it.
+     *
+     * @param path     where the file was stored
+     * @param findings the findings, or null if the upload is not a text file
+     */
+    public record ScannedUpload(Path path, ArrayList<Finding> findings) {
+    }
+
+    /**
+     * A regex scan to run while Gemini is working.
+     */
+    @FunctionalInterface
+    private interface RegexScan {
+        Findings scan() throws IOException;
+    }
+
+    public AnalysisService(StorageHandler storageHandler,
+                           SensitiveInfoDetector sensitiveInfoDetector,
+                           Gemini gemini,
+                           OCRService ocrService,
+                           OCRCache ocrCache,
+                           ImagePreprocessor imagePreprocessor,
+                           AnalysisCache analysisCache,
+                           GeminiBatcher geminiBatcher,
+                           DocumentExtraction documentExtraction,
+                           PipelineMetrics metrics,
+                           DependencyGuards guards,
+                           @Value("${gemini.max-text-bytes:1048576}") int geminiMaxTextBytes,
+                           @Value("${analysis.deadline-ms:20000}") long analysisDeadlineMillis,
+                           @Value("${upload-scan.max-entries:256}") int uploadScanMaxEntries,
+                           @Value("${storage.delete-after-analysis:false}") boolean deleteAfterAnalysis) {
+        this.storageHandler = storageHandler;
+        this.sensitiveInfoDetector = sensitiveInfoDetector;
+        this.gemini = gemini;
+        this.ocrService = ocrService;
+        this.ocrCache = ocrCache;
+        this.imagePreprocessor = imagePreprocessor;
+        this.analysisCache = analysisCache;
+        this.geminiBatcher = geminiBatcher;
+        this.documentExtraction = documentExtraction;
+        this.metrics = metrics;
+        this.geminiGuard = guards.gemini();
+        this.geminiMaxTextBytes = geminiMaxTextBytes;
+        this.analysisDeadlineMillis = analysisDeadlineMillis;
+        this.deleteAfterAnalysis = deleteAfterAnalysis;
+        this.uploadScans = new LinkedHashMap<>(64, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, UploadScan> eldest) {
+                return size() > uploadScanMaxEntries;
+            }
+        };
+    }
+
+    /**
+     * Analyzes raw text submitted by the user.
+     *
+     * @param input the text to analyze
+     * @return the combined regex and Gemini analysis
+     */
+    public AnalysisResult analyzeText(String input) {
+        return analyzeContent(input, "text input", deadline());
+    }
+
+    /**
+     * Analyzes raw text read from a request body, scanning it as it arrives instead of
+     * reading it into one string first. Gemini sees the first {@code gemini.max-text-bytes}
+     * of it, cut at a character boundary, and starts on them as soon as they have arrived.
+     * Lines end at "\n" only, as in {@link #analyzeText(String)}, so the regex findings and
+     * the cache key are the same as for that text. A body Gemini saw in full gets the same
+     * result; a longer one is answered from the cache but never cached, since Gemini only
+     * saw its beginning.
+     *
+     * @param body the UTF-8 text, already decompressed
+     * @return the combined regex and Gemini analysis
+     * @throws IOException If the body cannot be read or is not valid UTF-8.
+     */
+    public AnalysisResult analyzeText(InputStream body) throws IOException {
+        MessageDigest digest = AnalysisCache.sha256();
+        Findings findings = new Findings();
+        StreamingScan scan =
+            new StreamingScan(findings, StreamingScan.DEFAULT_WINDOW_CHARS, true);
+        ByteArrayOutputStream geminiContent = new ByteArrayOutputStream();
+        Future<List<String>> geminiFindings = null;
+        byte[] buffer = new byte[BODY_BUFFER_BYTES];
+        long size = 0;
+        long deadline = deadline();
+        long start = System.nanoTime();
+        try {
+            for (int read; (read = body.read(buffer)) >= 0; ) {
+                digest.update(buffer, 0, read);
+                scan.feed(ByteBuffer.wrap(buffer, 0, read));
+                size += read;
+                if (geminiFindings == null) {
+                    geminiContent.write(buffer, 0,
+                        Math.min(read, geminiMaxTextBytes - geminiContent.size()));
+                    if (geminiContent.size() == geminiMaxTextBytes) {
+                        geminiFindings = submitGeminiAnalysis(utf8Prefix(geminiContent));
+                    }
+                }
+            }
+            scan.finish();
+        } catch (IOException | RuntimeException e) {
+            if (geminiFindings != null) {
+                geminiFindings.cancel(true);
+            }
+            metrics.error("text-body");
+            throw e;
+        } finally {
+            metrics.record("text-body", System.nanoTime() - start);
+        }
+        findings.addCategoryNanos(scan.categoryNanos());
+        metrics.recordScan(findings, "text", size);
+
+        String cacheKey = AnalysisCache.key(digest, "text input");
+        AnalysisResult cached = analysisCache.get(cacheKey);
+        if (cached != null) {
+            if (geminiFindings != null) {
+                geminiFindings.cancel(true);
+            }
+            return cached;
+        }
+        if (geminiFindings == null) {
+            geminiFindings = submitGeminiAnalysis(utf8Prefix(geminiContent));
+        }
+        AnalysisResult result =
+            combineFindings(findings, geminiFindings, "text input", deadline);
+        if (result.complete() && size <= geminiMaxTextBytes) {
+            analysisCache.put(cacheKey, result);
+        }
+        return result;
+    }
+
+    /**
+     * Decodes UTF-8 bytes that may end in the middle of a character, leaving that
+     * character out rather than replacing it.
+     */
+    static String utf8Prefix(ByteArrayOutputStream bytes) {
+        byte[] content = bytes.toByteArray();
+        int end = content.length;
+        // Back up over the continuation bytes to the start of the last character
+        int lead = end;
+        while (lead > 0 && end - lead < 3 && (content[lead - 1] & 0xC0) == 0x80) {
+            lead--;
+        }
+        if (lead > 0) {
+            int first = content[lead - 1] & 0xFF;
+            int length = first < 0x80 ? 1 : first >= 0xF0 ? 4 : first >= 0xE0 ? 3 : 2;
+            if (lead - 1 + length > end) {
+                end = lead - 1;
+            }
+        }
+        return new String(content, 0, end, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Stores an upload, hashing it and, for text files, running the regex scan on the
+     * bytes as they are written. A later {@link #analyzeFile} of the same file reuses both
+     * instead of reading the file again.
+     *
+     * @param file   the uploaded file
+     * @param logger the caller's logger, as for {@link StorageHandler#storeFile}
+     * @return the stored file and its regex findings
+     * @throws IOException If the file cannot be stored.
+     */
+    public ScannedUpload storeAndScan(MultipartFile file, Logger logger) throws IOException {
+        MessageDigest digest = AnalysisCache.sha256();
+        // Probe the type the way /file-advice will, from the stored name rather than the
+        // Content-Type the client sent, so both take the same text path
+        String contentType = probeMimeType(
+            Path.of(storageHandler.sanitizeFilename(file.getOriginalFilename())));
+        Findings findings =
+            contentType != null && contentType.contains("text") ? new Findings() : null;
+        StreamingScan scan = findings != null ? new StreamingScan(findings) : null;
+        boolean[] scanning = {scan != null};
+
+        Path storedFilePath = storageHandler.storeFile(file, logger, chunk -> {
+            if (scanning[0]) {
+                try {
+                    scan.feed(chunk.duplicate());
+                } catch (CharacterCodingException e) {
+                    // Not UTF-8 after all; /file-advice will report it when it reads the file
+                    scanning[0] = false;
+                }
+            }
+            digest.update(chunk);
+        });
+        if (scanning[0]) {
+            try {
+                scan.finish();
+                findings.addCategoryNanos(scan.categoryNanos());
+                metrics.recordScan(findings, "file", file.getSize());
+            } catch (CharacterCodingException e) {
+                scanning[0] = false;
+            }
+        }
+
+        Findings scanned = scanning[0] ? findings : null;
+        synchronized (uploadScans) {
+            uploadScans.put(storedFilePath.getFileName().toString(),
+                new UploadScan(HexFormat.of().formatHex(digest.digest()), scanned));
+        }
+        return new ScannedUpload(storedFilePath, scanned != null ? scanned.toList() : null);
+    }
+
+    private UploadScan uploadScan(String filename) {
+        synchronized (uploadScans) {
+            return uploadScans.get(filename);
+        }
+    }
+
+    private String probeMimeType(Path filePath) throws IOException {
+        return metrics.time("mime-probe", () -> storageHandler.mimeType(filePath));
+    }
+
+    private Findings scanText(String content) {
+        Findings findings = metrics.time("regex", () -> sensitiveInfoDetector.scan(content));
+        metrics.recordScan(findings, "text", content.length());
+        return findings;
+    }
+
+    private Findings scanFile(Path filePath) throws IOException {
+        Findings findings = metrics.time("regex", () -> sensitiveInfoDetector.scan(filePath));
+        metrics.recordScan(findings, "file", Files.size(filePath));
+        return findings;
+    }
+
+    /**
+     * Returns the content hash of an upload, computing it only if it was not already
+     * hashed while being stored.
+     */
+    private String contentHash(String filename, Path filePath, UploadScan uploadScan)
+        throws IOException {
+        if (uploadScan != null) {
+            return uploadScan.contentHash();
+        }
+        String knownHash = storageHandler.knownContentHash(filename);
+        return knownHash != null ? knownHash : AnalysisCache.contentHash(filePath);
+    }
+
+    /**
+     * Finds an upload kept on disk.
+     *
+     * @throws NoSuchFileException If there is no such upload, e.g. because it expired.
+     */
+    private Path storedFile(String filename) throws IOException {
+        Path filePath = storageHandler.fetchFile(filename);
+        if (filePath == null) {
+            throw new NoSuchFileException(filename, null, "no such upload, or it has expired");
+        }
+        return filePath;
+    }
+
+    /**
+     * Forgets an upload once it has been analyzed, unless uploads are kept for repeated
+     * analysis.
+     */
+    private void releaseUpload(String filename) {
+        if (!deleteAfterAnalysis) {
+            return;
+        }
+        synchronized (uploadScans) {
+            uploadScans.remove(filename);
+        }
+        try {
+            storageHandler.deleteFile(filename);
+        } catch (IOException e) {
+            logger.warn("Cannot delete analyzed upload {}: {}", filename, e.getMessage());
+        }
+    }
+
+    /**
+     * Analyzes a previously uploaded file: text files are scanned directly, documents
+     * (PDF, DOCX, ZIP) are scanned as their text is extracted, and images go through OCR
+     * first and fall back to Gemini's own image analysis when OCR finds no text.
+     *
+     * @param filename the stored file name returned by the upload endpoint
+     * @return the combined analysis
+     * @throws IOException If the file cannot be read.
+     * @throws UnsupportedFileTypeException If the file is not text, a supported document
+     *     or an image.
+     */
+    public AnalysisResult analyzeFile(String filename) throws IOException {
+        long deadline = deadline();
+        byte[] inMemory = storageHandler.fetchInMemory(filename);
+        if (inMemory != null) {
+            // Small text uploads never touch the disk
+            AnalysisResult analysisResult = analyzeContent(
+                new String(inMemory, StandardCharsets.UTF_8), "text file", deadline);
+            logger.info("Analyzed in-memory text file: {}", filename);
+            releaseUpload(filename);
+            return analysisResult;
+        }
+        Path filePath = storedFile(filename);
+        String mimeType = probeMimeType(filePath);
+        DocumentExtractor extractor = documentExtraction.extractorFor(mimeType, filename);
+        UploadScan uploadScan = uploadScan(filename);
+        String contentHash = null;
+        AnalysisResult analysisResult = null;
+        String cacheKey = null;
+        if (mimeType != null || extractor != null) {
+            contentHash = contentHash(filename, filePath, uploadScan);
+            cacheKey = mimeType + ":" + contentHash;
+            analysisResult = analysisCache.get(cacheKey);
+        }
+
+        boolean cached = analysisResult != null;
+
+        if (cached) {
+            logger.info("Returning cached analysis for file: {}", filename);
+        } else if (extractor != null) {
+            analysisResult = analyzeDocument(filePath, extractor, deadline);
+            logger.info("Analyzed document: {}", filename);
+        } else if (mimeType == null) {
+            logger.error("Unknown file type for file: {}", filename);
+            throw new UnsupportedFileTypeException(null);
+        } else if (mimeType.contains("text")) {
+            analysisResult = analyzeTextFile(filePath, "text file",
+                uploadScan != null ? uploadScan.findings() : null, deadline);
+            logger.info("Analyzed text file: {}", filename);
+        } else if (mimeType.contains("image")) {
+            // Use OCR to extract text from image, then analyze the text
+            String extractedText = tryExtractImageText(filePath, contentHash);
+            if (extractedText != null && !extractedText.trim().isEmpty()) {
+                analysisResult = analyzeContent(extractedText, "image text", deadline);
+                logger.info("Analyzed image file with OCR: {}", filename);
+            } else {
+                // Analyze image directly with Gemini
+                analysisResult = analyzeImageDirectly(filePath, extractedText == null,
+                    finding -> { });
+                logger.info("Analyzed image file directly: {}", filename);
+            }
+        } else {
+            logger.error("Unsupported file type: {} for file: {}", mimeType, filename);
+            throw new UnsupportedFileTypeException(mimeType);
+        }
+
+        if (!cached && analysisResult.complete()) {
+            analysisCache.put(cacheKey, analysisResult);
+        }
+        releaseUpload(filename);
+        return analysisResult;
+    }
+
+    /**
+     * Streamed variant of {@link #analyzeText}: runs in the background and reports each
+     * stage to {@code listener} as soon as it completes.
+     *
+     * @param input    the text to analyze
+     * @param listener receives the intermediate results
+     * @return the final analysis, the same as {@link #analyzeText} would return
+     */
+    public CompletableFuture<AnalysisResult> streamText(String input, AnalysisListener listener) {
+        long deadline = deadline();
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return streamContent(input, "text input", listener, deadline);
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+        }, analysisExecutor);
+    }
+
+    /**
+     * Streamed variant of {@link #analyzeFile}: runs in the background and reports each
+     * stage to {@code listener} as soon as it completes. The future fails with the same
+     * exceptions {@link #analyzeFile} throws.
+     *
+     * @param filename the stored file name returned by the upload endpoint
+     * @param listener receives the intermediate results
+     * @return the final analysis
+     */
+    public CompletableFuture<AnalysisResult> streamFile(String filename,
+                                                        AnalysisListener listener) {
+        long deadline = deadline();
+        CompletableFuture<AnalysisResult> future = new CompletableFuture<>();
+        analysisExecutor.execute(() -> {
+            try {
+                future.complete(streamFileAnalysis(filename, listener, deadline));
+            } catch (Throwable e) {
+                future.completeExceptionally(e);
+            }
+        });
+        return future;
+    }
+
+    private AnalysisResult streamFileAnalysis(String filename, AnalysisListener listener,
+                                              long deadline) throws IOException {
+        byte[] inMemory = storageHandler.fetchInMemory(filename);
+        if (inMemory != null) {
+            AnalysisResult analysisResult = streamContent(
+                new String(inMemory, StandardCharsets.UTF_8), "text file", listener, deadline);
+            releaseUpload(filename);
+            return analysisResult;
+        }
+        Path filePath = storedFile(filename);
+        String mimeType = probeMimeType(filePath);
+        DocumentExtractor extractor = documentExtraction.extractorFor(mimeType, filename);
+        if (extractor == null && (mimeType == null
+            || !(mimeType.contains("text") || mimeType.contains("image")))) {
+            logger.error("Unsupported file type: {} for file: {}", mimeType, filename);
+            throw new UnsupportedFileTypeException(mimeType);
+        }
+        UploadScan uploadScan = uploadScan(filename);
+        String contentHash = contentHash(filename, filePath, uploadScan);
+        String cacheKey = mimeType + ":" + contentHash;
+        AnalysisResult analysisResult = analysisCache.get(cacheKey);
+        if (analysisResult != null) {
+            logger.info("Returning cached analysis for file: {}", filename);
+            releaseUpload(filename);
+            return analysisResult;
+        }
+
+        if (extractor != null) {
+            listener.onStatus("Extracting text from document");
+            DocumentExtraction.Result extracted = extractDocument(filePath, extractor);
+            analysisResult = withExtractionNotes(streamFindings(extracted.text(),
+                extracted::findings, "document", listener, deadline), extracted);
+        } else if (mimeType.contains("text")) {
+            String geminiContent = storageHandler.readFilePrefix(filePath, geminiMaxTextBytes);
+            Findings prescanned = uploadScan != null ? uploadScan.findings() : null;
+            analysisResult = streamFindings(geminiContent,
+                () -> prescanned != null ? prescanned : scanFile(filePath),
+                "text file", listener, deadline);
+        } else {
+            listener.onStatus("Extracting text from image");
+            String extractedText = tryExtractImageText(filePath, contentHash);
+            if (extractedText != null && !extractedText.trim().isEmpty()) {
+                listener.onStatus("Extracted " + extractedText.length() + " characters from image");
+                analysisResult = streamContent(extractedText, "image text", listener, deadline);
+            } else {
+                // Without text there is nothing to stream; analyze the image in one call
+                listener.onStatus(extractedText == null
+                    ? "Text extraction unavailable, analyzing the image directly"
+                    : "No text found in image, analyzing the image directly");
+                analysisResult = analyzeImageDirectly(filePath, extractedText == null,
+                    listener::onGeminiFinding);
+            }
+        }
+
+        if (analysisResult.complete()) {
+            analysisCache.put(cacheKey, analysisResult);
+        }
+        releaseUpload(filename);
+        return analysisResult;
+    }
+
+    private AnalysisResult streamContent(String content, String contentType,
+                                         AnalysisListener listener, long deadline)
+        throws IOException {
+        String cacheKey = AnalysisCache.key(content, contentType);
+        AnalysisResult cached = analysisCache.get(cacheKey);
+        if (cached != null) {
+            return cached;
+        }
+        AnalysisResult result = streamFindings(content,
+            () -> scanText(content), contentType, listener, deadline);
+        if (result.complete()) {
+            analysisCache.put(cacheKey, result);
+        }
+        return result;
+    }
+
+    /**
+     * Streams Gemini's answer while the regex scan runs, then reports the regex findings
+     * followed by each Gemini finding as it arrives. Gemini findings received before the
+     * regex scan finishes are queued, so the listener always sees the stages in order.
+     * The request deadline applies as in {@link #combineFindings}.
+     */
+    private AnalysisResult streamFindings(String geminiContent, RegexScan regexScan,
+                                          String contentType, AnalysisListener listener,
+                                          long deadline) throws IOException {
+        BlockingQueue<String> pending = new LinkedBlockingQueue<>();
+        Future<?> geminiStream = analysisExecutor.submit(() -> {
+            try {
+                geminiGuard.call(() -> metrics.time("gemini-stream", () -> {
+                    streamGeminiFindings(geminiContent, pending);
+                    return null;
+                }));
+            } finally {
+                pending.add(END_OF_FINDINGS);
+            }
+            return null;
+        });
+
+        // Whatever ends this method early, including a listener that throws, the Gemini
+        // stream must not keep running on its own
+        try {
+            Findings sensitiveItems = regexScan.scan();
+            listener.onRegexFindings(sensitiveItems.toList(), sensitiveItems.descriptions());
+
+            List<String> geminiFindings = new ArrayList<>();
+            boolean partial = false;
+            boolean degraded = false;
+            try {
+                while (true) {
+                    String finding =
+                        pending.poll(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+                    if (finding == null) {
+                        logger.warn("Gemini analysis missed the {} ms deadline, returning findings so far",
+                            analysisDeadlineMillis);
+                        metrics.fallback("gemini-deadline");
+                        partial = true;
+                        break;
+                    }
+                    if (finding == END_OF_FINDINGS) {
+                        geminiStream.get();
+                        break;
+                    }
+                    geminiFindings.add(finding);
+                    listener.onGeminiFinding(finding);
+                }
+            } catch (ExecutionException e) {
+                // Findings streamed before the failure are kept
+                degraded = geminiUnavailable(e);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while waiting for Gemini analysis", e);
+            }
+            return renderResult(sensitiveItems, geminiFindings, contentType, partial, degraded);
+        } finally {
+            if (!geminiStream.isDone()) {
+                geminiStream.cancel(true);
+            }
+        }
+    }
+
+    private void streamGeminiFindings(String content, BlockingQueue<String> findings) {
+        Content data = Content.fromParts(Part.fromBytes(content.getBytes(), "text/markdown"));
+        Content[] contentArr = {data, Content.fromParts(Part.fromText(TEXT_PROMPT))};
+        GeminiFindingParser parser = new GeminiFindingParser();
+        try (ResponseStream<GenerateContentResponse> stream = gemini.getGemini().models
+            .generateContentStream("gemini-2.5-flash", Arrays.asList(contentArr), null)) {
+            for (GenerateContentResponse chunk : stream) {
+                if (Thread.currentThread().isInterrupted()) {
+                    return;
+                }
+                String text = chunk.text();
+                if (text != null) {
+                    findings.addAll(parser.accept(text));
+                }
+            }
+        }
+        findings.addAll(parser.finish(this::parseGeminiResponse));
+    }
+
+    /**
+     * Runs OCR on a preprocessed copy of an image unless the same image has been read
+     * before. Empty results are not cached, since OCR failures also come back empty.
+     */
+    private String extractImageText(Path filePath, String imageHash) throws IOException {
+        String text = ocrCache.get(imageHash);
+        metrics.cacheLookup("ocr", text != null);
+        if (text != null) {
+            logger.info("Using cached OCR text for image: {}", filePath.getFileName());
+            return text;
+        }
+        Path prepared = metrics.time("image-preprocess", () -> imagePreprocessor.prepare(filePath));
+        try {
+            text = metrics.time("ocr", () -> ocrService.extractTextFromImage(prepared.toFile()));
+        } finally {
+            imagePreprocessor.release(filePath, prepared);
+        }
+        if (!text.isEmpty()) {
+            ocrCache.put(imageHash, text);
+        }
+        return text;
+    }
+
+    /**
+     * Like {@link #extractImageText}, but returns null instead of failing when OCR is
+     * unavailable.
+     */
+    private String tryExtractImageText(Path filePath, String imageHash) throws IOException {
+        try {
+            return extractImageText(filePath, imageHash);
+        } catch (DependencyUnavailableException e) {
+            logger.warn("{}, analyzing the image with Gemini only", e.getMessage());
+            metrics.fallback("ocr-unavailable");
+            return null;
+        }
+    }
+
+    /**
+     * Analyzes an image with Gemini alone, when OCR found no text in it or, if
+     * {@code ocrUnavailable}, could not be asked. If Gemini fails as well, the result only
+     * says that the image could not be analyzed.
+     *
+     * @param onFinding receives each Gemini finding
+     */
+    private AnalysisResult analyzeImageDirectly(Path filePath, boolean ocrUnavailable,
+                                                Consumer<String> onFinding) throws IOException {
+        if (!ocrUnavailable) {
+            metrics.fallback("ocr-no-text");
+        }
+        List<String> geminiFindings;
+        try {
+            geminiFindings = parseGeminiResponse(analyzeImageWithGemini(filePath));
+        } catch (RuntimeException e) {
+            logger.warn("Gemini image analysis failed: {}", e.getMessage());
+            metrics.fallback("gemini-unavailable");
+            return new AnalysisResult(1, "**Image could not be analyzed**\n\n" +
+                "Image analysis is temporarily unavailable. Please try again later.",
+                new ArrayList<>(), false, true);
+        }
+        geminiFindings.forEach(onFinding);
+        String message = renderImageMessage(geminiFindings);
+        if (ocrUnavailable) {
+            message += "\n\n*Text extraction is temporarily unavailable; " +
+                "this result comes from AI image analysis alone.*";
+        }
+        return new AnalysisResult(1, message, new ArrayList<>(), false, ocrUnavailable);
+    }
+
+    private String renderImageMessage(List<String> geminiFindings) {
+        metrics.recordGeminiFindings(geminiFindings.size());
+        StringBuilder result = new StringBuilder();
+        if (!geminiFindings.isEmpty()) {
+            result.append("**SENSITIVE INFORMATION DETECTED IN IMAGE**\n\n");
+            result.append("The following sensitive information was found in the image:\n\n");
+            for (String item : geminiFindings) {
+                result.append("- ").append(item).append("\n");
+            }
+        } else {
+            result.append("**No sensitive information detected**\n\n");
+            result.append("The image appears to be clear of personally identifiable information.");
+        }
+        return result.toString();
+    }
+
+    private String analyzeWithGemini(Content data) {
+        Content[] contentArr = {data, Content.fromParts(Part.fromText(TEXT_PROMPT))};
+        var response = geminiGuard.call(() -> metrics.time("gemini", () -> gemini.getGemini()
+            .models.generateContent("gemini-2.5-flash", Arrays.asList(contentArr), null)));
+        return extractContentFromResponse(response);
+    }
+
+    private String analyzeTextWithGemini(String content) {
+        Content data = Content.fromParts(Part.fromBytes(content.getBytes(), "text/markdown"));
+        return analyzeWithGemini(data);
+    }
+
+    private String analyzeImageWithGemini(Path filePath) throws IOException {
+        Path prepared = metrics.time("image-preprocess", () -> imagePreprocessor.prepare(filePath));
+        try {
+            byte[] imageBytes = Files.readAllBytes(prepared);
+            String mimeType = prepared.equals(filePath)
+                ? storageHandler.mimeType(filePath) : "image/jpeg";
+            Content data = Content.fromParts(Part.fromBytes(imageBytes, mimeType));
+            return analyzeWithGemini(data);
+        } finally {
+            imagePreprocessor.release(filePath, prepared);
+        }
+    }
+
+    String extractContentFromResponse(GenerateContentResponse response) {
+        if (response == null) {
+            return "No analysis available.";
+        }
+
+        try {
+
+            // Extract text content from the response by parsing the string representation
+            String responseStr = response.text();
+
+            // Find the text content in the response string
+            // This is a simple approach to extract the actual content from the response
+            if (responseStr.contains("text=")) {
+                int startIndex = responseStr.indexOf("text=") + 5;
+                int endIndex = responseStr.indexOf("}", startIndex);
+                if (endIndex == -1) {
+                    endIndex = responseStr.length();
+                }
+                String content = responseStr.substring(startIndex, endIndex);
+                // Clean up the extracted content
+                content = content.replaceAll("^[\"']|[\"']$", ""); // Remove quotes
+                return content.trim();
+            }
+
+            while (responseStr.contains("Optional[")) {
+                int begin = responseStr.lastIndexOf("Optional[");
+                int end = responseStr.indexOf("]", begin);
+                responseStr = responseStr.substring(begin + 9, end);
+            }
+
+            logger.info("Response Body: " + responseStr);
+
+            return responseStr.trim();
+        } catch (Exception e) {
+            logger.warn("Error extracting content from response: {}", e.getMessage());
+            return response.toString();
+        }
+    }
+
+    /**
+     * Parses the Gemini response to extract a list of improvements/findings
+     * Expects a JSON array format from Gemini
+     */
+    List<String> parseGeminiResponse(String geminiResponse) {
+        long start = System.nanoTime();
+        List<String> improvements = new ArrayList<>();
+        
+        try {
+            // Clean up the response - remove markdown code blocks if present
+            String cleanResponse = geminiResponse.trim();
+            if (cleanResponse.startsWith("```json")) {
+                cleanResponse = cleanResponse.substring(7);
+            }
+            if (cleanResponse.startsWith("```")) {
+                cleanResponse = cleanResponse.substring(3);
+            }
+            if (cleanResponse.endsWith("```")) {
+                cleanResponse = cleanResponse.substring(0, cleanResponse.length() - 3);
+            }
+            cleanResponse = cleanResponse.trim();
+            
+            // Parse the JSON array
+            ObjectMapper mapper = new ObjectMapper();
+            improvements = mapper.readValue(cleanResponse, new TypeReference<List<String>>() {});
+            
+            logger.info("Successfully parsed {} improvements from Gemini response", improvements.size());
+        } catch (Exception e) {
+            logger.warn("Error parsing Gemini response as JSON: {}. Attempting fallback parsing.", e.getMessage());
+            metrics.fallback("gemini-unstructured-response");
+            
+            // Fallback: try to extract improvements from text format
+            String[] lines = geminiResponse.split("\n");
+            for (String line : lines) {
+                line = line.trim();
+                // Look for lines that start with bullets or numbers
+                if (line.matches("^[•\\-*]\\s+.*") || line.matches("^\\d+\\.\\s+.*")) {
+                    String improvement = line.replaceFirst("^[•\\-*\\d.]+\\s+", "").trim();
+                    if (!improvement.isEmpty()) {
+                        improvements.add(improvement);
+                    }
+                }
+            }
+            
+            // If still empty, return the raw response as a single item
+            if (improvements.isEmpty() && !geminiResponse.trim().isEmpty()) {
+                improvements.add(geminiResponse.trim());
+            }
+        }
+        
+        metrics.record("gemini-parse", System.nanoTime() - start);
+        return improvements;
+    }
+
+    private AnalysisResult analyzeContent(String content, String contentType, long deadline) {
+        String cacheKey = AnalysisCache.key(content, contentType);
+        AnalysisResult cached = analysisCache.get(cacheKey);
+        if (cached != null) {
+            return cached;
+        }
+
+        // Start the AI analysis, then check for sensitive information locally meanwhile
+        Future<List<String>> geminiFindings = submitGeminiAnalysis(content);
+        Findings sensitiveItems = scanText(content);
+        AnalysisResult result =
+            combineFindings(sensitiveItems, geminiFindings, contentType, deadline);
+        if (result.complete()) {
+            analysisCache.put(cacheKey, result);
+        }
+        return result;
+    }
+
+    /**
+     * Analyzes a stored text file without loading it: the regex pass streams the file,
+     * unless it was already scanned during the upload, and Gemini only sees the first
+     * {@code gemini.max-text-bytes} of it.
+     */
+    private AnalysisResult analyzeTextFile(Path filePath, String contentType,
+                                           Findings prescanned, long deadline)
+        throws IOException {
+        String geminiContent = storageHandler.readFilePrefix(filePath, geminiMaxTextBytes);
+        Future<List<String>> geminiFindings = submitGeminiAnalysis(geminiContent);
+        Findings sensitiveItems;
+        try {
+            sensitiveItems = prescanned != null ? prescanned : scanFile(filePath);
+        } catch (IOException e) {
+            geminiFindings.cancel(true);
+            throw e;
+        }
+        return combineFindings(sensitiveItems, geminiFindings, contentType, deadline);
+    }
+
+    /**
+     * Analyzes a document: its text is extracted and scanned part by part, then Gemini
+     * analyzes the first {@code gemini.max-text-bytes} characters of it.
+     */
+    private AnalysisResult analyzeDocument(Path filePath, DocumentExtractor extractor,
+                                           long deadline) throws IOException {
+        DocumentExtraction.Result extracted = extractDocument(filePath, extractor);
+        AnalysisResult result = combineFindings(extracted.findings(),
+            submitGeminiAnalysis(extracted.text()), "document", deadline);
+        return withExtractionNotes(result, extracted);
+    }
+
+    private DocumentExtraction.Result extractDocument(Path filePath, DocumentExtractor extractor)
+        throws IOException {
+        DocumentExtraction.Result extracted = metrics.time("extract",
+            () -> documentExtraction.extract(filePath, extractor, geminiMaxTextBytes));
+        metrics.recordScan(extracted.findings(), "document", Files.size(filePath));
+        if (extracted.ocrUnavailablePages() > 0) {
+            logger.warn("OCR unavailable, {} image-only pages of {} were not scanned",
+                extracted.ocrUnavailablePages(), filePath.getFileName());
+            metrics.fallback("ocr-unavailable");
+        }
+        return extracted;
+    }
+
+    /**
+     * Tells the user what could not be scanned in a document. Image-only pages left
+     * unread because OCR was unavailable make the result degraded.
+     */
+    private AnalysisResult withExtractionNotes(AnalysisResult result,
+                                               DocumentExtraction.Result extracted) {
+        List<String> skipped = extracted.skipped();
+        int ocrUnavailablePages = extracted.ocrUnavailablePages();
+        if (skipped.isEmpty() && !extracted.truncated() && ocrUnavailablePages == 0) {
+            return result;
+        }
+        StringBuilder message = new StringBuilder(result.message());
+        if (extracted.truncated()) {
+            message.append("\n\n*The document is too large to scan completely; " +
+                "only its beginning was scanned.*");
+        }
+        if (ocrUnavailablePages > 0) {
+            message.append("\n\n*Text extraction is temporarily unavailable, so ")
+                .append(ocrUnavailablePages).append(" image-only page(s) were not scanned.*");
+        }
+        if (!skipped.isEmpty()) {
+            message.append("\n\n*Not scanned:*\n");
+            int shown = Math.min(skipped.size(), MAX_SKIPPED_SHOWN);
+            for (int i = 0; i < shown; i++) {
+                message.append("- ").append(skipped.get(i)).append("\n");
+            }
+            if (skipped.size() > shown) {
+                message.append("- and ").append(skipped.size() - shown).append(" more\n");
+            }
+        }
+        return new AnalysisResult(result.code(), message.toString(), result.findings(),
+            result.partial(), result.degraded() || ocrUnavailablePages > 0);
+    }
+
+    /**
+     * Starts the Gemini analysis of {@code content}. Short texts share a request with
+     * other short texts arriving at the same time; see {@link GeminiBatcher}.
+     */
+    private Future<List<String>> submitGeminiAnalysis(String content) {
+        if (geminiBatcher.accepts(content)) {
+            return geminiBatcher.submit(content,
+                text -> parseGeminiResponse(analyzeTextWithGemini(text)));
+        }
+        return analysisExecutor.submit(() -> parseGeminiResponse(analyzeTextWithGemini(content)));
+    }
+
+    /**
+     * @return the {@link System#nanoTime()} by which a request starting now must be
+     *     answered; the regex scan, extraction and OCR all count against it
+     */
+    private long deadline() {
+        return System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(analysisDeadlineMillis);
+    }
+
+    /**
+     * Waits for the Gemini findings until the request deadline and merges them with the
+     * regex findings. If Gemini does not answer in time, the call is cancelled and the
+     * result holds the regex findings only, marked as partial. If Gemini fails or is
+     * unavailable, it holds the regex findings only, marked as degraded.
+     *
+     * @param deadline the request's {@link #deadline()}, taken when it started
+     */
+    private AnalysisResult combineFindings(Findings sensitiveItems,
+                                           Future<List<String>> pendingGeminiFindings,
+                                           String contentType, long deadline) {
+        List<String> geminiFindings = List.of();
+        boolean partial = false;
+        boolean degraded = false;
+        try {
+            geminiFindings = pendingGeminiFindings.get(
+                Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+        } catch (TimeoutException e) {
+            pendingGeminiFindings.cancel(true);
+            logger.warn("Gemini analysis missed the {} ms deadline, returning regex findings only",
+                analysisDeadlineMillis);
+            metrics.fallback("gemini-deadline");
+            partial = true;
+        } catch (ExecutionException e) {
+            degraded = geminiUnavailable(e);
+        } catch (InterruptedException e) {
+            pendingGeminiFindings.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for Gemini analysis", e);
+        }
+        return renderResult(sensitiveItems, geminiFindings, contentType, partial, degraded);
+    }
+
+    /**
+     * Gemini findings of several texts analyzed one by one.
+     *
+     * @param findings the findings of each text, or null where its analysis missed the
+     *                 deadline or failed
+     * @param partial  whether any analysis missed the deadline
+     * @param degraded whether any analysis failed or Gemini was unavailable
+     */
+    record GeminiAnalyses(List<List<String>> findings, boolean partial, boolean degraded) {
+    }
+
+    /**
+     * Asks Gemini about each of {@code texts} on its own, e.g. the changed paragraphs of an
+     * edit session, and waits for them until the request deadline. Short texts share
+     * requests through {@link GeminiBatcher}.
+     */
+    GeminiAnalyses analyzeEachWithGemini(List<String> texts) {
+        List<Future<List<String>>> pending = new ArrayList<>(texts.size());
+        for (String text : texts) {
+            pending.add(submitGeminiAnalysis(text));
+        }
+        long deadline = deadline();
+        List<List<String>> findings = new ArrayList<>(texts.size());
+        boolean partial = false;
+        boolean degraded = false;
+        for (Future<List<String>> analysis : pending) {
+            List<String> textFindings = null;
+            try {
+                textFindings = analysis.get(Math.max(0, deadline - System.nanoTime()),
+                    TimeUnit.NANOSECONDS);
+            } catch (TimeoutException e) {
+                analysis.cancel(true);
+                partial = true;
+            } catch (ExecutionException e) {
+                degraded = geminiUnavailable(e);
+            } catch (InterruptedException e) {
+                pending.forEach(future -> future.cancel(true));
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while waiting for Gemini analysis", e);
+            }
+            findings.add(textFindings);
+        }
+        if (partial) {
+            logger.warn("Gemini analysis missed the {} ms deadline for some texts",
+                analysisDeadlineMillis);
+            metrics.fallback("gemini-deadline");
+        }
+        return new GeminiAnalyses(findings, partial, degraded);
+    }
+
+    /**
+     * Logs and counts a failed Gemini analysis, which the result then goes without.
+     *
+     * @return true, for use as the degraded flag
+     */
+    private boolean geminiUnavailable(ExecutionException e) {
+        if (e.getCause() instanceof Error error) {
+            throw error;
+        }
+        logger.warn("Gemini analysis failed, returning regex findings only: {}",
+            e.getCause().getMessage());
+        metrics.fallback("gemini-unavailable");
+        return true;
+    }
+
+    /**
+     * Renders regex and Gemini findings into the result message.
+     */
+    AnalysisResult renderResult(Findings sensitiveItems, List<String> geminiFindings,
+                                String contentType, boolean partial, boolean degraded) {
+        metrics.recordGeminiFindings(geminiFindings.size());
+        StringBuilder result = new StringBuilder();
+
+        // Regex findings are only rendered to text here, straight into the message
+        if (!sensitiveItems.isEmpty() || !geminiFindings.isEmpty()) {
+            result.append("**SENSITIVE INFORMATION DETECTED**\n\n");
+            result.append("The following sensitive information was found in your ")
+                .append(contentType).append(":\n\n");
+            for (int i = 0; i < sensitiveItems.size(); i++) {
+                sensitiveItems.describe(i, result.append("- ")).append("\n");
+            }
+            for (String item : geminiFindings) {
+                result.append("- ").append(item).append("\n");
+            }
+        } else {
+            result.append("**No sensitive information detected**\n\n");
+            result.append("Your ").append(contentType).append(" appears to be clear of personally identifiable information.");
+        }
+        if (partial) {
+            result.append("\n\n*AI analysis did not finish in time; only pattern-based findings are shown.*");
+        } else if (degraded) {
+            result.append("\n\n*AI analysis is temporarily unavailable; only pattern-based findings are shown.*");
+        }
+
+        return new AnalysisResult(0, result.toString(), sensitiveItems.toList(), partial, degraded);
+    }
+
+    /**
+     * Cancels the Gemini calls and streams still running, so they do not outlive the
+     * context.
+     */
+    @PreDestroy
+    void shutdown() {
+        analysisExecutor.shutdownNow();
+    }
+}
@@ -0,0 +1,119 @@
+package com.antidoxx.backend;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+/**
+ * Analyzes many stored files for one request, a bounded number at a time.
+ * <p>
+ * Each batch gets at most {@code bulk.max-concurrency} workers, which take the files in
+ * order and analyze them with {@link AnalysisService#analyzeFile}. Outcomes are handed
+ * back in the order the files finish, so a caller can stream each one as soon as it is
+ * ready. Workers run on virtual threads, since they mostly wait on Gemini and OCR.
+ */
+@Service
+public class BulkScanService {
+
+    /**
+     * The outcome of one file of a batch.
+     *
+     * @param index    the file's position in the batch
+     * @param filename the stored file name
+     * @param result   the analysis, or null if it failed
+     * @param error    why the analysis failed, or null if it succeeded
+     */
+    public record Outcome(int index, String filename, AnalysisResult result, Throwable error) {
+    }
+
+    private final AnalysisService analysisService;
+    private final int maxConcurrency;
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+
+    public BulkScanService(AnalysisService analysisService,
+                           @Value("${bulk.max-concurrency:8}") int maxConcurrency) {
+        this.analysisService = analysisService;
+        this.maxConcurrency = Math.max(1, maxConcurrency);
+    }
+
+    /**
+     * Starts analyzing a batch of stored files.
+     *
+     * @param filenames   the stored file names
+     * @param concurrency how many files to analyze at once; 0 or more than
+     *                    {@code bulk.max-concurrency} means the maximum
+     * @return the running batch; close it to stop analyzing files not yet started
+     */
+    public Batch start(List<String> filenames, int concurrency) {
+        return new Batch(filenames, concurrency > 0
+            ? Math.min(concurrency, maxConcurrency) : maxConcurrency);
+    }
+
+    /**
+     * A running batch. Outcomes are taken with {@link #next()} by a single consumer.
+     */
+    public final class Batch implements AutoCloseable {
+        private final List<String> filenames;
+        private final BlockingQueue<Outcome> outcomes = new LinkedBlockingQueue<>();
+        private final List<Future<?>> workers = new ArrayList<>();
+        private final AtomicInteger nextIndex = new AtomicInteger();
+        private int delivered;
+
+        private Batch(List<String> filenames, int concurrency) {
+            this.filenames = filenames;
+            for (int i = 0; i < Math.min(concurrency, filenames.size()); i++) {
+                workers.add(executor.submit(this::work));
+            }
+        }
+
+        private void work() {
+            for (int index; (index = nextIndex.getAndIncrement()) < filenames.size(); ) {
+                if (Thread.currentThread().isInterrupted()) {
+                    return;
+                }
+                String filename = filenames.get(index);
+                try {
+                    outcomes.add(new Outcome(index, filename,
+                        analysisService.analyzeFile(filename), null));
+                } catch (Exception e) {
+                    outcomes.add(new Outcome(index, filename, null, e));
+                } catch (Error e) {
+                    // Still report the file, so the consumer is not left waiting for it
+                    outcomes.add(new Outcome(index, filename, null, e));
+                    throw e;
+                }
+            }
+        }
+
+        public int size() {
+            return filenames.size();
+        }
+
+        /**
+         * Waits for the next file to finish.
+         *
+         * @return its outcome, or null once every file has been delivered
+         */
+        public Outcome next() throws InterruptedException {
+            if (delivered == filenames.size()) {
+                return null;
+            }
+            Outcome outcome = outcomes.take();
+            delivered++;
+            return outcome;
+        }
+
+        @Override
+        public void close() {
+            workers.forEach(worker -> worker.cancel(true));
+        }
+    }
+}
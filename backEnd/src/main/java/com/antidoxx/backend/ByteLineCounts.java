@@ -0,0 +1,30 @@
+package com.antidoxx.backend;
+
+/**
+ * The prefilter counts of {@link SensitiveCategory} for the line a {@link ByteScanKernel}
+ * is working through. Every counted character is ASCII, so the counts can be taken on UTF-8
+ * bytes directly: the bytes of a multi-byte character are all 0x80 or above and never
+ * match.
+ */
+final class ByteLineCounts {
+    int digits;
+    // Digits at the end of the bytes counted so far
+    int digitRun;
+    int longestDigitRun;
+    int at;
+    int dots;
+    int dashes;
+
+    boolean admitsAnyCategory() {
+        for (SensitiveCategory category : SensitiveCategory.VALUES) {
+            if (category.admits(digits, longestDigitRun, at, dots, dashes)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    void reset() {
+        digits = digitRun = longestDigitRun = at = dots = dashes = 0;
+    }
+}
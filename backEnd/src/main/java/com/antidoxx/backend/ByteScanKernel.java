@@ -0,0 +1,44 @@
+package com.antidoxx.backend;
+
+/**
+ * Finds the line breaks in a chunk of UTF-8 bytes and takes the prefilter counts of each
+ * line, for {@link MappedFileScan}. Implementations report exactly the same breaks and
+ * counts and differ only in speed.
+ */
+interface ByteScanKernel {
+
+    /**
+     * Called at every '\n' and '\r', after the bytes before it were counted. The listener
+     * reads the counts of the line that ended and resets them.
+     */
+    interface LineBreakListener {
+        void onLineBreak(int index, byte terminator);
+    }
+
+    /**
+     * Counts {@code chunk[0, length)} into {@code counts}, which carry over from the
+     * previous chunk, and reports its line breaks in order.
+     *
+     * @return whether every byte was ASCII
+     */
+    boolean scan(byte[] chunk, int length, ByteLineCounts counts, LineBreakListener listener);
+
+    /**
+     * @param allowVector whether the Vector API may be used
+     * @return the Vector API kernel if allowed and the {@code jdk.incubator.vector} module
+     * is present (it must be added with {@code --add-modules}), otherwise the scalar kernel.
+     * The Vector API kernel is compiled on its own and loaded by name, so nothing else
+     * links against the incubating module.
+     */
+    static ByteScanKernel create(boolean allowVector) {
+        if (allowVector && ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent()) {
+            try {
+                return (ByteScanKernel) Class.forName("com.antidoxx.backend.VectorByteScanKernel")
+                    .getDeclaredConstructor().newInstance();
+            } catch (ReflectiveOperationException | LinkageError e) {
+                // The module or the kernel is unusable; the scalar kernel gives the same results
+            }
+        }
+        return new ScalarByteScanKernel();
+    }
+}
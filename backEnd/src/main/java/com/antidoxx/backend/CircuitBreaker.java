@@ -0,0 +1,134 @@
+package com.antidoxx.backend;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Circuit breaker for one external service.
+ * <p>
+ * While closed, the outcomes of the last {@value #WINDOW_SIZE} calls are kept. Once at
+ * least {@value #MIN_CALLS} are known and the share of failures reaches the threshold, the
+ * breaker opens and rejects every call for the open duration. It then lets
+ * {@value #TRIAL_CALLS} trial calls through (half-open): if they all succeed it closes
+ * again, and if any fails it opens for another period.
+ */
+final class CircuitBreaker {
+
+    enum State {
+        CLOSED, HALF_OPEN, OPEN
+    }
+
+    private static final int WINDOW_SIZE = 20;
+    private static final int MIN_CALLS = 10;
+    private static final int TRIAL_CALLS = 3;
+
+    private final double failureRateThreshold;
+    private final long openNanos;
+    // Ring buffer of recent outcomes while closed; true marks a failure
+    private final boolean[] outcomes = new boolean[WINDOW_SIZE];
+    private int recorded;
+    private int next;
+    private int failures;
+    private State state = State.CLOSED;
+    private long openedAt;
+    private int trialsLeft;
+    private int trialSuccesses;
+
+    CircuitBreaker(double failureRateThreshold, long openMillis) {
+        this.failureRateThreshold = failureRateThreshold;
+        this.openNanos = TimeUnit.MILLISECONDS.toNanos(openMillis);
+    }
+
+    /**
+     * @return whether the call may proceed; if so, exactly one of {@link #onSuccess},
+     * {@link #onFailure} or {@link #onIgnore} must follow
+     */
+    synchronized boolean tryAcquire() {
+        if (state == State.OPEN) {
+            if (System.nanoTime() - openedAt < openNanos) {
+                return false;
+            }
+            state = State.HALF_OPEN;
+            trialsLeft = TRIAL_CALLS;
+            trialSuccesses = 0;
+        }
+        if (state == State.HALF_OPEN) {
+            if (trialsLeft == 0) {
+                return false;
+            }
+            trialsLeft--;
+        }
+        return true;
+    }
+
+    synchronized void onSuccess() {
+        switch (state) {
+            case CLOSED -> record(false);
+            case HALF_OPEN -> {
+                if (++trialSuccesses == TRIAL_CALLS) {
+                    close();
+                }
+            }
+            case OPEN -> {
+                // A call from before the breaker opened; it says nothing about recovery
+            }
+        }
+    }
+
+    synchronized void onFailure() {
+        switch (state) {
+            case CLOSED -> {
+                record(true);
+                if (recorded >= MIN_CALLS && failures >= failureRateThreshold * recorded) {
+                    open();
+                }
+            }
+            case HALF_OPEN -> open();
+            case OPEN -> {
+            }
+        }
+    }
+
+    /**
+     * Returns a permit without an outcome, e.g. when the call was shed before it started.
+     */
+    synchronized void onIgnore() {
+        if (state == State.HALF_OPEN) {
+            trialsLeft++;
+        }
+    }
+
+    synchronized State state() {
+        if (state == State.OPEN && System.nanoTime() - openedAt >= openNanos) {
+            // Due for a trial; reported as such even before the next call arrives
+            return State.HALF_OPEN;
+        }
+        return state;
+    }
+
+    private void record(boolean failure) {
+        if (recorded == WINDOW_SIZE) {
+            if (outcomes[next]) {
+                failures--;
+            }
+        } else {
+            recorded++;
+        }
+        outcomes[next] = failure;
+        if (failure) {
+            failures++;
+        }
+        next = (next + 1) % WINDOW_SIZE;
+    }
+
+    private void open() {
+        state = State.OPEN;
+        openedAt = System.nanoTime();
+    }
+
+    private void close() {
+        state = State.CLOSED;
+        recorded = 0;
+        next = 0;
+        failures = 0;
+    }
+}
@@ -0,0 +1,70 @@
+package com.antidoxx.backend;
+
+/**
+ * Protects the calls to one external service with an {@link AdaptiveLimiter} and a
+ * {@link CircuitBreaker}. Calls they turn away fail at once with a
+ * {@link DependencyUnavailableException}, without reaching the service.
+ */
+public final class DependencyGuard {
+    private final String name;
+    private final AdaptiveLimiter limiter;
+    private final CircuitBreaker breaker;
+    private final PipelineMetrics metrics;
+
+    DependencyGuard(String name, int maxConcurrency, long latencyThresholdMillis,
+                    double failureRateThreshold, long openMillis, PipelineMetrics metrics) {
+        this.name = name;
+        this.limiter = new AdaptiveLimiter(maxConcurrency, latencyThresholdMillis);
+        this.breaker = new CircuitBreaker(failureRateThreshold, openMillis);
+        this.metrics = metrics;
+    }
+
+    /**
+     * Runs a call to the service, if the breaker and the limiter allow it. Any exception
+     * it throws counts as a failure of the service.
+     *
+     * @throws DependencyUnavailableException if the call was not attempted
+     */
+    public <T, E extends Exception> T call(PipelineMetrics.Stage<T, E> body) throws E {
+        if (!breaker.tryAcquire()) {
+            metrics.fallback(name + "-circuit-open");
+            throw new DependencyUnavailableException(name, "circuit open");
+        }
+        if (!limiter.tryAcquire()) {
+            breaker.onIgnore();
+            metrics.fallback(name + "-concurrency-limit");
+            throw new DependencyUnavailableException(name, "concurrency limit reached");
+        }
+        long start = System.nanoTime();
+        boolean succeeded = false;
+        try {
+            T result = body.run();
+            succeeded = true;
+            return result;
+        } finally {
+            if (succeeded) {
+                limiter.onSuccess(System.nanoTime() - start);
+                breaker.onSuccess();
+            } else {
+                limiter.onFailure();
+                breaker.onFailure();
+            }
+        }
+    }
+
+    String name() {
+        return name;
+    }
+
+    int limit() {
+        return limiter.limit();
+    }
+
+    int inFlight() {
+        return limiter.inFlight();
+    }
+
+    CircuitBreaker.State state() {
+        return breaker.state();
+    }
+}
@@ -0,0 +1,38 @@
+package com.antidoxx.backend;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+/**
+ * The {@link DependencyGuard} of each external service the pipeline calls.
+ */
+@Service
+public class DependencyGuards {
+    private final DependencyGuard gemini;
+    private final DependencyGuard ocr;
+
+    public DependencyGuards(PipelineMetrics metrics,
+                            @Value("${guard.gemini.max-concurrency:64}") int geminiMaxConcurrency,
+                            @Value("${guard.gemini.latency-threshold-ms:10000}") long geminiLatencyThresholdMillis,
+                            @Value("${guard.gemini.failure-rate-threshold:0.5}") double geminiFailureRateThreshold,
+                            @Value("${guard.gemini.open-ms:30000}") long geminiOpenMillis,
+                            @Value("${guard.ocr.max-concurrency:16}") int ocrMaxConcurrency,
+                            @Value("${guard.ocr.latency-threshold-ms:15000}") long ocrLatencyThresholdMillis,
+                            @Value("${guard.ocr.failure-rate-threshold:0.5}") double ocrFailureRateThreshold,
+                            @Value("${guard.ocr.open-ms:30000}") long ocrOpenMillis) {
+        this.gemini = new DependencyGuard("gemini", geminiMaxConcurrency,
+            geminiLatencyThresholdMillis, geminiFailureRateThreshold, geminiOpenMillis, metrics);
+        this.ocr = new DependencyGuard("ocr", ocrMaxConcurrency,
+            ocrLatencyThresholdMillis, ocrFailureRateThreshold, ocrOpenMillis, metrics);
+        metrics.registerDependency(gemini);
+        metrics.registerDependency(ocr);
+    }
+
+    public DependencyGuard gemini() {
+        return gemini;
+    }
+
+    public DependencyGuard ocr() {
+        return ocr;
+    }
+}
@@ -0,0 +1,18 @@
+package com.antidoxx.backend;
+
+/**
+ * Thrown instead of calling an external service whose circuit breaker is open or whose
+ * concurrency limit is reached. The analysis continues without that service.
+ */
+public class DependencyUnavailableException extends RuntimeException {
+    private final String dependency;
+
+    public DependencyUnavailableException(String dependency, String reason) {
+        super(dependency + " is unavailable: " + reason);
+        this.dependency = dependency;
+    }
+
+    public String getDependency() {
+        return dependency;
+    }
+}
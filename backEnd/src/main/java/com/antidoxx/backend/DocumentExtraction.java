@@ -0,0 +1,383 @@
+package com.antidoxx.backend;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.CharacterCodingException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+/**
+ * Extracts and scans documents with the {@link DocumentExtractor} beans.
+ * <p>
+ * Up to {@code extract.parallelism} workers extract the parts of a document at once,
+ * claiming them in order. The text of each part goes through its own
+ * {@link StreamingScan} as the extractor produces it, so a worker holds one scan window
+ * rather than the part's text. Findings are merged in part order, with line numbers
+ * counted across the document as if each part started on a new line.
+ * <p>
+ * A document may produce at most {@code extract.max-document-chars} characters; extraction
+ * stops there, which also bounds the work an archive bomb can cause. The first characters
+ * of the text, up to the limit given by the caller, are kept for Gemini: each part keeps
+ * the start of its own text until the parts before it are known to fill the limit, and the
+ * merge takes the prefix in part order, whichever part finished first.
+ */
+@Service
+public class DocumentExtraction {
+    private static final Logger logger = LoggerFactory.getLogger(DocumentExtraction.class);
+
+    // Documents embedded in embedded documents are extracted up to this depth
+    private static final int MAX_EMBEDDING_DEPTH = 3;
+    private static final int COPY_BUFFER_BYTES = 64 * 1024;
+
+    private final List<DocumentExtractor> extractors;
+    private final int parallelism;
+    private final long maxMemoryBytes;
+    private final long maxDocumentChars;
+    private final long maxEmbeddedBytes;
+    // Workers mostly wait on OCR or on PDFBox's file reads, so each gets a virtual thread
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+
+    /**
+     * An extracted and scanned document.
+     *
+     * @param findings            the regex findings, in document order
+     * @param text                the start of the document's text, for Gemini
+     * @param skipped             what could not be scanned, as "part: reason"
+     * @param truncated           whether extraction stopped at the document's text limit
+     * @param ocrUnavailablePages image-only pages left unread because OCR was unavailable
+     */
+    record Result(Findings findings, String text, List<String> skipped, boolean truncated,
+                  int ocrUnavailablePages) {
+    }
+
+    public DocumentExtraction(List<DocumentExtractor> extractors,
+                              @Value("${extract.parallelism:4}") int parallelism,
+                              @Value("${extract.max-memory-bytes:67108864}") long maxMemoryBytes,
+                              @Value("${extract.max-document-chars:16777216}") long maxDocumentChars,
+                              @Value("${extract.max-embedded-bytes:67108864}") long maxEmbeddedBytes) {
+        this.extractors = extractors;
+        this.parallelism = Math.max(1, parallelism);
+        this.maxMemoryBytes = maxMemoryBytes;
+        this.maxDocumentChars = maxDocumentChars;
+        this.maxEmbeddedBytes = maxEmbeddedBytes;
+    }
+
+    /**
+     * @param mimeType the probed MIME type, or null if unknown
+     * @param filename the file name, whose extension is used when the type is unknown
+     * @return the extractor for the file, or null if it is not a supported document
+     */
+    DocumentExtractor extractorFor(String mimeType, String filename) {
+        for (DocumentExtractor extractor : extractors) {
+            if (extractor.supports(mimeType, filename)) {
+                return extractor;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Extracts and scans a document. Parts that cannot be read are reported in
+     * {@link Result#skipped()} rather than failing the whole document.
+     *
+     * @param textChars how much of the text to keep for Gemini
+     * @throws IOException If the document cannot be opened.
+     */
+    Result extract(Path file, DocumentExtractor extractor, int textChars) throws IOException {
+        Budget budget;
+        PartScan[] parts;
+        try (DocumentExtractor.Document document =
+                 extractor.open(file, new DocumentExtractor.Limits(parallelism, maxMemoryBytes))) {
+            parts = new PartScan[document.partCount()];
+            budget = new Budget(maxDocumentChars, textChars, parts.length);
+            AtomicInteger next = new AtomicInteger();
+            int workers = Math.min(parallelism, parts.length);
+            List<Future<?>> running = new ArrayList<>(workers);
+            for (int i = 0; i < workers; i++) {
+                running.add(executor.submit(() -> {
+                    for (int index; (index = next.getAndIncrement()) < parts.length; ) {
+                        parts[index] = extractPart(document, index, budget);
+                    }
+                    return null;
+                }));
+            }
+            awaitAll(running);
+        }
+        return merge(parts, budget, textChars);
+    }
+
+    private PartScan extractPart(DocumentExtractor.Document document, int index, Budget budget) {
+        PartScan part = new PartScan(document.partName(index), budget);
+        try {
+            // Once the text limit is reached, the remaining parts are not even read
+            if (!budget.truncated) {
+                document.extract(index, part);
+            }
+        } catch (IOException | RuntimeException e) {
+            logger.warn("Cannot extract {}: {}", part.name, e.getMessage());
+            part.skipped("could not be read");
+        }
+        part.finish();
+        budget.finishedPart(index, part.text.length());
+        return part;
+    }
+
+    private static void awaitAll(List<Future<?>> running) throws IOException {
+        try {
+            for (Future<?> future : running) {
+                future.get();
+            }
+        } catch (ExecutionException e) {
+            running.forEach(future -> future.cancel(true));
+            if (e.getCause() instanceof IOException io) {
+                throw io;
+            }
+            if (e.getCause() instanceof Error error) {
+                throw error;
+            }
+            throw (RuntimeException) e.getCause();
+        } catch (InterruptedException e) {
+            running.forEach(future -> future.cancel(true));
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while extracting a document", e);
+        }
+    }
+
+    private static Result merge(PartScan[] parts, Budget budget, int textChars) {
+        Findings findings = new Findings();
+        StringBuilder text = new StringBuilder();
+        List<String> skipped = new ArrayList<>();
+        int lineOffset = 0;
+        int ocrUnavailablePages = 0;
+        for (PartScan part : parts) {
+            findings.append(part.findings, lineOffset);
+            lineOffset += part.lines;
+            int room = textChars - text.length();
+            if (room > 0 && !part.text.isEmpty()) {
+                text.append(part.text, 0, Math.min(room, part.text.length()));
+                if (text.length() < textChars && text.charAt(text.length() - 1) != '\n') {
+                    text.append('\n');
+                }
+            }
+            skipped.addAll(part.skipped);
+            ocrUnavailablePages += part.ocrUnavailablePages;
+        }
+        return new Result(findings, text.toString(), skipped, budget.truncated,
+            ocrUnavailablePages);
+    }
+
+    /**
+     * Text limits shared by the workers of one document.
+     */
+    private static final class Budget {
+        private final AtomicLong remainingChars;
+        private final int textChars;
+        private volatile boolean truncated;
+        // Text kept by each finished part; the parts before the first unfinished one hold
+        // the start of the document's text
+        private final int[] partTextChars;
+        private final boolean[] partFinished;
+        private int finishedPrefix;
+        private long prefixTextChars;
+        private volatile boolean textComplete;
+
+        Budget(long maxChars, int textChars, int partCount) {
+            this.remainingChars = new AtomicLong(maxChars);
+            this.textChars = textChars;
+            this.partTextChars = new int[partCount];
+            this.partFinished = new boolean[partCount];
+        }
+
+        /**
+         * @return how many of {@code requested} characters may be scanned
+         */
+        int takeChars(int requested) {
+            int granted = take(remainingChars, requested);
+            if (granted < requested) {
+                truncated = true;
+            }
+            return granted;
+        }
+
+        /**
+         * Records how much text a finished part keeps for Gemini.
+         */
+        synchronized void finishedPart(int index, int keptChars) {
+            partFinished[index] = true;
+            partTextChars[index] = keptChars;
+            while (finishedPrefix < partFinished.length && partFinished[finishedPrefix]) {
+                prefixTextChars += partTextChars[finishedPrefix++];
+            }
+            if (prefixTextChars >= textChars) {
+                textComplete = true;
+            }
+        }
+
+        /**
+         * @return whether the parts finished so far already hold all the text Gemini sees,
+         *     so later parts need not keep any
+         */
+        boolean textComplete() {
+            return textComplete;
+        }
+
+        private static int take(AtomicLong remaining, int requested) {
+            while (true) {
+                long available = remaining.get();
+                int granted = (int) Math.min(available, requested);
+                if (granted <= 0 || remaining.compareAndSet(available, available - granted)) {
+                    return Math.max(granted, 0);
+                }
+            }
+        }
+    }
+
+    /**
+     * Scans one part as its text arrives. Used by one worker at a time.
+     */
+    private final class PartScan implements DocumentExtractor.PartSink {
+        private final Budget budget;
+        private final Findings findings = new Findings();
+        private final StringBuilder text = new StringBuilder();
+        private final List<String> skipped = new ArrayList<>();
+        private StreamingScan scan = new StreamingScan(findings);
+        // The part or embedded part being extracted, for messages
+        private String name;
+        private int depth;
+        private boolean atLineStart = true;
+        private int lines;
+        private int ocrUnavailablePages;
+
+        PartScan(String name, Budget budget) {
+            this.name = name;
+            this.budget = budget;
+        }
+
+        @Override
+        public boolean text(CharSequence chars) {
+            int granted = budget.takeChars(chars.length());
+            if (granted == 0) {
+                return chars.isEmpty();
+            }
+            CharSequence piece = granted < chars.length() ? chars.subSequence(0, granted) : chars;
+            scan.feed(piece);
+            char last = piece.charAt(piece.length() - 1);
+            atLineStart = last == '\n' || last == '\r';
+            // Which part's text Gemini sees is only decided in the merge, in part order
+            int room = budget.textChars - text.length();
+            if (room > 0 && !budget.textComplete()) {
+                text.append(piece, 0, Math.min(room, piece.length()));
+            }
+            return granted == chars.length();
+        }
+
+        @Override
+        public boolean embedded(String embeddedName, InputStream content) throws IOException {
+            DocumentExtractor extractor = extractorFor(null, embeddedName);
+            if (extractor == null || depth >= MAX_EMBEDDING_DEPTH) {
+                return false;
+            }
+            Path copy = Files.createTempFile("antidoxx-embedded", extension(embeddedName));
+            try {
+                if (!copyAtMost(content, copy, maxEmbeddedBytes)) {
+                    skipped("larger than " + maxEmbeddedBytes + " bytes");
+                    return true;
+                }
+                // One worker extracts the embedded document, with that worker's share of memory
+                DocumentExtractor.Limits limits =
+                    new DocumentExtractor.Limits(1, maxMemoryBytes / parallelism);
+                try (DocumentExtractor.Document document = extractor.open(copy, limits)) {
+                    String outerName = name;
+                    depth++;
+                    try {
+                        for (int i = 0; i < document.partCount() && !budget.truncated; i++) {
+                            name = outerName + " > " + document.partName(i);
+                            try {
+                                document.extract(i, this);
+                            } catch (IOException | RuntimeException e) {
+                                logger.warn("Cannot extract {}: {}", name, e.getMessage());
+                                skipped("could not be read");
+                            }
+                            // Each embedded part starts on a new line, as top-level parts do
+                            if (!atLineStart) {
+                                text("\n");
+                            }
+                        }
+                    } finally {
+                        depth--;
+                        name = outerName;
+                    }
+                }
+            } finally {
+                Files.deleteIfExists(copy);
+            }
+            return true;
+        }
+
+        @Override
+        public void skipped(String reason) {
+            skipped.add(name + ": " + reason);
+        }
+
+        @Override
+        public void ocrUnavailable() {
+            ocrUnavailablePages++;
+        }
+
+        void finish() {
+            try {
+                scan.finish();
+            } catch (CharacterCodingException e) {
+                // Only decoded text is fed, so there is nothing to decode
+                throw new IllegalStateException(e);
+            }
+            findings.addCategoryNanos(scan.categoryNanos());
+            lines = scan.lines();
+            // Release the window; only the findings are kept until the merge
+            scan = null;
+        }
+    }
+
+    /**
+     * Copies {@code content} to {@code target}.
+     *
+     * @return false if it is longer than {@code maxBytes}, in which case the copy is
+     *     incomplete
+     */
+    private static boolean copyAtMost(InputStream content, Path target, long maxBytes)
+        throws IOException {
+        byte[] buffer = new byte[COPY_BUFFER_BYTES];
+        long total = 0;
+        try (OutputStream out = Files.newOutputStream(target)) {
+            for (int read; (read = content.read(buffer)) >= 0; ) {
+                total += read;
+                if (total > maxBytes) {
+                    return false;
+                }
+                out.write(buffer, 0, read);
+            }
+        }
+        return true;
+    }
+
+    // The extension, so the embedded copy is recognized like an upload; limited to safe characters
+    private static String extension(String name) {
+        String extension = name.substring(name.lastIndexOf('.') + 1).toLowerCase(Locale.ROOT);
+        return extension.matches("[a-z0-9]{1,10}") ? "." + extension : ".bin";
+    }
+}
@@ -0,0 +1,98 @@
+package com.antidoxx.backend;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Path;
+
+/**
+ * Pulls the text out of one kind of document (PDF, DOCX, ZIP, ...), one part at a time.
+ * <p>
+ * A part is a unit that can be extracted on its own, such as a page or an archive entry.
+ * {@link DocumentExtraction} extracts the parts of a document concurrently and scans the
+ * text of each as it is produced, so no extractor ever holds a whole document's text.
+ * Implementations are Spring beans; the first one that {@linkplain #supports supports} an
+ * upload handles it.
+ */
+interface DocumentExtractor {
+
+    /**
+     * How much a single document may use.
+     *
+     * @param workers     how many of the document's parts are extracted at the same time
+     * @param memoryBytes heap an extractor may use for buffering the document, across all
+     *                    workers; anything beyond it spills to temporary files
+     */
+    record Limits(int workers, long memoryBytes) {
+    }
+
+    /**
+     * @param mimeType the probed MIME type, or null if it is unknown
+     * @param filename the stored file name, for when the type is only known by extension
+     * @return whether this extractor can read the file
+     */
+    boolean supports(String mimeType, String filename);
+
+    /**
+     * Opens a document for extraction.
+     *
+     * @throws IOException If the file is not a readable document of this kind.
+     */
+    Document open(Path file, Limits limits) throws IOException;
+
+    /**
+     * An open document. Different parts may be extracted concurrently, by at most
+     * {@link Limits#workers()} threads.
+     */
+    interface Document extends Closeable {
+
+        int partCount();
+
+        /**
+         * @return a name for the part in messages, e.g. "page 3" or an entry path
+         */
+        String partName(int index);
+
+        /**
+         * Extracts the text of one part into {@code sink}, in reading order.
+         *
+         * @throws IOException If the part cannot be read; the other parts are unaffected.
+         */
+        void extract(int index, PartSink sink) throws IOException;
+    }
+
+    /**
+     * Receives the text of one part as it is extracted.
+     */
+    interface PartSink {
+
+        /**
+         * Appends the next piece of the part's text. The sink does not keep
+         * {@code text}, so the extractor may reuse its buffer.
+         *
+         * @return false once the document's text budget is used up; the extractor should
+         *     then stop, as further text is ignored
+         */
+        boolean text(CharSequence text);
+
+        /**
+         * Extracts a document embedded in this part, e.g. a PDF inside an archive, as if
+         * its text were part of this one.
+         *
+         * @param name    the embedded file's name, used to pick its extractor
+         * @param content the embedded file, read to the end
+         * @return false if no extractor supports it or it is nested too deeply
+         */
+        boolean embedded(String name, InputStream content) throws IOException;
+
+        /**
+         * Records that some of the part could not be scanned, and why.
+         */
+        void skipped(String reason);
+
+        /**
+         * Records an image-only page that could not be read because OCR is unavailable.
+         */
+        void ocrUnavailable();
+    }
+}
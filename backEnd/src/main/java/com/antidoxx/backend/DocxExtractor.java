@@ -0,0 +1,141 @@
+package com.antidoxx.backend;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.regex.Pattern;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import org.springframework.stereotype.Service;
+
+/**
+ * Extracts the text of Word documents (DOCX) with a StAX pull parser, so the XML is never
+ * held as a tree. The main body is one part; headers, footers, footnotes, endnotes and
+ * comments are further parts. Text deleted with tracked changes is extracted too, since
+ * it is still in the file.
+ */
+@Service
+public class DocxExtractor implements DocumentExtractor {
+    private static final String WORD_NAMESPACE =
+        "http://schemas.openxmlformats.org/wordprocessingml/2006/main";
+    private static final String BODY = "word/document.xml";
+    private static final Pattern OTHER_PARTS =
+        Pattern.compile("word/(header\\d*|footer\\d*|footnotes|endnotes|comments)\\.xml");
+    // Text is passed on in pieces of about this size, at the end of a paragraph if possible
+    private static final int FLUSH_CHARS = 8 * 1024;
+
+    private final XMLInputFactory xmlInputFactory = XMLInputFactory.newFactory();
+
+    public DocxExtractor() {
+        // Document parts never need a DTD; refusing them rules out entity expansion attacks
+        xmlInputFactory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        xmlInputFactory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+    }
+
+    @Override
+    public boolean supports(String mimeType, String filename) {
+        return "application/vnd.openxmlformats-officedocument.wordprocessingml.document".equals(mimeType)
+            || filename.toLowerCase(Locale.ROOT).endsWith(".docx");
+    }
+
+    @Override
+    public Document open(Path file, Limits limits) throws IOException {
+        ZipFile zip = new ZipFile(file.toFile());
+        List<ZipEntry> parts = new ArrayList<>();
+        ZipEntry body = zip.getEntry(BODY);
+        if (body == null) {
+            zip.close();
+            throw new IOException("Not a Word document: " + file.getFileName());
+        }
+        parts.add(body);
+        zip.stream()
+            .filter(entry -> OTHER_PARTS.matcher(entry.getName()).matches())
+            .forEach(parts::add);
+
+        return new Document() {
+            @Override
+            public int partCount() {
+                return parts.size();
+            }
+
+            @Override
+            public String partName(int index) {
+                return index == 0 ? "document body" : parts.get(index).getName();
+            }
+
+            @Override
+            public void extract(int index, PartSink sink) throws IOException {
+                try (InputStream in = zip.getInputStream(parts.get(index))) {
+                    extractText(in, sink);
+                }
+            }
+
+            @Override
+            public void close() throws IOException {
+                zip.close();
+            }
+        };
+    }
+
+    private void extractText(InputStream in, PartSink sink) throws IOException {
+        StringBuilder text = new StringBuilder();
+        boolean inText = false;
+        try {
+            XMLStreamReader reader = xmlInputFactory.createXMLStreamReader(in);
+            try {
+                while (reader.hasNext()) {
+                    int event = reader.next();
+                    if (event == XMLStreamConstants.START_ELEMENT
+                        && WORD_NAMESPACE.equals(reader.getNamespaceURI())) {
+                        switch (reader.getLocalName()) {
+                            case "t", "delText" -> inText = true;
+                            case "tab" -> text.append('\t');
+                            case "br", "cr" -> text.append('\n');
+                            default -> { }
+                        }
+                    } else if (event == XMLStreamConstants.END_ELEMENT
+                        && WORD_NAMESPACE.equals(reader.getNamespaceURI())) {
+                        switch (reader.getLocalName()) {
+                            case "t", "delText" -> inText = false;
+                            case "p" -> {
+                                text.append('\n');
+                                if (text.length() >= FLUSH_CHARS) {
+                                    if (!sink.text(text)) {
+                                        return;
+                                    }
+                                    text.setLength(0);
+                                }
+                            }
+                            default -> { }
+                        }
+                    } else if (inText && (event == XMLStreamConstants.CHARACTERS
+                        || event == XMLStreamConstants.CDATA)) {
+                        text.append(reader.getTextCharacters(), reader.getTextStart(),
+                            reader.getTextLength());
+                        // A single huge paragraph is still passed on in pieces
+                        if (text.length() >= 4 * FLUSH_CHARS) {
+                            if (!sink.text(text)) {
+                                return;
+                            }
+                            text.setLength(0);
+                        }
+                    }
+                }
+            } finally {
+                reader.close();
+            }
+        } catch (XMLStreamException e) {
+            throw new IOException("Malformed Word document part: " + e.getMessage(), e);
+        }
+        sink.text(text);
+    }
+}
@@ -0,0 +1,369 @@
+package com.antidoxx.backend;
+
+import java.lang.ref.SoftReference;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+/**
+ * Keeps texts being edited so that each check only re-analyzes what changed.
+ * <p>
+ * A session holds its text line by line, with a hash and the regex findings of every line,
+ * and the Gemini findings of every paragraph (a run of non-blank lines). Clients send the
+ * changed line ranges instead of the whole text. Only the replaced lines are scanned, and
+ * only paragraphs whose lines hash differently from any paragraph already seen are sent to
+ * Gemini, at most {@code edit-sessions.max-gemini-paragraphs} per check.
+ * <p>
+ * Sessions are dropped after {@code edit-sessions.ttl-seconds} without use, beyond
+ * {@code edit-sessions.max-sessions} (least recently used first), and whenever the garbage
+ * collector needs their memory, as they are only softly reachable. A client whose session
+ * is gone starts a new one with the whole text.
+ */
+@Service
+public class EditSessionService {
+
+    /**
+     * Replaces lines {@code start} (inclusive) to {@code end} (exclusive), numbered from 1,
+     * with the lines of {@code text}, split at each "\n" (so a trailing "\n" adds an empty
+     * line). A null text deletes the lines; {@code start == end} inserts before line
+     * {@code start}.
+     */
+    public record Edit(int start, int end, String text) {
+    }
+
+    /**
+     * The analysis of a session's text after a check.
+     */
+    public record Check(String sessionId, int version, AnalysisResult result) {
+    }
+
+    /**
+     * Thrown when edits are based on another version of the text than the session's.
+     */
+    public static final class VersionConflictException extends RuntimeException {
+        private final int version;
+
+        VersionConflictException(int version) {
+            super("The session is at version " + version);
+            this.version = version;
+        }
+
+        public int getVersion() {
+            return version;
+        }
+    }
+
+    private final SensitiveInfoDetector sensitiveInfoDetector;
+    private final AnalysisService analysisService;
+    private final PipelineMetrics metrics;
+    private final long ttlNanos;
+    private final int maxGeminiParagraphs;
+    private final int maxChars;
+    private final Map<String, SoftReference<Session>> sessions;
+
+    public EditSessionService(SensitiveInfoDetector sensitiveInfoDetector,
+                              AnalysisService analysisService, PipelineMetrics metrics,
+                              @Value("${edit-sessions.max-sessions:1000}") int maxSessions,
+                              @Value("${edit-sessions.ttl-seconds:1800}") long ttlSeconds,
+                              @Value("${edit-sessions.max-gemini-paragraphs:32}")
+                              int maxGeminiParagraphs,
+                              @Value("${edit-sessions.max-chars:4194304}") int maxChars) {
+        this.sensitiveInfoDetector = sensitiveInfoDetector;
+        this.analysisService = analysisService;
+        this.metrics = metrics;
+        this.ttlNanos = TimeUnit.SECONDS.toNanos(ttlSeconds);
+        this.maxGeminiParagraphs = maxGeminiParagraphs;
+        this.maxChars = maxChars;
+        this.sessions = new LinkedHashMap<>(64, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, SoftReference<Session>> eldest) {
+                return size() > maxSessions;
+            }
+        };
+    }
+
+    /**
+     * Starts a session and analyzes its text in full.
+     *
+     * @throws IllegalArgumentException If the text is longer than
+     *     {@code edit-sessions.max-chars}.
+     */
+    public Check create(String text) {
+        Session session = new Session(UUID.randomUUID().toString());
+        session.apply(List.of(new Edit(1, 1, text)), maxChars);
+        Check check = check(session);
+        synchronized (sessions) {
+            evictExpired();
+            sessions.put(session.id, new SoftReference<>(session));
+        }
+        return check;
+    }
+
+    /**
+     * Applies edits to a session's text, in order, and analyzes what they changed.
+     *
+     * @param version the version the edits are based on, as returned by the last check
+     * @return the new analysis, or null if the session is unknown or has expired
+     * @throws VersionConflictException If the session is at another version.
+     * @throws IllegalArgumentException If an edit is out of range or the text would become
+     *     longer than {@code edit-sessions.max-chars}; no edit is applied then.
+     */
+    public Check update(String sessionId, int version, List<Edit> edits) {
+        Session session = get(sessionId);
+        if (session == null) {
+            return null;
+        }
+        // Not the session's monitor: the check waits for Gemini, and a thread waiting inside
+        // a synchronized block would hold the monitor and pin a virtual thread's carrier
+        session.lock.lock();
+        try {
+            if (session.version != version) {
+                throw new VersionConflictException(session.version);
+            }
+            session.apply(edits, maxChars);
+            session.version++;
+            return check(session);
+        } finally {
+            session.lock.unlock();
+        }
+    }
+
+    /**
+     * Ends a session.
+     *
+     * @return false if it was unknown or had already expired
+     */
+    public boolean close(String sessionId) {
+        synchronized (sessions) {
+            SoftReference<Session> removed = sessions.remove(sessionId);
+            return removed != null && removed.get() != null;
+        }
+    }
+
+    private Session get(String sessionId) {
+        synchronized (sessions) {
+            SoftReference<Session> reference = sessions.get(sessionId);
+            Session session = reference != null ? reference.get() : null;
+            if (session == null || System.nanoTime() - session.lastUsed > ttlNanos) {
+                sessions.remove(sessionId);
+                return null;
+            }
+            session.lastUsed = System.nanoTime();
+            return session;
+        }
+    }
+
+    private void evictExpired() {
+        long now = System.nanoTime();
+        sessions.values().removeIf(reference -> {
+            Session session = reference.get();
+            return session == null || now - session.lastUsed > ttlNanos;
+        });
+    }
+
+    /**
+     * Scans the lines changed since the last check and asks Gemini about new paragraphs,
+     * then renders the analysis of the whole text.
+     */
+    private Check check(Session session) {
+        scanChangedLines(session);
+
+        Findings findings = new Findings();
+        List<Long> paragraphKeys = new ArrayList<>();
+        List<String> newParagraphs = new ArrayList<>();
+        List<Long> newParagraphKeys = new ArrayList<>();
+        boolean skippedParagraphs = false;
+        List<Line> lines = session.lines;
+        for (int i = 0; i < lines.size(); i++) {
+            Line line = lines.get(i);
+            if (line.findings != null) {
+                findings.append(line.findings, i);
+            }
+            if (line.text.isBlank()) {
+                continue;
+            }
+            int paragraphStart = i;
+            long key = line.hash;
+            while (i + 1 < lines.size() && !lines.get(i + 1).text.isBlank()) {
+                i++;
+                Line next = lines.get(i);
+                if (next.findings != null) {
+                    findings.append(next.findings, i);
+                }
+                key = key * 31 + next.hash;
+            }
+            paragraphKeys.add(key);
+            if (session.paragraphFindings.containsKey(key) || newParagraphKeys.contains(key)) {
+                continue;
+            }
+            if (newParagraphs.size() == maxGeminiParagraphs) {
+                // Left for a later check
+                skippedParagraphs = true;
+                continue;
+            }
+            newParagraphs.add(session.text(paragraphStart, i + 1));
+            newParagraphKeys.add(key);
+        }
+
+        AnalysisService.GeminiAnalyses analyses =
+            analysisService.analyzeEachWithGemini(newParagraphs);
+        Map<Long, List<String>> paragraphFindings = new HashMap<>();
+        for (int i = 0; i < newParagraphKeys.size(); i++) {
+            // Paragraphs whose analysis missed the deadline or failed are retried next time
+            if (analyses.findings().get(i) != null) {
+                paragraphFindings.put(newParagraphKeys.get(i), analyses.findings().get(i));
+            }
+        }
+        List<String> geminiFindings = new ArrayList<>();
+        for (long key : paragraphKeys) {
+            List<String> known = session.paragraphFindings.get(key);
+            if (known != null) {
+                paragraphFindings.put(key, known);
+            }
+            List<String> found = paragraphFindings.get(key);
+            if (found != null) {
+                geminiFindings.addAll(found);
+            }
+        }
+        // Only the paragraphs still in the text are kept
+        session.paragraphFindings = paragraphFindings;
+        if (skippedParagraphs) {
+            metrics.fallback("edit-session-paragraph-limit");
+        }
+
+        AnalysisResult result = analysisService.renderResult(findings, geminiFindings,
+            "text", analyses.partial() || skippedParagraphs, analyses.degraded());
+        return new Check(session.id, session.version, result);
+    }
+
+    /**
+     * Scans every line added since the last check, as one text.
+     */
+    private void scanChangedLines(Session session) {
+        List<Line> changed = new ArrayList<>();
+        StringBuilder text = new StringBuilder();
+        for (Line line : session.lines) {
+            if (!line.scanned) {
+                if (!changed.isEmpty()) {
+                    text.append('\n');
+                }
+                text.append(line.text);
+                changed.add(line);
+            }
+        }
+        if (changed.isEmpty()) {
+            return;
+        }
+        String content = text.toString();
+        Findings findings = metrics.time("regex", () -> sensitiveInfoDetector.scan(content));
+        metrics.recordScan(findings, "text", content.length());
+        Findings[] byLine = findings.byLine(changed.size());
+        for (int i = 0; i < changed.size(); i++) {
+            changed.get(i).findings = byLine[i];
+            changed.get(i).scanned = true;
+        }
+    }
+
+    private static final class Session {
+        private final String id;
+        // Held while edits are applied and checked, so updates to one session run in turn
+        private final ReentrantLock lock = new ReentrantLock();
+        private List<Line> lines = new ArrayList<>();
+        // Gemini findings by paragraph key, a hash of the paragraph's line hashes
+        private Map<Long, List<String>> paragraphFindings = new HashMap<>();
+        private int version;
+        private volatile long lastUsed = System.nanoTime();
+
+        Session(String id) {
+            this.id = id;
+        }
+
+        /**
+         * Applies edits in order. Replacing lines with the same text keeps their findings,
+         * so clients may send a larger range than what actually changed.
+         */
+        void apply(List<Edit> edits, int maxChars) {
+            // Edited on a copy, so a rejected update leaves the text as it was
+            List<Line> edited = new ArrayList<>(lines);
+            for (Edit edit : edits) {
+                if (edit.start() < 1 || edit.end() < edit.start()
+                    || edit.end() > edited.size() + 1) {
+                    throw new IllegalArgumentException("Lines " + edit.start() + " to "
+                        + edit.end() + " are out of range");
+                }
+                replace(edited, edit.start() - 1, edit.end() - 1, split(edit.text()));
+            }
+            long chars = 0;
+            for (Line line : edited) {
+                chars += line.text.length() + 1;
+            }
+            if (chars > maxChars) {
+                throw new IllegalArgumentException(
+                    "The text would be longer than " + maxChars + " characters");
+            }
+            lines = edited;
+        }
+
+        private static void replace(List<Line> lines, int from, int to, String[] replacement) {
+            // Lines equal at both ends of the range are kept with their findings
+            int kept = 0;
+            while (from + kept < to && kept < replacement.length
+                && lines.get(from + kept).text.equals(replacement[kept])) {
+                kept++;
+            }
+            int keptAtEnd = 0;
+            while (to - keptAtEnd > from + kept && replacement.length - keptAtEnd > kept
+                && lines.get(to - keptAtEnd - 1).text
+                    .equals(replacement[replacement.length - keptAtEnd - 1])) {
+                keptAtEnd++;
+            }
+            List<Line> range = lines.subList(from + kept, to - keptAtEnd);
+            range.clear();
+            for (int i = kept; i < replacement.length - keptAtEnd; i++) {
+                range.add(new Line(replacement[i]));
+            }
+        }
+
+        private static String[] split(String text) {
+            return text == null ? new String[0] : text.split("\n", -1);
+        }
+
+        String text(int from, int to) {
+            StringBuilder text = new StringBuilder();
+            for (int i = from; i < to; i++) {
+                text.append(lines.get(i).text).append('\n');
+            }
+            return text.toString();
+        }
+    }
+
+    private static final class Line {
+        private final String text;
+        private final long hash;
+        // Regex findings, numbered as line 1; null when there are none
+        private Findings findings;
+        private boolean scanned;
+
+        Line(String text) {
+            this.text = text;
+            this.hash = hash(text);
+        }
+
+        // 64-bit FNV-1a, so that paragraph keys built from the line hashes rarely collide
+        private static long hash(String text) {
+            long hash = 0xcbf29ce484222325L;
+            for (int i = 0; i < text.length(); i++) {
+                hash = (hash ^ text.charAt(i)) * 0x100000001b3L;
+            }
+            return hash;
+        }
+    }
+}
@@ -0,0 +1,16 @@
+package com.antidoxx.backend;
+
+import java.io.Serializable;
+
+/**
+ * One regex finding as it appears in the JSON {@code findings} array.
+ *
+ * @param category the category id, e.g. {@code EMAIL}
+ * @param label    the human-readable category name
+ * @param line     the 1-based line number
+ * @param start    the column where the match starts
+ * @param end      the column just past the end of the match
+ */
+public record Finding(String category, String label, int line, int start, int end)
+    implements Serializable {
+}
@@ -0,0 +1,211 @@
+package com.antidoxx.backend;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Regex findings of one scan, stored column-wise in primitive arrays.
+ * <p>
+ * Each finding is a category, a 1-based line number and the start/end column of the
+ * match within that line. When the scanned text is kept alive by the caller (a
+ * {@code String} scan), the matched text is not copied at all and is read back from the
+ * source on demand; streaming scans, whose buffers are reused, copy just the match.
+ * Nothing is turned into text until the response is built.
+ */
+final class Findings implements MultiPatternScanner.MatchSink {
+    private static final int INITIAL_CAPACITY = 16;
+
+    private final CharSequence source;
+    private byte[] categories = new byte[INITIAL_CAPACITY];
+    private int[] lines = new int[INITIAL_CAPACITY];
+    private int[] starts = new int[INITIAL_CAPACITY];
+    private int[] ends = new int[INITIAL_CAPACITY];
+    // Offset of the match in source, or -1 when the text was copied into values
+    private int[] offsets = new int[INITIAL_CAPACITY];
+    private String[] values;
+    private int size;
+    // Regex time per category spent producing these findings, indexed by ordinal
+    private final long[] categoryNanos = new long[SensitiveCategory.VALUES.length];
+
+    /**
+     * Creates an empty result whose matches will be copied as they are added.
+     */
+    Findings() {
+        this(null);
+    }
+
+    /**
+     * Creates an empty result for a scan over {@code source}. Matches found in that exact
+     * object are recorded by offset instead of being copied.
+     */
+    Findings(CharSequence source) {
+        this.source = source;
+    }
+
+    @Override
+    public void onMatch(SensitiveCategory category, int lineNumber, int column,
+                        CharSequence text, int start, int end) {
+        int length = end - start;
+        if (text == source) {
+            add(category, lineNumber, column, column + length, start, null);
+        } else {
+            add(category, lineNumber, column, column + length, -1,
+                text.subSequence(start, end).toString());
+        }
+    }
+
+    private void add(SensitiveCategory category, int line, int start, int end, int offset,
+                     String value) {
+        if (size == lines.length) {
+            int capacity = size * 2;
+            categories = Arrays.copyOf(categories, capacity);
+            lines = Arrays.copyOf(lines, capacity);
+            starts = Arrays.copyOf(starts, capacity);
+            ends = Arrays.copyOf(ends, capacity);
+            offsets = Arrays.copyOf(offsets, capacity);
+            if (values != null) {
+                values = Arrays.copyOf(values, capacity);
+            }
+        }
+        if (value != null && values == null) {
+            values = new String[lines.length];
+        }
+        categories[size] = (byte) category.ordinal();
+        lines[size] = line;
+        starts[size] = start;
+        ends[size] = end;
+        offsets[size] = offset;
+        if (values != null) {
+            values[size] = value;
+        }
+        size++;
+    }
+
+    /**
+     * Appends another result whose line numbers are relative to a later part of the same
+     * document, shifting them by {@code lineOffset}.
+     */
+    void append(Findings other, int lineOffset) {
+        // Offsets are only meaningful when both scanned the same, retained source
+        boolean sameSource = source != null && other.source == source;
+        for (int i = 0; i < other.size; i++) {
+            add(other.category(i), other.lines[i] + lineOffset, other.starts[i], other.ends[i],
+                sameSource ? other.offsets[i] : -1, sameSource ? null : other.value(i));
+        }
+        addCategoryNanos(other.categoryNanos);
+    }
+
+    /**
+     * Splits these findings by line, for callers that keep findings line by line. The
+     * matched text is copied, so the split findings do not keep the scanned text alive.
+     *
+     * @return the findings of each of lines 1 to {@code lineCount}, each numbered as
+     *     line 1, or null for a line without any
+     */
+    Findings[] byLine(int lineCount) {
+        Findings[] byLine = new Findings[lineCount];
+        for (int i = 0; i < size; i++) {
+            int line = lines[i] - 1;
+            if (byLine[line] == null) {
+                byLine[line] = new Findings();
+            }
+            byLine[line].add(category(i), 1, starts[i], ends[i], -1, value(i));
+        }
+        return byLine;
+    }
+
+    void clear() {
+        size = 0;
+    }
+
+    /**
+     * Adds the per-category regex time of the scan that produced these findings.
+     */
+    void addCategoryNanos(long[] nanos) {
+        for (int i = 0; i < categoryNanos.length; i++) {
+            categoryNanos[i] += nanos[i];
+        }
+    }
+
+    long categoryNanos(SensitiveCategory category) {
+        return categoryNanos[category.ordinal()];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public SensitiveCategory category(int index) {
+        return SensitiveCategory.VALUES[categories[index]];
+    }
+
+    public int line(int index) {
+        return lines[index];
+    }
+
+    public int start(int index) {
+        return starts[index];
+    }
+
+    public int end(int index) {
+        return ends[index];
+    }
+
+    /**
+     * @return the matched text of finding {@code index}
+     */
+    public String value(int index) {
+        int offset = offsets[index];
+        if (offset < 0) {
+            return values[index];
+        }
+        return source.subSequence(offset, offset + ends[index] - starts[index]).toString();
+    }
+
+    /**
+     * Appends the human-readable description of finding {@code index}, e.g.
+     * {@code Line 3: Email Address detected -> 'a@b.io'}.
+     */
+    public StringBuilder describe(int index, StringBuilder out) {
+        out.append("Line ").append(lines[index]).append(": ")
+            .append(category(index).displayName).append(" detected -> '");
+        int offset = offsets[index];
+        if (offset < 0) {
+            out.append(values[index]);
+        } else {
+            out.append(source, offset, offset + ends[index] - starts[index]);
+        }
+        return out.append('\'');
+    }
+
+    /**
+     * @return every finding's description, in scan order
+     */
+    public List<String> descriptions() {
+        List<String> descriptions = new ArrayList<>(size);
+        StringBuilder line = new StringBuilder();
+        for (int i = 0; i < size; i++) {
+            line.setLength(0);
+            descriptions.add(describe(i, line).toString());
+        }
+        return descriptions;
+    }
+
+    /**
+     * @return the findings as JSON-serializable objects, for the response body
+     */
+    public ArrayList<Finding> toList() {
+        ArrayList<Finding> list = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            SensitiveCategory category = category(i);
+            list.add(new Finding(category.name(), category.displayName, lines[i], starts[i],
+                ends[i]));
+        }
+        return list;
+    }
+}
@@ -1,8 +1,10 @@
 package com.antidoxx.backend;
 
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
 import com.google.genai.Client;
+import com.google.genai.types.HttpOptions;
 
 /**
  * Automatically reads the API key from environment variables:
@@ -13,15 +15,30 @@ import com.google.genai.Client;
  * 
  * Ensure you set one of these environment variables before running the application.
  * Get your API key at: https://ai.google.dev/
+ * 
+ * For testing, {@code gemini.base-url} and {@code gemini.api-key} point the client at
+ * another endpoint, such as a local stub server.
  */
 @Service
 public class Gemini {
     private final Client client;
 
-    public Gemini() {
-        // The Client constructor automatically picks up the API key from environment variables
-        // No need to explicitly pass the API key here
-        this.client = new Client();
+    public Gemini(@Value("${gemini.base-url:}") String baseUrl,
+                  @Value("${gemini.api-key:}") String apiKey) {
+        if (baseUrl.isEmpty() && apiKey.isEmpty()) {
+            // The Client constructor automatically picks up the API key from environment variables
+            // No need to explicitly pass the API key here
+            this.client = new Client();
+            return;
+        }
+        Client.Builder builder = Client.builder();
+        if (!apiKey.isEmpty()) {
+            builder.apiKey(apiKey);
+        }
+        if (!baseUrl.isEmpty()) {
+            builder.httpOptions(HttpOptions.builder().baseUrl(baseUrl).build());
+        }
+        this.client = builder.build();
     }
 
     public Client getGemini() {
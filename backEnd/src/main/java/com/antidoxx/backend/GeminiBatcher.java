@@ -0,0 +1,226 @@
+package com.antidoxx.backend;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.genai.types.Content;
+import com.google.genai.types.GenerateContentConfig;
+import com.google.genai.types.GenerateContentResponse;
+import com.google.genai.types.Part;
+
+/**
+ * Combines short texts that arrive close together into a single Gemini request.
+ * <p>
+ * A text is held for at most {@code gemini-batch.window-ms} while other texts join it,
+ * up to {@code gemini-batch.max-items} texts or {@code gemini-batch.max-chars} characters
+ * in total. The batch is sent as one JSON array of {@code {"id", "text"}} items, Gemini
+ * answers with a JSON object mapping each id to its findings, and every caller receives
+ * its own list. Items missing from the answer, or a whole batch whose answer cannot be
+ * parsed, are analyzed again with the caller's fallback, each in its own request, all at
+ * the same time. When the Gemini {@link DependencyGuard} turns a batch away, every caller
+ * receives the {@link DependencyUnavailableException} instead.
+ */
+@Service
+public class GeminiBatcher {
+    private static final Logger logger = LoggerFactory.getLogger(GeminiBatcher.class);
+
+    private static final String BATCH_PROMPT =
+        "The following JSON array contains independent texts, each with an id. " +
+            "Analyze each text separately for any personally identifiable information (PII) " +
+            "such as names, addresses, phone numbers, email addresses, social security numbers, " +
+            "credit card numbers, IP addresses, and other potentially sensitive data. " +
+            "Respond with a JSON object that has one key per id. " +
+            "The value of each key is a JSON array of brief descriptions of the sensitive " +
+            "information found in that text, or an empty array [] if there is none. " +
+            "Format: {\"0\": [\"finding1\", \"finding2\"], \"1\": []} " +
+            "ONLY return the JSON object, no other text or explanation.";
+
+    private record Item(String content, Function<String, List<String>> fallback,
+                        CompletableFuture<List<String>> result) {
+    }
+
+    private final Gemini gemini;
+    private final PipelineMetrics metrics;
+    private final DependencyGuard guard;
+    private final long windowNanos;
+    private final int maxItems;
+    private final int maxChars;
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final BlockingQueue<Item> queue = new LinkedBlockingQueue<>();
+    private final ExecutorService requestExecutor = Executors.newVirtualThreadPerTaskExecutor();
+    private final Thread dispatcher;
+
+    public GeminiBatcher(Gemini gemini,
+                         PipelineMetrics metrics,
+                         DependencyGuards guards,
+                         @Value("${gemini-batch.window-ms:5}") long windowMillis,
+                         @Value("${gemini-batch.max-items:16}") int maxItems,
+                         @Value("${gemini-batch.max-chars:16000}") int maxChars) {
+        this.gemini = gemini;
+        this.metrics = metrics;
+        this.guard = guards.gemini();
+        this.windowNanos = TimeUnit.MILLISECONDS.toNanos(windowMillis);
+        this.maxItems = maxItems;
+        this.maxChars = maxChars;
+        this.dispatcher = Thread.ofPlatform().daemon().name("gemini-batcher").start(this::dispatch);
+    }
+
+    /**
+     * @return whether a text of this length is small enough to be batched
+     */
+    public boolean accepts(String content) {
+        return maxItems > 1 && content.length() <= maxChars / 2;
+    }
+
+    /**
+     * Queues a text for the next batch.
+     *
+     * @param content  the text to analyze
+     * @param fallback analyzes the text on its own, if the batch cannot answer for it
+     * @return the Gemini findings for {@code content}
+     */
+    public CompletableFuture<List<String>> submit(String content,
+                                                  Function<String, List<String>> fallback) {
+        CompletableFuture<List<String>> result = new CompletableFuture<>();
+        queue.add(new Item(content, fallback, result));
+        return result;
+    }
+
+    private void dispatch() {
+        Item carried = null;
+        try {
+            while (true) {
+                Item first = carried != null ? carried : queue.take();
+                carried = null;
+                List<Item> batch = new ArrayList<>();
+                batch.add(first);
+                int chars = first.content().length();
+                long deadline = System.nanoTime() + windowNanos;
+                while (batch.size() < maxItems) {
+                    Item next = queue.poll(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+                    if (next == null) {
+                        break;
+                    }
+                    if (chars + next.content().length() > maxChars) {
+                        // Over budget: it starts the next batch instead
+                        carried = next;
+                        break;
+                    }
+                    batch.add(next);
+                    chars += next.content().length();
+                }
+                requestExecutor.execute(() -> send(batch));
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void send(List<Item> batch) {
+        if (batch.size() == 1) {
+            runFallback(batch.get(0));
+            return;
+        }
+        Map<String, List<String>> answers;
+        try {
+            answers = metrics.time("gemini-batch", () -> analyzeBatch(batch));
+        } catch (DependencyUnavailableException e) {
+            // Analyzing the texts one by one would only add load to a struggling service
+            batch.forEach(item -> item.result().completeExceptionally(e));
+            return;
+        } catch (Exception e) {
+            logger.warn("Batched Gemini analysis of {} texts failed, analyzing them one by one: {}",
+                batch.size(), e.getMessage());
+            metrics.fallback("gemini-batch-failed");
+            batch.forEach(this::submitFallback);
+            return;
+        }
+        logger.info("Analyzed {} texts in one Gemini request", batch.size());
+        for (int i = 0; i < batch.size(); i++) {
+            List<String> findings = answers.get(String.valueOf(i));
+            if (findings != null) {
+                batch.get(i).result().complete(findings);
+            } else {
+                metrics.fallback("gemini-batch-missing-item");
+                submitFallback(batch.get(i));
+            }
+        }
+    }
+
+    private Map<String, List<String>> analyzeBatch(List<Item> batch) throws Exception {
+        List<Map<String, String>> items = new ArrayList<>(batch.size());
+        for (int i = 0; i < batch.size(); i++) {
+            Map<String, String> item = new LinkedHashMap<>();
+            item.put("id", String.valueOf(i));
+            item.put("text", batch.get(i).content());
+            items.add(item);
+        }
+        Content[] contentArr = {
+            Content.fromParts(Part.fromText(mapper.writeValueAsString(items))),
+            Content.fromParts(Part.fromText(BATCH_PROMPT))
+        };
+        GenerateContentConfig config = GenerateContentConfig.builder()
+            .responseMimeType("application/json")
+            .build();
+        GenerateContentResponse response = guard.call(() -> gemini.getGemini().models
+            .generateContent("gemini-2.5-flash", Arrays.asList(contentArr), config));
+
+        String answer = response.text().trim();
+        if (answer.startsWith("```json")) {
+            answer = answer.substring(7);
+        }
+        if (answer.startsWith("```")) {
+            answer = answer.substring(3);
+        }
+        if (answer.endsWith("```")) {
+            answer = answer.substring(0, answer.length() - 3);
+        }
+        return mapper.readValue(answer.trim(), new TypeReference<Map<String, List<String>>>() {});
+    }
+
+    /**
+     * Runs an item's fallback on its own thread, so the fallbacks of a batch run side by side
+     * rather than one after another.
+     */
+    private void submitFallback(Item item) {
+        try {
+            requestExecutor.execute(() -> runFallback(item));
+        } catch (RejectedExecutionException e) {
+            // Shutting down
+            item.result().completeExceptionally(e);
+        }
+    }
+
+    private void runFallback(Item item) {
+        try {
+            item.result().complete(item.fallback().apply(item.content()));
+        } catch (Exception e) {
+            item.result().completeExceptionally(e);
+        }
+    }
+
+    @PreDestroy
+    void shutdown() {
+        dispatcher.interrupt();
+        requestExecutor.shutdownNow();
+    }
+}
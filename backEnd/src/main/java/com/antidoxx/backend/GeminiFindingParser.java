@@ -0,0 +1,95 @@
+package com.antidoxx.backend;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Function;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.async.ByteArrayFeeder;
+
+/**
+ * Pulls findings out of a streamed Gemini answer as soon as each one is complete.
+ * <p>
+ * Gemini is asked for a JSON array of strings, which arrives in arbitrary text chunks.
+ * Everything before the opening bracket (such as a Markdown code fence) is skipped and
+ * the rest is fed to a non-blocking JSON parser, so every string element is returned by
+ * the {@link #accept} call that completes it. If the answer turns out not to be a JSON
+ * array, {@link #finish} falls back to parsing the full text.
+ */
+final class GeminiFindingParser {
+    private final StringBuilder text = new StringBuilder();
+    private final JsonParser parser;
+    private boolean started;
+    private boolean ended;
+    private boolean failed;
+    private int depth;
+    private int emitted;
+
+    GeminiFindingParser() {
+        try {
+            parser = new JsonFactory().createNonBlockingByteArrayParser();
+        } catch (IOException e) {
+            throw new IllegalStateException("Cannot create JSON parser", e);
+        }
+    }
+
+    /**
+     * Adds the next chunk of the answer.
+     *
+     * @return the findings completed by this chunk, possibly none
+     */
+    List<String> accept(String chunk) {
+        text.append(chunk);
+        if (ended || failed) {
+            return List.of();
+        }
+        String input = chunk;
+        if (!started) {
+            int bracket = text.indexOf("[");
+            if (bracket < 0) {
+                return List.of();
+            }
+            started = true;
+            input = text.substring(bracket);
+        }
+
+        List<String> findings = new ArrayList<>();
+        byte[] bytes = input.getBytes(StandardCharsets.UTF_8);
+        try {
+            ((ByteArrayFeeder) parser.getNonBlockingInputFeeder()).feedInput(bytes, 0, bytes.length);
+            JsonToken token;
+            while (!ended && (token = parser.nextToken()) != null
+                && token != JsonToken.NOT_AVAILABLE) {
+                if (token == JsonToken.START_ARRAY || token == JsonToken.START_OBJECT) {
+                    depth++;
+                } else if (token == JsonToken.END_ARRAY || token == JsonToken.END_OBJECT) {
+                    ended = --depth == 0;
+                } else if (token == JsonToken.VALUE_STRING && depth == 1) {
+                    findings.add(parser.getText());
+                }
+            }
+        } catch (IOException e) {
+            failed = true;
+        }
+        emitted += findings.size();
+        return findings;
+    }
+
+    /**
+     * Ends the answer.
+     *
+     * @param fallback parses a complete answer that is not a well-formed JSON array
+     * @return findings not yet returned by {@link #accept}
+     */
+    List<String> finish(Function<String, List<String>> fallback) {
+        if (ended) {
+            return List.of();
+        }
+        List<String> all = fallback.apply(text.toString());
+        return all.subList(Math.min(emitted, all.size()), all.size());
+    }
+}
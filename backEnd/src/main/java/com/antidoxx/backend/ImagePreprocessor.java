@@ -0,0 +1,156 @@
+package com.antidoxx.backend;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Iterator;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.ImageOutputStream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+/**
+ * Shrinks uploaded images before they are sent to OCR or Gemini.
+ * <p>
+ * Images are scaled so their longer side is at most {@code image-preprocess.max-dimension}
+ * pixels, converted to grayscale and re-encoded as JPEG. Large images are subsampled
+ * while they are decoded, so the full-resolution bitmap is never held in memory. The
+ * uploaded file itself is left untouched; callers get a temporary copy and must pass it
+ * to {@link #release} when done.
+ */
+@Service
+public class ImagePreprocessor {
+    private static final Logger logger = LoggerFactory.getLogger(ImagePreprocessor.class);
+
+    private final int maxDimension;
+    private final float jpegQuality;
+
+    public ImagePreprocessor(@Value("${image-preprocess.max-dimension:2000}") int maxDimension,
+                             @Value("${image-preprocess.jpeg-quality:0.85}") float jpegQuality) {
+        this.maxDimension = maxDimension;
+        this.jpegQuality = jpegQuality;
+    }
+
+    /**
+     * Prepares an image for OCR or Gemini.
+     *
+     * @param image the stored image
+     * @return a smaller grayscale JPEG copy, or {@code image} itself if it cannot be decoded
+     *     or the copy would not be smaller
+     */
+    public Path prepare(Path image) {
+        Path prepared = null;
+        try {
+            BufferedImage decoded = readSubsampled(image);
+            if (decoded == null) {
+                return image;
+            }
+            prepared = Files.createTempFile("antidoxx-prepared", ".jpg");
+            writeJpeg(toScaledGray(decoded), prepared);
+            long originalSize = Files.size(image);
+            long preparedSize = Files.size(prepared);
+            if (preparedSize >= originalSize) {
+                Files.delete(prepared);
+                return image;
+            }
+            logger.debug("Preprocessed {}: {} -> {} bytes", image.getFileName(), originalSize,
+                preparedSize);
+            return prepared;
+        } catch (IOException | RuntimeException e) {
+            logger.warn("Cannot preprocess image {}, using the original: {}", image.getFileName(),
+                e.getMessage());
+            if (prepared != null) {
+                release(image, prepared);
+            }
+            return image;
+        }
+    }
+
+    /**
+     * Deletes the copy returned by {@link #prepare}, if it is not the original.
+     */
+    public void release(Path image, Path prepared) {
+        if (prepared.equals(image)) {
+            return;
+        }
+        try {
+            Files.deleteIfExists(prepared);
+        } catch (IOException e) {
+            logger.warn("Cannot delete preprocessed image {}: {}", prepared, e.getMessage());
+        }
+    }
+
+    /**
+     * Decodes the first frame, skipping pixels so that the decoded image is at most
+     * about twice the target size.
+     */
+    private BufferedImage readSubsampled(Path image) throws IOException {
+        try (ImageInputStream input = ImageIO.createImageInputStream(image.toFile())) {
+            if (input == null) {
+                return null;
+            }
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(input);
+            if (!readers.hasNext()) {
+                return null;
+            }
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(input, true, true);
+                int longSide = Math.max(reader.getWidth(0), reader.getHeight(0));
+                int step = Math.max(1, longSide / (maxDimension * 2));
+                ImageReadParam param = reader.getDefaultReadParam();
+                param.setSourceSubsampling(step, step, 0, 0);
+                return reader.read(0, param);
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    private BufferedImage toScaledGray(BufferedImage source) {
+        double scale = Math.min(1.0,
+            (double) maxDimension / Math.max(source.getWidth(), source.getHeight()));
+        int width = Math.max(1, (int) Math.round(source.getWidth() * scale));
+        int height = Math.max(1, (int) Math.round(source.getHeight() * scale));
+        BufferedImage gray = new BufferedImage(width, height, BufferedImage.TYPE_BYTE_GRAY);
+        Graphics2D graphics = gray.createGraphics();
+        try {
+            graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION,
+                RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            // Transparent areas become white rather than black
+            graphics.setColor(Color.WHITE);
+            graphics.fillRect(0, 0, width, height);
+            graphics.drawImage(source, 0, 0, width, height, null);
+        } finally {
+            graphics.dispose();
+        }
+        return gray;
+    }
+
+    private void writeJpeg(BufferedImage image, Path target) throws IOException {
+        ImageWriter writer = ImageIO.getImageWritersByFormatName("jpeg").next();
+        ImageWriteParam param = writer.getDefaultWriteParam();
+        param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+        param.setCompressionQuality(jpegQuality);
+        try (ImageOutputStream output = ImageIO.createImageOutputStream(target.toFile())) {
+            writer.setOutput(output);
+            writer.write(null, new IIOImage(image, null, null), param);
+        } finally {
+            writer.dispose();
+        }
+    }
+}
@@ -0,0 +1,173 @@
+package com.antidoxx.backend;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Regex scan of a UTF-8 file that only decodes the lines that could contain a match.
+ * <p>
+ * Every pattern is ASCII, and so are the characters the {@link SensitiveCategory}
+ * prefilters count, so line breaks and prefilter counts can be found on the raw bytes.
+ * The file is memory-mapped and passed through a {@link ByteScanKernel} one chunk at a
+ * time. A line is decoded and matched only if some category's prefilter admits it. A line
+ * longer than the {@link StreamingScan} window is streamed through one, so memory stays
+ * bounded. Chunks that are not pure ASCII also go through a UTF-8 decoder, so invalid input
+ * fails as it does with {@link StreamingScan}.
+ * <p>
+ * The findings, including line numbers and UTF-16 columns, are identical to those of a
+ * {@link StreamingScan} over the same file. Not thread-safe; use one instance per scan.
+ */
+final class MappedFileScan implements ByteScanKernel.LineBreakListener {
+    // One MappedByteBuffer covers at most this much; larger files are streamed instead
+    static final long MAX_MAPPED_BYTES = Integer.MAX_VALUE;
+    private static final int CHUNK_BYTES = 64 * 1024;
+    private static final int LONG_LINE_BYTES = StreamingScan.DEFAULT_WINDOW_CHARS;
+
+    private final ByteScanKernel kernel;
+    private final MultiPatternScanner scanner = new MultiPatternScanner();
+    private final ByteLineCounts counts = new ByteLineCounts();
+    private final Findings findings = new Findings();
+    private final CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder()
+        .onMalformedInput(CodingErrorAction.REPORT)
+        .onUnmappableCharacter(CodingErrorAction.REPORT);
+    // Decoder output when validating; only checked for errors, never read
+    private final CharBuffer validationScratch = CharBuffer.allocate(8 * 1024);
+    private byte[] lineBytes = new byte[1024];
+
+    private ByteBuffer content;
+    private int chunkStart;
+    private int lineStart;
+    private int lineNumber = 1;
+    private boolean afterCarriageReturn;
+    // Bytes before this offset are known to be valid UTF-8
+    private int validatedUpTo;
+
+    MappedFileScan(ByteScanKernel kernel) {
+        this.kernel = kernel;
+    }
+
+    /**
+     * @param filePath a regular file of at most {@link #MAX_MAPPED_BYTES}
+     * @return the findings, in line order
+     * @throws CharacterCodingException if the file is not valid UTF-8
+     */
+    Findings scan(Path filePath) throws IOException {
+        try (FileChannel channel = FileChannel.open(filePath, StandardOpenOption.READ)) {
+            return scan(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    /**
+     * Scans UTF-8 content that is mapped or already in memory, from index 0 to its limit.
+     *
+     * @return the findings, in line order
+     * @throws CharacterCodingException if the content is not valid UTF-8
+     */
+    Findings scan(ByteBuffer content) throws IOException {
+        this.content = content;
+        int size = content.limit();
+        byte[] chunk = new byte[Math.min(CHUNK_BYTES, Math.max(size, 1))];
+        try {
+            for (chunkStart = 0; chunkStart < size; chunkStart += chunk.length) {
+                int length = Math.min(chunk.length, size - chunkStart);
+                content.get(chunkStart, chunk, 0, length);
+                boolean ascii = kernel.scan(chunk, length, counts, this);
+                validate(chunkStart + length, ascii);
+            }
+            finishValidation(size);
+            if (lineStart < size) {
+                endLine(lineStart, size);
+            }
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        findings.addCategoryNanos(scanner.categoryNanos());
+        return findings;
+    }
+
+    @Override
+    public void onLineBreak(int index, byte terminator) {
+        int position = chunkStart + index;
+        if (terminator == '\n' && afterCarriageReturn && position == lineStart) {
+            // The second half of "\r\n"
+            lineStart = position + 1;
+            afterCarriageReturn = false;
+            return;
+        }
+        endLine(lineStart, position);
+        lineStart = position + 1;
+        afterCarriageReturn = terminator == '\r';
+    }
+
+    private void endLine(int start, int end) {
+        int length = end - start;
+        if (length > 0 && counts.admitsAnyCategory()) {
+            if (length <= LONG_LINE_BYTES) {
+                if (lineBytes.length < length) {
+                    lineBytes = new byte[Math.max(length, lineBytes.length * 2)];
+                }
+                content.get(start, lineBytes, 0, length);
+                scanner.scanLine(new String(lineBytes, 0, length, StandardCharsets.UTF_8),
+                    lineNumber, findings);
+            } else {
+                scanLongLine(start, length);
+            }
+        }
+        counts.reset();
+        lineNumber++;
+    }
+
+    private void scanLongLine(int start, int length) {
+        int number = lineNumber;
+        StreamingScan scan = new StreamingScan((category, ignored, column, text, from, to) ->
+            findings.onMatch(category, number, column, text, from, to));
+        try {
+            scan.feed(content.slice(start, length));
+            scan.finish();
+        } catch (CharacterCodingException e) {
+            throw new UncheckedIOException(e);
+        }
+        findings.addCategoryNanos(scan.categoryNanos());
+    }
+
+    /**
+     * Checks that the bytes before {@code chunkEnd} are valid UTF-8. A pure ASCII chunk
+     * needs no decoding. Otherwise the decoder may leave the first bytes of a character
+     * split across chunks for the next call.
+     */
+    private void validate(int chunkEnd, boolean ascii) throws CharacterCodingException {
+        if (ascii && validatedUpTo == chunkStart) {
+            validatedUpTo = chunkEnd;
+            return;
+        }
+        ByteBuffer bytes = content.slice(validatedUpTo, chunkEnd - validatedUpTo);
+        while (true) {
+            CoderResult result = decoder.decode(bytes, validationScratch.clear(), false);
+            if (result.isError()) {
+                result.throwException();
+            }
+            if (result.isUnderflow()) {
+                break;
+            }
+        }
+        validatedUpTo += bytes.position();
+    }
+
+    private void finishValidation(int size) throws CharacterCodingException {
+        ByteBuffer rest = content.slice(validatedUpTo, size - validatedUpTo);
+        CoderResult result = decoder.decode(rest, validationScratch.clear(), true);
+        if (result.isError()) {
+            result.throwException();
+        }
+    }
+}
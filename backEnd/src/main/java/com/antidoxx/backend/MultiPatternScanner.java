@@ -0,0 +1,161 @@
+package com.antidoxx.backend;
+
+import java.util.regex.Matcher;
+
+/**
+ * Single-pass scanning engine behind {@link SensitiveInfoDetector}.
+ * <p>
+ * Each line is walked once to count the characters the patterns depend on (digits,
+ * '@', '.', '-'). Only the categories whose prerequisites are met run their regex,
+ * so the common line with no digits and no '@' never reaches the regex engine at all.
+ * Matchers are created once per scanner and re-pointed at each line with
+ * {@link Matcher#region(int, int)}, which keeps the result identical to matching the
+ * line as its own string. The region bounds are transparent, so a word boundary at either
+ * end of a region sees the character next to it; that is a line break for a whole line,
+ * and lets {@link StreamingScan} scan part of a line with the character before it as
+ * context.
+ * <p>
+ * A scanner holds mutable matchers and must not be shared between threads.
+ */
+final class MultiPatternScanner {
+
+    /**
+     * Receives matches in the same order the old per-pattern loop produced them:
+     * line by line, then category by category, then left to right. The match is
+     * {@code text[start, end)}, and begins at {@code column} within its line.
+     */
+    interface MatchSink {
+        void onMatch(SensitiveCategory category, int lineNumber, int column, CharSequence text,
+                     int start, int end);
+    }
+
+    private final Matcher[] matchers = new Matcher[SensitiveCategory.VALUES.length];
+    private final CharSequence[] targets = new CharSequence[SensitiveCategory.VALUES.length];
+    // Time spent in each category's regex, summed over every line this scanner has seen
+    private final long[] categoryNanos = new long[SensitiveCategory.VALUES.length];
+
+    /**
+     * Scans {@code text[from, to)} as '\n'-separated lines, matching the semantics of
+     * {@code String.split("\n")}. A trailing segment without a newline is a line.
+     *
+     * @param firstColumn the column of {@code from} within its line, non-zero only when
+     *                    the caller scans a line in fragments
+     * @return the number of the last line scanned
+     */
+    int scanLines(CharSequence text, int from, int to, int firstLineNumber, int firstColumn,
+                  MatchSink sink) {
+        int lineColumn = firstColumn;
+        int lineNumber = firstLineNumber;
+        int lineStart = from;
+        int digits = 0;
+        int digitRun = 0;
+        int longestDigitRun = 0;
+        int at = 0;
+        int dots = 0;
+        int dashes = 0;
+
+        for (int i = from; i < to; i++) {
+            char c = text.charAt(i);
+            if (c >= '0' && c <= '9') {
+                digits++;
+                if (++digitRun > longestDigitRun) {
+                    longestDigitRun = digitRun;
+                }
+                continue;
+            }
+            digitRun = 0;
+            switch (c) {
+                case '@' -> at++;
+                case '.' -> dots++;
+                case '-' -> dashes++;
+                case '\n' -> {
+                    scanLine(text, lineStart, i, lineNumber, lineColumn, digits, longestDigitRun,
+                        at, dots, dashes, sink);
+                    lineNumber++;
+                    lineStart = i + 1;
+                    lineColumn = 0;
+                    digits = longestDigitRun = at = dots = dashes = 0;
+                }
+                default -> {
+                }
+            }
+        }
+        scanLine(text, lineStart, to, lineNumber, lineColumn, digits, longestDigitRun, at, dots,
+            dashes, sink);
+        return lineNumber;
+    }
+
+    /**
+     * Scans a single line that has already been split off by the caller.
+     */
+    void scanLine(CharSequence line, int lineNumber, MatchSink sink) {
+        int digits = 0;
+        int digitRun = 0;
+        int longestDigitRun = 0;
+        int at = 0;
+        int dots = 0;
+        int dashes = 0;
+
+        int length = line.length();
+        for (int i = 0; i < length; i++) {
+            char c = line.charAt(i);
+            if (c >= '0' && c <= '9') {
+                digits++;
+                if (++digitRun > longestDigitRun) {
+                    longestDigitRun = digitRun;
+                }
+                continue;
+            }
+            digitRun = 0;
+            switch (c) {
+                case '@' -> at++;
+                case '.' -> dots++;
+                case '-' -> dashes++;
+                default -> {
+                }
+            }
+        }
+        scanLine(line, 0, length, lineNumber, 0, digits, longestDigitRun, at, dots, dashes, sink);
+    }
+
+    private void scanLine(CharSequence text, int start, int end, int lineNumber, int column,
+                          int digits, int longestDigitRun, int at, int dots, int dashes,
+                          MatchSink sink) {
+        if (start == end) {
+            return;
+        }
+        for (SensitiveCategory category : SensitiveCategory.VALUES) {
+            if (!category.admits(digits, longestDigitRun, at, dots, dashes)) {
+                continue;
+            }
+            long startNanos = System.nanoTime();
+            Matcher matcher = matcherFor(category, text);
+            matcher.region(start, end);
+            while (matcher.find()) {
+                sink.onMatch(category, lineNumber, column + matcher.start() - start, text,
+                    matcher.start(), matcher.end());
+            }
+            categoryNanos[category.ordinal()] += System.nanoTime() - startNanos;
+        }
+    }
+
+    /**
+     * @return the time spent in each category's regex so far, indexed by ordinal. Lines
+     *     a category's prefilter rejected cost it nothing.
+     */
+    long[] categoryNanos() {
+        return categoryNanos;
+    }
+
+    private Matcher matcherFor(SensitiveCategory category, CharSequence text) {
+        Matcher matcher = matchers[category.ordinal()];
+        if (matcher == null) {
+            matcher = category.pattern.matcher(text).useTransparentBounds(true);
+            matchers[category.ordinal()] = matcher;
+        } else if (targets[category.ordinal()] != text) {
+            matcher.reset(text);
+        }
+        targets[category.ordinal()] = text;
+        return matcher;
+    }
+}
@@ -0,0 +1,168 @@
+package com.antidoxx.backend;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+/**
+ * Two-tier cache of OCR text, keyed by the SHA-256 hash of the image bytes.
+ * <p>
+ * Recently used texts are kept in memory up to {@code ocr-cache.memory-max-chars}
+ * characters. Every text is also written to {@code antidoxx-ocr-cache}, next to the
+ * upload directory, so it survives restarts; once that directory grows past
+ * {@code ocr-cache.disk-max-bytes}, the least recently used files are deleted.
+ */
+@Service
+public class OCRCache {
+    private static final Logger logger = LoggerFactory.getLogger(OCRCache.class);
+    private static final String SUFFIX = ".txt";
+
+    private final Path directory;
+    private final long memoryMaxChars;
+    private final long diskMaxBytes;
+    private final LinkedHashMap<String, String> memory = new LinkedHashMap<>(64, 0.75f, true);
+    private long memoryChars;
+    private long diskBytes;
+
+    @Autowired
+    public OCRCache(@Value("${ocr-cache.memory-max-chars:4194304}") long memoryMaxChars,
+                    @Value("${ocr-cache.disk-max-bytes:67108864}") long diskMaxBytes)
+        throws IOException {
+        this(Paths.get(System.getProperty("java.io.tmpdir"), "antidoxx-ocr-cache"),
+            memoryMaxChars, diskMaxBytes);
+    }
+
+    OCRCache(Path directory, long memoryMaxChars, long diskMaxBytes) throws IOException {
+        this.directory = directory.toAbsolutePath().normalize();
+        this.memoryMaxChars = memoryMaxChars;
+        this.diskMaxBytes = diskMaxBytes;
+        Files.createDirectories(this.directory);
+        for (Path file : cacheFiles()) {
+            diskBytes += Files.size(file);
+        }
+    }
+
+    /**
+     * @return the cached OCR text of the image with this hash, or null if absent
+     */
+    public String get(String imageHash) {
+        synchronized (memory) {
+            String text = memory.get(imageHash);
+            if (text != null) {
+                return text;
+            }
+        }
+        Path file = directory.resolve(imageHash + SUFFIX);
+        try {
+            String text = Files.readString(file, StandardCharsets.UTF_8);
+            // Mark it as recently used for disk eviction
+            Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis()));
+            putInMemory(imageHash, text);
+            return text;
+        } catch (NoSuchFileException e) {
+            return null;
+        } catch (IOException e) {
+            logger.warn("Cannot read cached OCR text {}: {}", file, e.getMessage());
+            return null;
+        }
+    }
+
+    public void put(String imageHash, String text) {
+        putInMemory(imageHash, text);
+        try {
+            writeToDisk(imageHash, text);
+        } catch (IOException e) {
+            logger.warn("Cannot write OCR text to the disk cache: {}", e.getMessage());
+        }
+    }
+
+    private void putInMemory(String imageHash, String text) {
+        if (text.length() > memoryMaxChars) {
+            return;
+        }
+        synchronized (memory) {
+            String previous = memory.put(imageHash, text);
+            if (previous != null) {
+                memoryChars -= previous.length();
+            }
+            memoryChars += text.length();
+            Iterator<String> eldest = memory.values().iterator();
+            while (memoryChars > memoryMaxChars && eldest.hasNext()) {
+                memoryChars -= eldest.next().length();
+                eldest.remove();
+            }
+        }
+    }
+
+    private synchronized void writeToDisk(String imageHash, String text) throws IOException {
+        Path target = directory.resolve(imageHash + SUFFIX);
+        if (Files.exists(target)) {
+            return;
+        }
+        // Write to a temporary file first so a crash never leaves a truncated entry
+        Path temp = Files.createTempFile(directory, imageHash, ".tmp");
+        try {
+            Files.writeString(temp, text, StandardCharsets.UTF_8);
+            try {
+                Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+        diskBytes += Files.size(target);
+        if (diskBytes > diskMaxBytes) {
+            evictFromDisk();
+        }
+    }
+
+    private void evictFromDisk() throws IOException {
+        List<Path> files = cacheFiles();
+        List<FileTime> times = new ArrayList<>(files.size());
+        for (Path file : files) {
+            times.add(Files.getLastModifiedTime(file));
+        }
+        List<Integer> order = new ArrayList<>(files.size());
+        for (int i = 0; i < files.size(); i++) {
+            order.add(i);
+        }
+        order.sort(Comparator.comparing(times::get));
+        for (int i : order) {
+            if (diskBytes <= diskMaxBytes) {
+                break;
+            }
+            Path file = files.get(i);
+            long size = Files.size(file);
+            if (Files.deleteIfExists(file)) {
+                diskBytes -= size;
+            }
+        }
+    }
+
+    private List<Path> cacheFiles() throws IOException {
+        List<Path> files = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "*" + SUFFIX)) {
+            stream.forEach(files::add);
+        }
+        return files;
+    }
+}
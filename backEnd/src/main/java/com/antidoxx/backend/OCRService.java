@@ -1,67 +1,86 @@
 package com.antidoxx.backend;
 
-import java.io.FileInputStream;
-import java.io.IOException;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
-import org.springframework.stereotype.Service;
-import org.springframework.web.client.RestTemplate;
-import org.springframework.http.HttpEntity;
-import org.springframework.http.HttpHeaders;
-import org.springframework.http.HttpMethod;
-import org.springframework.http.ResponseEntity;
-import org.springframework.util.LinkedMultiValueMap;
-import org.springframework.util.MultiValueMap;
-
 import java.io.File;
+import java.net.http.HttpClient;
+import java.time.Duration;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.http.MediaType;
+import org.springframework.http.client.JdkClientHttpRequestFactory;
+import org.springframework.stereotype.Service;
+import org.springframework.util.LinkedMultiValueMap;
+import org.springframework.util.MultiValueMap;
+import org.springframework.web.client.ResourceAccessException;
+import org.springframework.web.client.RestClient;
+import org.springframework.web.client.RestClientResponseException;
+
+/**
+ * Client for the OCR.space text extraction API.
+ * <p>
+ * All calls share one JDK {@link HttpClient}, so connections to the OCR service are kept
+ * alive and reused. Images are uploaded as a multipart {@code file} part streamed from
+ * disk rather than as a base64 string built in memory. Connection failures and 429/5xx
+ * responses are retried up to {@code ocr.max-retries} times. Requests go through the OCR
+ * {@link DependencyGuard}; when it turns a request away, the
+ * {@link DependencyUnavailableException} reaches the caller instead of an empty result.
+ */
 @Service
 public class OCRService {
     private static final Logger logger = LoggerFactory.getLogger(OCRService.class);
     private static final List<String> SUPPORTED_EXTENSIONS = Arrays.asList(".png", ".jpg", ".jpeg", ".tiff", ".bmp", ".gif");
 
-    public OCRService() {}
+    private final RestClient restClient;
+    private final DependencyGuard guard;
+    private final String apiKey;
+    private final int maxRetries;
+    private final long retryBackoffMillis;
+
+    public OCRService(DependencyGuards guards,
+                      @Value("${ocr.url:https://api.ocr.space/parse/image}") String url,
+                      @Value("${ocr.api-key:${OCR_API_KEY:}}") String apiKey,
+                      @Value("${ocr.connect-timeout-ms:5000}") long connectTimeoutMillis,
+                      @Value("${ocr.read-timeout-ms:30000}") long readTimeoutMillis,
+                      @Value("${ocr.max-retries:2}") int maxRetries,
+                      @Value("${ocr.retry-backoff-ms:250}") long retryBackoffMillis) {
+        HttpClient httpClient = HttpClient.newBuilder()
+            .connectTimeout(Duration.ofMillis(connectTimeoutMillis))
+            .build();
+        JdkClientHttpRequestFactory requestFactory = new JdkClientHttpRequestFactory(httpClient);
+        requestFactory.setReadTimeout(Duration.ofMillis(readTimeoutMillis));
+        this.restClient = RestClient.builder()
+            .baseUrl(url)
+            .requestFactory(requestFactory)
+            .build();
+        this.guard = guards.ocr();
+        this.apiKey = apiKey;
+        this.maxRetries = maxRetries;
+        this.retryBackoffMillis = retryBackoffMillis;
+    }
 
-    public static String doOCR(File imageFile) {
-        String apiKey = System.getenv("OCR_API_KEY");
-        
+    public String doOCR(File imageFile) {
         if (apiKey == null || apiKey.trim().isEmpty()) {
             logger.error("OCR_API_KEY environment variable is not set. Cannot perform OCR.");
             throw new IllegalStateException("OCR_API_KEY environment variable is required but not set. " +
                 "Please set the OCR_API_KEY environment variable with your OCR.space API key.");
         }
 
-        try {
-            byte[] bytes = new byte[(int) imageFile.length()];
-            try (FileInputStream fis = new FileInputStream(imageFile)) {
-                fis.read(bytes);
-            }
-
-            String base64Image = java.util.Base64.getEncoder().encodeToString(bytes);
+        MultiValueMap<String, Object> body = new LinkedMultiValueMap<>();
+        body.add("file", new FileSystemResource(imageFile));
+        body.add("language", "eng");
 
-            RestTemplate restTemplate = new RestTemplate();
-            String url = "https://api.ocr.space/parse/image";
-
-            HttpHeaders headers = new HttpHeaders();
-            headers.add("apikey", apiKey);
-
-            MultiValueMap<String, Object> body = new LinkedMultiValueMap<>();
-            body.add("base64Image", "data:image/jpeg;base64," + base64Image);
-            body.add("language", "eng");
-
-            HttpEntity<MultiValueMap<String, Object>> requestEntity = new HttpEntity<>(body, headers);
-
-            ResponseEntity<Map> response = restTemplate.exchange(url, HttpMethod.POST, requestEntity, Map.class);
-
-            if (response.getBody() == null) {
+        try {
+            Map<String, Object> responseBody = guard.call(() -> postWithRetries(body));
+            if (responseBody == null) {
                 return "";
             }
-
-            Map<String, Object> responseBody = response.getBody();
-            logger.info("Response Body: " + responseBody);
+            logger.debug("OCR response body: {}", responseBody);
 
             List<Map<String, Object>> parsedResults = (List<Map<String, Object>>) responseBody.get("ParsedResults");
 
@@ -76,16 +95,48 @@ public class OCRService {
             }
 
             return result.toString();
-        } catch (IOException e) {
-            logger.error("Error reading image file: {}", imageFile.getAbsolutePath(), e);
-            return "";
+        } catch (DependencyUnavailableException e) {
+            throw e;
+        } catch (InterruptedException e) {
+            // Cancelled while backing off between retries: fail rather than report no text
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while calling OCR", e);
         } catch (Exception e) {
             logger.error("Error calling OCR.space API for file: {}", imageFile.getAbsolutePath(), e);
             return "";
         }
     }
 
-    public static String extractTextFromImage(File imageFile) {
+    private Map<String, Object> postWithRetries(MultiValueMap<String, Object> body)
+        throws InterruptedException {
+        for (int attempt = 0; ; attempt++) {
+            try {
+                return restClient.post()
+                    .header("apikey", apiKey)
+                    .contentType(MediaType.MULTIPART_FORM_DATA)
+                    .body(body)
+                    .retrieve()
+                    .body(new ParameterizedTypeReference<Map<String, Object>>() {});
+            } catch (ResourceAccessException | RestClientResponseException e) {
+                if (attempt >= maxRetries || !isRetryable(e)) {
+                    throw e;
+                }
+                logger.warn("OCR request failed (attempt {} of {}): {}", attempt + 1,
+                    maxRetries + 1, e.getMessage());
+                Thread.sleep(retryBackoffMillis << attempt);
+            }
+        }
+    }
+
+    private static boolean isRetryable(Exception e) {
+        if (e instanceof RestClientResponseException responseException) {
+            int status = responseException.getStatusCode().value();
+            return status == 429 || status >= 500;
+        }
+        return true;
+    }
+
+    public String extractTextFromImage(File imageFile) {
         if (imageFile == null) {
             throw new IllegalArgumentException("Image file cannot be null");
         }
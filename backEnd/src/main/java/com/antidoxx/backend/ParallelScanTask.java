@@ -0,0 +1,67 @@
+package com.antidoxx.backend;
+
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Fork/join scan of a large in-memory document.
+ * <p>
+ * The range is halved at the first line break after its midpoint until it is no larger
+ * than the leaf size, and each leaf is scanned with its own {@link MultiPatternScanner}
+ * using line numbers relative to the leaf. On the way back up, the right half's line
+ * numbers are shifted by the number of lines in the left half, so the merged result
+ * is in the same order and numbering as a sequential scan.
+ */
+final class ParallelScanTask extends RecursiveTask<ParallelScanTask.Chunk> {
+
+    /**
+     * Findings of one range, with line numbers relative to the start of the range.
+     */
+    record Chunk(Findings findings, int lineBreaks) {
+
+        private Chunk append(Chunk right) {
+            findings.append(right.findings, lineBreaks);
+            return new Chunk(findings, lineBreaks + right.lineBreaks);
+        }
+    }
+
+    private final CharSequence text;
+    private final int from;
+    private final int to;
+    private final int leafSize;
+
+    ParallelScanTask(CharSequence text, int from, int to, int leafSize) {
+        this.text = text;
+        this.from = from;
+        this.to = to;
+        this.leafSize = leafSize;
+    }
+
+    @Override
+    protected Chunk compute() {
+        if (to - from > leafSize) {
+            int split = lineStartAfter(from + (to - from) / 2);
+            if (split > from && split < to) {
+                ParallelScanTask left = new ParallelScanTask(text, from, split, leafSize);
+                ParallelScanTask right = new ParallelScanTask(text, split, to, leafSize);
+                left.fork();
+                Chunk rightChunk = right.compute();
+                return left.join().append(rightChunk);
+            }
+        }
+
+        Findings findings = new Findings(text);
+        MultiPatternScanner scanner = new MultiPatternScanner();
+        int lastLine = scanner.scanLines(text, from, to, 1, 0, findings);
+        findings.addCategoryNanos(scanner.categoryNanos());
+        return new Chunk(findings, lastLine - 1);
+    }
+
+    private int lineStartAfter(int index) {
+        for (int i = index; i < to; i++) {
+            if (text.charAt(i) == '\n') {
+                return i + 1;
+            }
+        }
+        return to;
+    }
+}
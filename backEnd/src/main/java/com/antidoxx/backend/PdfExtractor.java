@@ -0,0 +1,229 @@
+package com.antidoxx.backend;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.CharBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.imageio.ImageIO;
+
+import org.apache.pdfbox.Loader;
+import org.apache.pdfbox.cos.COSName;
+import org.apache.pdfbox.io.MemoryUsageSetting;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.PDResources;
+import org.apache.pdfbox.rendering.ImageType;
+import org.apache.pdfbox.rendering.PDFRenderer;
+import org.apache.pdfbox.text.PDFTextStripper;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+/**
+ * Extracts PDF text page by page with PDFBox. Each page is a part.
+ * <p>
+ * A loaded {@link PDDocument} is not thread-safe, so every worker gets its own instance of
+ * the document, each parsed lazily from the file, with PDFBox's buffers capped at an equal
+ * share of the document's memory limit. A page without text but with images is rendered
+ * and read with OCR, up to a number of pages per document.
+ */
+@Service
+public class PdfExtractor implements DocumentExtractor {
+    private final OCRService ocrService;
+    private final ImagePreprocessor imagePreprocessor;
+    private final PipelineMetrics metrics;
+    private final float ocrDpi;
+    private final int maxOcrPages;
+
+    public PdfExtractor(OCRService ocrService,
+                        ImagePreprocessor imagePreprocessor,
+                        PipelineMetrics metrics,
+                        @Value("${extract.pdf.ocr-dpi:150}") float ocrDpi,
+                        @Value("${extract.pdf.max-ocr-pages:20}") int maxOcrPages) {
+        this.ocrService = ocrService;
+        this.imagePreprocessor = imagePreprocessor;
+        this.metrics = metrics;
+        this.ocrDpi = ocrDpi;
+        this.maxOcrPages = maxOcrPages;
+    }
+
+    @Override
+    public boolean supports(String mimeType, String filename) {
+        return "application/pdf".equals(mimeType)
+            || filename.toLowerCase(Locale.ROOT).endsWith(".pdf");
+    }
+
+    @Override
+    public Document open(Path file, Limits limits) throws IOException {
+        return new PdfDocument(file, Math.max(1, limits.memoryBytes() / limits.workers()));
+    }
+
+    private final class PdfDocument implements Document {
+        private final Path file;
+        private final long memoryBytesPerInstance;
+        private final int pageCount;
+        // Loaded instances not in use by a worker
+        private final ConcurrentLinkedDeque<PDDocument> idle = new ConcurrentLinkedDeque<>();
+        private final List<PDDocument> loaded = new ArrayList<>();
+        private final AtomicInteger ocrPages = new AtomicInteger();
+
+        PdfDocument(Path file, long memoryBytesPerInstance) throws IOException {
+            this.file = file;
+            this.memoryBytesPerInstance = memoryBytesPerInstance;
+            PDDocument first = load();
+            pageCount = first.getNumberOfPages();
+            idle.push(first);
+        }
+
+        private PDDocument load() throws IOException {
+            PDDocument document = Loader.loadPDF(file.toFile(),
+                MemoryUsageSetting.setupMixed(memoryBytesPerInstance).streamCache);
+            synchronized (loaded) {
+                loaded.add(document);
+            }
+            return document;
+        }
+
+        @Override
+        public int partCount() {
+            return pageCount;
+        }
+
+        @Override
+        public String partName(int index) {
+            return "page " + (index + 1);
+        }
+
+        @Override
+        public void extract(int index, PartSink sink) throws IOException {
+            PDDocument document = idle.poll();
+            if (document == null) {
+                document = load();
+            }
+            try {
+                extractPage(document, index, sink);
+            } finally {
+                idle.push(document);
+            }
+        }
+
+        private void extractPage(PDDocument document, int index, PartSink sink)
+            throws IOException {
+            PDFTextStripper stripper = new PDFTextStripper();
+            stripper.setStartPage(index + 1);
+            stripper.setEndPage(index + 1);
+            SinkWriter writer = new SinkWriter(sink);
+            stripper.writeText(document, writer);
+            if (writer.hasText || !hasImages(document.getPage(index))) {
+                return;
+            }
+            if (ocrPages.incrementAndGet() > maxOcrPages) {
+                sink.skipped("image-only page beyond the limit of " + maxOcrPages +
+                    " OCR pages per document");
+                return;
+            }
+            try {
+                sink.text(readPageWithOcr(document, index));
+            } catch (DependencyUnavailableException e) {
+                sink.ocrUnavailable();
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            IOException failure = null;
+            synchronized (loaded) {
+                for (PDDocument document : loaded) {
+                    try {
+                        document.close();
+                    } catch (IOException e) {
+                        failure = e;
+                    }
+                }
+            }
+            if (failure != null) {
+                throw failure;
+            }
+        }
+    }
+
+    private static boolean hasImages(PDPage page) {
+        PDResources resources = page.getResources();
+        if (resources == null) {
+            return false;
+        }
+        for (COSName name : resources.getXObjectNames()) {
+            if (resources.isImageXObject(name)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Renders a page in grayscale and runs it through the same preprocessing and OCR as an
+     * uploaded image.
+     */
+    private String readPageWithOcr(PDDocument document, int index) throws IOException {
+        BufferedImage image = new PDFRenderer(document)
+            .renderImageWithDPI(index, ocrDpi, ImageType.GRAY);
+        Path rendered = Files.createTempFile("antidoxx-page", ".png");
+        try {
+            ImageIO.write(image, "png", rendered.toFile());
+            Path prepared = metrics.time("image-preprocess",
+                () -> imagePreprocessor.prepare(rendered));
+            try {
+                return metrics.time("ocr", () -> ocrService.extractTextFromImage(prepared.toFile()));
+            } finally {
+                imagePreprocessor.release(rendered, prepared);
+            }
+        } finally {
+            Files.deleteIfExists(rendered);
+        }
+    }
+
+    /**
+     * Passes the stripper's output straight to the sink, noting whether the page had any
+     * visible text.
+     */
+    private static final class SinkWriter extends Writer {
+        private final PartSink sink;
+        private boolean full;
+        boolean hasText;
+
+        SinkWriter(PartSink sink) {
+            this.sink = sink;
+        }
+
+        @Override
+        public void write(char[] chars, int offset, int length) {
+            if (full) {
+                return;
+            }
+            if (!hasText) {
+                for (int i = offset; i < offset + length; i++) {
+                    if (!Character.isWhitespace(chars[i])) {
+                        hasText = true;
+                        break;
+                    }
+                }
+            }
+            full = !sink.text(CharBuffer.wrap(chars, offset, length));
+        }
+
+        @Override
+        public void flush() {
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
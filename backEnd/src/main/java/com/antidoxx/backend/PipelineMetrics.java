@@ -0,0 +1,134 @@
+package com.antidoxx.backend;
+
+import java.util.concurrent.TimeUnit;
+
+import org.springframework.stereotype.Service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+/**
+ * Micrometer instrumentation of the analysis pipeline, exposed through the actuator
+ * ({@code /actuator/prometheus}).
+ * <ul>
+ *   <li>{@code antidoxx.stage} - latency of each stage, tagged {@code stage}</li>
+ *   <li>{@code antidoxx.regex.category} - regex time per scan, tagged {@code category}</li>
+ *   <li>{@code antidoxx.regex.scanned} - input scanned; bytes for files, characters for
+ *       text, tagged {@code source}</li>
+ *   <li>{@code antidoxx.findings} - findings, tagged {@code source} and {@code category}</li>
+ *   <li>{@code antidoxx.cache.requests} - cache lookups, tagged {@code cache} and
+ *       {@code result}</li>
+ *   <li>{@code antidoxx.errors} - failed stages, tagged {@code stage}</li>
+ *   <li>{@code antidoxx.fallbacks} - degraded paths taken, tagged {@code kind}</li>
+ *   <li>{@code antidoxx.dependency.limit}, {@code antidoxx.dependency.in-flight} and
+ *       {@code antidoxx.dependency.circuit} - concurrency limit, calls in flight and breaker
+ *       state (0 closed, 1 half-open, 2 open) of each external service, tagged
+ *       {@code dependency}</li>
+ * </ul>
+ */
+@Service
+public class PipelineMetrics {
+
+    /**
+     * A pipeline stage to be timed.
+     */
+    @FunctionalInterface
+    public interface Stage<T, E extends Exception> {
+        T run() throws E;
+    }
+
+    private final MeterRegistry registry;
+
+    public PipelineMetrics(MeterRegistry registry, AnalysisCache analysisCache) {
+        this.registry = registry;
+        FunctionCounter.builder("antidoxx.cache.requests", analysisCache, AnalysisCache::hits)
+            .tag("cache", "analysis").tag("result", "hit").register(registry);
+        FunctionCounter.builder("antidoxx.cache.requests", analysisCache, AnalysisCache::misses)
+            .tag("cache", "analysis").tag("result", "miss").register(registry);
+    }
+
+    /**
+     * Runs and times a stage. If it throws, the error is counted against the stage.
+     */
+    public <T, E extends Exception> T time(String stage, Stage<T, E> body) throws E {
+        long start = System.nanoTime();
+        try {
+            return body.run();
+        } catch (Exception e) {
+            error(stage);
+            throw e;
+        } finally {
+            record(stage, System.nanoTime() - start);
+        }
+    }
+
+    public void record(String stage, long nanos) {
+        Timer.builder("antidoxx.stage")
+            .tag("stage", stage)
+            .publishPercentileHistogram()
+            .register(registry)
+            .record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Records a finished regex scan: its input size, its time per category and the
+     * findings per category.
+     *
+     * @param source    {@code text}, {@code file} or {@code document}
+     * @param inputSize characters of text, or bytes of a file or document
+     */
+    void recordScan(Findings findings, String source, long inputSize) {
+        Counter.builder("antidoxx.regex.scanned").tag("source", source)
+            .register(registry).increment(inputSize);
+        int[] counts = new int[SensitiveCategory.VALUES.length];
+        for (int i = 0; i < findings.size(); i++) {
+            counts[findings.category(i).ordinal()]++;
+        }
+        for (SensitiveCategory category : SensitiveCategory.VALUES) {
+            long nanos = findings.categoryNanos(category);
+            if (nanos > 0) {
+                Timer.builder("antidoxx.regex.category").tag("category", category.name())
+                    .register(registry).record(nanos, TimeUnit.NANOSECONDS);
+            }
+            if (counts[category.ordinal()] > 0) {
+                findingsCounter("regex", category.name()).increment(counts[category.ordinal()]);
+            }
+        }
+    }
+
+    public void recordGeminiFindings(int count) {
+        if (count > 0) {
+            findingsCounter("gemini", "AI").increment(count);
+        }
+    }
+
+    private Counter findingsCounter(String source, String category) {
+        return Counter.builder("antidoxx.findings").tag("source", source)
+            .tag("category", category).register(registry);
+    }
+
+    public void cacheLookup(String cache, boolean hit) {
+        Counter.builder("antidoxx.cache.requests").tag("cache", cache)
+            .tag("result", hit ? "hit" : "miss").register(registry).increment();
+    }
+
+    public void error(String stage) {
+        Counter.builder("antidoxx.errors").tag("stage", stage).register(registry).increment();
+    }
+
+    public void fallback(String kind) {
+        Counter.builder("antidoxx.fallbacks").tag("kind", kind).register(registry).increment();
+    }
+
+    void registerDependency(DependencyGuard guard) {
+        Gauge.builder("antidoxx.dependency.limit", guard, DependencyGuard::limit)
+            .tag("dependency", guard.name()).register(registry);
+        Gauge.builder("antidoxx.dependency.in-flight", guard, DependencyGuard::inFlight)
+            .tag("dependency", guard.name()).register(registry);
+        Gauge.builder("antidoxx.dependency.circuit", guard, g -> g.state().ordinal())
+            .tag("dependency", guard.name()).register(registry);
+    }
+}
@@ -0,0 +1,196 @@
+package com.antidoxx.backend;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Where and how to mask the findings of a UTF-8 text, in bytes.
+ * <p>
+ * {@link Findings} locate matches by line and UTF-16 column. {@link #plan} turns them into
+ * byte ranges with one pass over the content, counting lines and columns the same way the
+ * scanners do. Overlapping matches are merged into one masked range. Writing the redacted
+ * copy then alternates between copying the unchanged bytes between two ranges straight
+ * from the source and writing the mask of a range, e.g. {@code [EMAIL]}.
+ */
+final class Redaction {
+    private static final byte[][] MASKS = new byte[SensitiveCategory.VALUES.length][];
+
+    static {
+        for (SensitiveCategory category : SensitiveCategory.VALUES) {
+            MASKS[category.ordinal()] =
+                ("[" + category.name() + "]").getBytes(StandardCharsets.US_ASCII);
+        }
+    }
+
+    private final int[] starts;
+    private final int[] ends;
+    private final SensitiveCategory[] categories;
+    private final int count;
+    private final long sourceSize;
+
+    private Redaction(int[] starts, int[] ends, SensitiveCategory[] categories, int count,
+                      long sourceSize) {
+        this.starts = starts;
+        this.ends = ends;
+        this.categories = categories;
+        this.count = count;
+        this.sourceSize = sourceSize;
+    }
+
+    /**
+     * Locates the findings of a scan of {@code content} in bytes.
+     *
+     * @param content  the scanned UTF-8 text, from position 0 to its limit
+     * @param findings the findings of a scan of exactly this content
+     */
+    static Redaction plan(ByteBuffer content, Findings findings) {
+        int size = findings.size();
+        // Every match start and end, as (line, column) points in text order
+        Integer[] order = new Integer[2 * size];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> {
+            int byLine = Integer.compare(findings.line(a >> 1), findings.line(b >> 1));
+            return byLine != 0 ? byLine
+                : Integer.compare(column(findings, a), column(findings, b));
+        });
+        int[] byteOffsets = new int[2 * size];
+        int next = 0;
+        int line = 1;
+        int column = 0;
+        boolean afterCarriageReturn = false;
+        int limit = content.limit();
+        for (int i = 0; i < limit && next < order.length; i++) {
+            byte b = content.get(i);
+            if (b == '\n' && afterCarriageReturn) {
+                // The second half of "\r\n"
+                afterCarriageReturn = false;
+                continue;
+            }
+            afterCarriageReturn = false;
+            while (next < order.length && isAtOrBefore(findings, order[next], line, column)) {
+                byteOffsets[order[next++]] = i;
+            }
+            if (b == '\n' || b == '\r') {
+                line++;
+                column = 0;
+                afterCarriageReturn = b == '\r';
+            } else if ((b & 0xC0) != 0x80) {
+                // A lead byte; four-byte sequences are surrogate pairs in UTF-16
+                column += (b & 0xF8) == 0xF0 ? 2 : 1;
+            }
+        }
+        while (next < order.length) {
+            // Matches ending at the end of the content
+            byteOffsets[order[next++]] = limit;
+        }
+        return merge(findings, byteOffsets, limit);
+    }
+
+    // Points are resolved when reached, or just after, should a column fall inside a character
+    private static boolean isAtOrBefore(Findings findings, int point, int line, int column) {
+        int pointLine = findings.line(point >> 1);
+        return pointLine < line || (pointLine == line && column(findings, point) <= column);
+    }
+
+    private static int column(Findings findings, int point) {
+        int index = point >> 1;
+        return (point & 1) == 0 ? findings.start(index) : findings.end(index);
+    }
+
+    private static Redaction merge(Findings findings, int[] byteOffsets, long sourceSize) {
+        int size = findings.size();
+        Integer[] byStart = new Integer[size];
+        for (int i = 0; i < size; i++) {
+            byStart[i] = i;
+        }
+        Arrays.sort(byStart, (a, b) -> Integer.compare(byteOffsets[2 * a], byteOffsets[2 * b]));
+        int[] starts = new int[size];
+        int[] ends = new int[size];
+        SensitiveCategory[] categories = new SensitiveCategory[size];
+        int count = 0;
+        for (int index : byStart) {
+            int start = byteOffsets[2 * index];
+            int end = byteOffsets[2 * index + 1];
+            if (count > 0 && start < ends[count - 1]) {
+                // Overlaps the previous range, which keeps its category
+                ends[count - 1] = Math.max(ends[count - 1], end);
+                continue;
+            }
+            starts[count] = start;
+            ends[count] = end;
+            categories[count] = findings.category(index);
+            count++;
+        }
+        return new Redaction(starts, ends, categories, count, sourceSize);
+    }
+
+    /**
+     * @return how many ranges are masked
+     */
+    int count() {
+        return count;
+    }
+
+    /**
+     * @return the size of the redacted copy in bytes
+     */
+    long redactedSize() {
+        long size = sourceSize;
+        for (int i = 0; i < count; i++) {
+            size += MASKS[categories[i].ordinal()].length - (ends[i] - starts[i]);
+        }
+        return size;
+    }
+
+    /**
+     * Writes the redacted copy of a file. Unchanged ranges are transferred from the file
+     * channel to {@code target} without passing through a buffer of ours.
+     */
+    void writeTo(FileChannel source, WritableByteChannel target) throws IOException {
+        writeTo(target, (from, to) -> {
+            for (long position = from; position < to; ) {
+                long transferred = source.transferTo(position, to - position, target);
+                if (transferred <= 0 && position >= source.size()) {
+                    throw new IOException("File changed while it was being redacted");
+                }
+                position += transferred;
+            }
+        });
+    }
+
+    /**
+     * Writes the redacted copy of content held in memory.
+     */
+    void writeTo(ByteBuffer source, WritableByteChannel target) throws IOException {
+        writeTo(target, (from, to) ->
+            writeFully(target, source.slice((int) from, (int) (to - from))));
+    }
+
+    @FunctionalInterface
+    private interface RangeCopy {
+        void copy(long from, long to) throws IOException;
+    }
+
+    private void writeTo(WritableByteChannel target, RangeCopy copy) throws IOException {
+        long position = 0;
+        for (int i = 0; i < count; i++) {
+            copy.copy(position, starts[i]);
+            writeFully(target, ByteBuffer.wrap(MASKS[categories[i].ordinal()]));
+            position = ends[i];
+        }
+        copy.copy(position, sourceSize);
+    }
+
+    private static void writeFully(WritableByteChannel target, ByteBuffer bytes)
+        throws IOException {
+        while (bytes.hasRemaining()) {
+            target.write(bytes);
+        }
+    }
+}
@@ -0,0 +1,117 @@
+package com.antidoxx.backend;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import org.springframework.stereotype.Service;
+
+/**
+ * Produces redacted copies of uploaded text files, with every regex finding replaced by
+ * the name of its category.
+ * <p>
+ * The file is memory-mapped, scanned by {@link SensitiveInfoDetector}, and the findings are
+ * located in bytes on the same mapping; see {@link Redaction}. The copy is only produced while
+ * it is written to the client, so memory use depends on the number of findings, not on the
+ * size of the file. Redacting does not consume the upload; it stays available for
+ * /file-advice.
+ */
+@Service
+public class RedactionService {
+    private final StorageHandler storageHandler;
+    private final SensitiveInfoDetector sensitiveInfoDetector;
+    private final PipelineMetrics metrics;
+
+    /**
+     * A redacted copy, ready to be written.
+     */
+    public static final class RedactedFile {
+        private final Redaction redaction;
+        private final Path path;
+        private final byte[] content;
+
+        private RedactedFile(Redaction redaction, Path path, byte[] content) {
+            this.redaction = redaction;
+            this.path = path;
+            this.content = content;
+        }
+
+        /**
+         * @return the size of the copy in bytes
+         */
+        public long size() {
+            return redaction.redactedSize();
+        }
+
+        /**
+         * @return how many ranges of the file are masked
+         */
+        public int redactions() {
+            return redaction.count();
+        }
+
+        public void writeTo(OutputStream out) throws IOException {
+            WritableByteChannel target = Channels.newChannel(out);
+            if (content != null) {
+                redaction.writeTo(ByteBuffer.wrap(content), target);
+                return;
+            }
+            try (FileChannel source = FileChannel.open(path, StandardOpenOption.READ)) {
+                redaction.writeTo(source, target);
+            }
+        }
+    }
+
+    public RedactionService(StorageHandler storageHandler,
+                            SensitiveInfoDetector sensitiveInfoDetector,
+                            PipelineMetrics metrics) {
+        this.storageHandler = storageHandler;
+        this.sensitiveInfoDetector = sensitiveInfoDetector;
+        this.metrics = metrics;
+    }
+
+    /**
+     * Scans an uploaded text file and works out its redaction.
+     *
+     * @param filename the stored file name returned by the upload endpoint
+     * @return the redacted copy, to be written with {@link RedactedFile#writeTo}
+     * @throws IOException If the file cannot be read or is not valid UTF-8.
+     * @throws UnsupportedFileTypeException If the file is not a text file.
+     */
+    public RedactedFile redact(String filename) throws IOException {
+        byte[] inMemory = storageHandler.fetchInMemory(filename);
+        if (inMemory != null) {
+            return new RedactedFile(scanAndPlan(ByteBuffer.wrap(inMemory)), null, inMemory);
+        }
+
+        Path filePath = storageHandler.fetchFile(filename);
+        if (filePath == null) {
+            throw new NoSuchFileException(filename, null, "no such upload, or it has expired");
+        }
+        String mimeType = storageHandler.mimeType(filePath);
+        if (mimeType == null || !mimeType.contains("text")) {
+            throw new UnsupportedFileTypeException(mimeType);
+        }
+        MappedByteBuffer mapped;
+        try (FileChannel channel = FileChannel.open(filePath, StandardOpenOption.READ)) {
+            if (channel.size() > MappedFileScan.MAX_MAPPED_BYTES) {
+                throw new IOException("File is too large to redact: " + filename);
+            }
+            mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        return new RedactedFile(scanAndPlan(mapped), filePath, null);
+    }
+
+    private Redaction scanAndPlan(ByteBuffer content) throws IOException {
+        Findings findings = metrics.time("regex", () -> sensitiveInfoDetector.scan(content));
+        metrics.recordScan(findings, "file", content.limit());
+        return metrics.time("redact-plan", () -> Redaction.plan(content, findings));
+    }
+}
@@ -0,0 +1,138 @@
+package com.antidoxx.backend;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Locale;
+import java.util.zip.GZIPInputStream;
+
+import io.airlift.compress.MalformedInputException;
+import io.airlift.compress.zstd.ZstdInputStream;
+
+/**
+ * Reads request bodies sent with {@code Content-Encoding} compression, under a size limit.
+ * <p>
+ * The limit applies to the decompressed bytes as they are read, so a small compressed body
+ * cannot expand into more text than an uncompressed one may hold.
+ */
+final class RequestBodies {
+
+    /**
+     * Thrown once a body is longer than its limit.
+     */
+    static final class TooLargeException extends IOException {
+        TooLargeException(long maxBytes) {
+            super("Request body is larger than " + maxBytes + " bytes");
+        }
+    }
+
+    private RequestBodies() {
+    }
+
+    /**
+     * @param contentEncoding the {@code Content-Encoding} header, or null if there is none
+     * @return whether {@link #decode} can read a body with this encoding
+     */
+    static boolean supports(String contentEncoding) {
+        return switch (normalize(contentEncoding)) {
+            case "", "identity", "gzip", "x-gzip", "zstd" -> true;
+            default -> false;
+        };
+    }
+
+    /**
+     * Wraps a request body so it reads as its decompressed bytes.
+     *
+     * @param body            the body as received
+     * @param contentEncoding the {@code Content-Encoding} header; must be
+     *                        {@linkplain #supports supported}
+     * @param maxBytes        how many decompressed bytes may be read before a
+     *                        {@link TooLargeException}
+     * @throws IOException If a compressed body has no valid header. A body that turns out
+     *     to be corrupt later fails the read with an {@link IOException} as well.
+     */
+    static InputStream decode(InputStream body, String contentEncoding, long maxBytes)
+        throws IOException {
+        InputStream decoded = switch (normalize(contentEncoding)) {
+            case "", "identity" -> body;
+            case "gzip", "x-gzip" -> new GZIPInputStream(body);
+            case "zstd" -> new ZstdInputStream(body);
+            default -> throw new IllegalArgumentException(
+                "Unsupported content encoding: " + contentEncoding);
+        };
+        return new LimitedInputStream(decoded, maxBytes);
+    }
+
+    private static String normalize(String contentEncoding) {
+        return contentEncoding == null ? "" : contentEncoding.trim().toLowerCase(Locale.ROOT);
+    }
+
+    private static final class LimitedInputStream extends FilterInputStream {
+        private final long maxBytes;
+        private long remaining;
+
+        LimitedInputStream(InputStream in, long maxBytes) {
+            super(in);
+            this.maxBytes = maxBytes;
+            this.remaining = maxBytes;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b;
+            try {
+                b = super.read();
+            } catch (MalformedInputException e) {
+                throw corrupt(e);
+            }
+            if (b >= 0) {
+                count(1);
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            // Reads one byte past the limit, so a body of exactly maxBytes still passes
+            int read;
+            try {
+                read = super.read(b, off, (int) Math.min(len, remaining + 1));
+            } catch (MalformedInputException e) {
+                throw corrupt(e);
+            }
+            if (read > 0) {
+                count(read);
+            }
+            return read;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped;
+            try {
+                skipped = super.skip(Math.min(n, remaining + 1));
+            } catch (MalformedInputException e) {
+                throw corrupt(e);
+            }
+            count(skipped);
+            return skipped;
+        }
+
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+
+        // The zstd decoder reports corrupt input unchecked, unlike GZIPInputStream
+        private static IOException corrupt(MalformedInputException e) {
+            return new IOException("Corrupt compressed body: " + e.getMessage(), e);
+        }
+
+        private void count(long bytes) throws TooLargeException {
+            remaining -= bytes;
+            if (remaining < 0) {
+                throw new TooLargeException(maxBytes);
+            }
+        }
+    }
+}
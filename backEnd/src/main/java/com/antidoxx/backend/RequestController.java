@@ -1,280 +1,658 @@
 package com.antidoxx.backend;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.io.Serializable;
-import java.nio.file.Files;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Path;
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.ContentDisposition;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.CrossOrigin;
+import org.springframework.web.bind.annotation.DeleteMapping;
 import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PatchMapping;
+import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
-import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
-import com.google.genai.types.Content;
-import com.google.genai.types.GenerateContentResponse;
-import com.google.genai.types.Part;
 
 
 @CrossOrigin(origins = "${cors.allowed-origins}")
 @RestController
 public class RequestController {
     private final StorageHandler storageHandler;
-    private final SensitiveInfoDetector sensitiveInfoDetector;
-    private final Gemini gemini;
-    private final String TEXT_PROMPT =
-        "Please analyze the following for any personally identifiable information (PII) " +
-            "such as names, addresses, phone numbers, email addresses, social security numbers, " +
-            "credit card numbers, IP addresses, and other potentially sensitive data. " +
-            "Provide your response as a JSON array of improvements/findings. " +
-            "Each item in the array should be a brief description of the sensitive information found. " +
-            "Format: [\"finding1\", \"finding2\", \"finding3\"] " +
-            "If no sensitive information is found, return an empty array: [] " +
-            "ONLY return the JSON array, no other text or explanation.";
+    private final AnalysisService analysisService;
+    private final ScanJobService scanJobService;
+    private final BulkScanService bulkScanService;
+    private final RedactionService redactionService;
+    private final EditSessionService editSessionService;
+    private final PipelineMetrics metrics;
+    private final ObjectMapper objectMapper;
+    private final int bulkMaxFiles;
+    private final long textMaxBytes;
+
+    // Upper bound on how long a job status request may block waiting for the result
+    private static final long MAX_JOB_WAIT_MS = 30_000;
+    // Streams are closed by the analysis deadline long before this
+    private static final long STREAM_TIMEOUT_MS = 120_000;
 
     Logger logger = LoggerFactory.getLogger(RequestController.class);
 
-    public RequestController(StorageHandler storageHandler,
-                             SensitiveInfoDetector sensitiveInfoDetector,
-                             Gemini gemini) {
+    public RequestController(StorageHandler storageHandler, AnalysisService analysisService,
+                             ScanJobService scanJobService, BulkScanService bulkScanService,
+                             RedactionService redactionService,
+                             EditSessionService editSessionService,
+                             PipelineMetrics metrics, ObjectMapper objectMapper,
+                             @Value("${bulk.max-files:1000}") int bulkMaxFiles,
+                             @Value("${text-advice.max-bytes:16777216}") long textMaxBytes) {
         this.storageHandler = storageHandler;
-        this.sensitiveInfoDetector = sensitiveInfoDetector;
-        this.gemini = gemini;
+        this.analysisService = analysisService;
+        this.scanJobService = scanJobService;
+        this.bulkScanService = bulkScanService;
+        this.redactionService = redactionService;
+        this.editSessionService = editSessionService;
+        this.metrics = metrics;
+        this.objectMapper = objectMapper;
+        this.bulkMaxFiles = bulkMaxFiles;
+        this.textMaxBytes = textMaxBytes;
     }
 
-    private String analyzeWithGemini(Content data) {
-        Content[] contentArr = {data, Content.fromParts(Part.fromText(TEXT_PROMPT))};
-        var response = gemini.getGemini().models.generateContent("gemini-2.5-flash",
-            Arrays.asList(contentArr), null);
-        return extractContentFromResponse(response);
+    /**
+     * takes in raw text advice
+     *
+     * @param input raw text advice from the frontend chat interface
+     * @return text advice
+     */
+    @GetMapping("/text-advice")
+    public Map<String, Serializable> getTextAdvice(@RequestParam("text") String input) {
+        try {
+            AnalysisResult analysisResult = analysisService.analyzeText(input);
+            return Map.of("code", 0, "message", analysisResult.message(),
+                "findings", analysisResult.findings(), "partial", analysisResult.partial(),
+                "degraded", analysisResult.degraded());
+        } catch (Exception e) {
+            metrics.error("text-advice");
+            return Map.of("code", -1, "message", "Error: " + e.getMessage());
+        }
     }
 
-    private String analyzeTextWithGemini(String content) {
-        Content data = Content.fromParts(Part.fromBytes(content.getBytes(), "text/markdown"));
-        return analyzeWithGemini(data);
+    /**
+     * Variant of /text-advice for large pastes, with the text as the request body instead
+     * of a URL parameter. The body is scanned as it is read, and may be compressed with
+     * {@code Content-Encoding: gzip} or {@code zstd}. It may hold at most
+     * {@code text-advice.max-bytes} of text: a larger Content-Length is refused before
+     * anything is read, and reading stops as soon as the decompressed text goes over.
+     *
+     * @param headers the request headers
+     * @param body    the UTF-8 text, possibly compressed
+     * @return text advice, as for the GET variant
+     */
+    @PostMapping("/text-advice")
+    public ResponseEntity<Map<String, Serializable>> postTextAdvice(
+        @RequestHeader HttpHeaders headers, InputStream body) {
+        ResponseEntity<Map<String, Serializable>> rejected = rejectTextBody(headers);
+        if (rejected != null) {
+            return rejected;
+        }
+        try (InputStream text = RequestBodies.decode(body,
+            headers.getFirst(HttpHeaders.CONTENT_ENCODING), textMaxBytes)) {
+            AnalysisResult analysisResult = analysisService.analyzeText(text);
+            return new ResponseEntity<>(Map.of("code", analysisResult.code(),
+                "message", analysisResult.message(),
+                "findings", analysisResult.findings(),
+                "partial", analysisResult.partial(),
+                "degraded", analysisResult.degraded()), HttpStatus.OK);
+        } catch (Exception e) {
+            return textBodyError(e, "text-advice");
+        }
     }
 
-    private String analyzeImageWithGemini(Path filePath) throws IOException {
-        byte[] imageBytes = Files.readAllBytes(filePath);
-        Content data =
-            Content.fromParts(Part.fromBytes(imageBytes, storageHandler.mimeType(filePath)));
-        return analyzeWithGemini(data);
+    /**
+     * Checks the headers of a text body before anything is read.
+     *
+     * @return the error response if the body is refused, or null to go on reading it
+     */
+    private ResponseEntity<Map<String, Serializable>> rejectTextBody(HttpHeaders headers) {
+        String contentEncoding = headers.getFirst(HttpHeaders.CONTENT_ENCODING);
+        if (!RequestBodies.supports(contentEncoding)) {
+            return new ResponseEntity<>(Map.of("code", -1,
+                "message", "Error: Unsupported content encoding - " + contentEncoding),
+                HttpStatus.UNSUPPORTED_MEDIA_TYPE);
+        }
+        if (headers.getContentLength() > textMaxBytes) {
+            return textTooLarge();
+        }
+        return null;
     }
 
-    private String extractContentFromResponse(GenerateContentResponse response) {
-        if (response == null) {
-            return "No analysis available.";
+    private ResponseEntity<Map<String, Serializable>> textBodyError(Exception e,
+                                                                    String endpoint) {
+        if (e instanceof RequestBodies.TooLargeException) {
+            return textTooLarge();
+        }
+        if (e instanceof CharacterCodingException) {
+            return new ResponseEntity<>(
+                Map.of("code", -1, "message", "Error: The text is not valid UTF-8"),
+                HttpStatus.BAD_REQUEST);
         }
+        if (e instanceof IOException) {
+            // Also corrupt compressed bodies
+            logger.warn("Error reading text body: {}", e.getMessage());
+            metrics.error(endpoint);
+            return new ResponseEntity<>(
+                Map.of("code", -1, "message", "Error: Unable to read text - " + e.getMessage()),
+                HttpStatus.BAD_REQUEST);
+        }
+        logger.error("Error analyzing text body", e);
+        metrics.error(endpoint);
+        return new ResponseEntity<>(Map.of("code", -1, "message", "Error: " + e.getMessage()),
+            HttpStatus.INTERNAL_SERVER_ERROR);
+    }
 
-        try {
+    private ResponseEntity<Map<String, Serializable>> textTooLarge() {
+        return new ResponseEntity<>(Map.of("code", -1, "message",
+            "Error: The text is too large; at most " + textMaxBytes + " bytes can be scanned."),
+            HttpStatus.PAYLOAD_TOO_LARGE);
+    }
 
-            // Extract text content from the response by parsing the string representation
-            String responseStr = response.text();
+    /**
+     * Edits to the text of an edit session.
+     *
+     * @param version the version returned by the session's last check
+     * @param edits   the changed line ranges, applied in order
+     */
+    public record EditRequest(int version, List<EditSessionService.Edit> edits) {
+    }
 
-            // Find the text content in the response string
-            // This is a simple approach to extract the actual content from the response
-            if (responseStr.contains("text=")) {
-                int startIndex = responseStr.indexOf("text=") + 5;
-                int endIndex = responseStr.indexOf("}", startIndex);
-                if (endIndex == -1) {
-                    endIndex = responseStr.length();
-                }
-                String content = responseStr.substring(startIndex, endIndex);
-                // Clean up the extracted content
-                content = content.replaceAll("^[\"']|[\"']$", ""); // Remove quotes
-                return content.trim();
-            }
+    /**
+     * Starts an edit session for scan-as-you-type: the text is analyzed in full once, and
+     * later checks send only the changed lines to PATCH /edit-sessions/{sessionId}. The
+     * body is read like that of POST /text-advice.
+     *
+     * @param headers the request headers
+     * @param body    the UTF-8 text, possibly compressed
+     * @return the session id and version, with the analysis of the text
+     */
+    @PostMapping("/edit-sessions")
+    public ResponseEntity<Map<String, Serializable>> createEditSession(
+        @RequestHeader HttpHeaders headers, InputStream body) {
+        ResponseEntity<Map<String, Serializable>> rejected = rejectTextBody(headers);
+        if (rejected != null) {
+            return rejected;
+        }
+        try (InputStream text = RequestBodies.decode(body,
+            headers.getFirst(HttpHeaders.CONTENT_ENCODING), textMaxBytes)) {
+            String content = StandardCharsets.UTF_8.newDecoder()
+                .decode(ByteBuffer.wrap(text.readAllBytes())).toString();
+            return editSessionCheck(editSessionService.create(content));
+        } catch (IllegalArgumentException e) {
+            return new ResponseEntity<>(Map.of("code", -1, "message", "Error: " + e.getMessage()),
+                HttpStatus.BAD_REQUEST);
+        } catch (Exception e) {
+            return textBodyError(e, "edit-sessions");
+        }
+    }
 
-            while (responseStr.contains("Optional[")) {
-                int begin = responseStr.lastIndexOf("Optional[");
-                int end = responseStr.indexOf("]", begin);
-                responseStr = responseStr.substring(begin + 9, end);
+    /**
+     * Applies edits to an edit session's text and analyzes it again. Only the changed
+     * lines are scanned, and only changed paragraphs go to Gemini.
+     *
+     * @param sessionId id returned when the session was started
+     * @param request   the version the edits are based on, and the edits
+     * @return the new version, with the analysis of the whole text; 404 if the session has
+     *     expired and must be started again, 409 with the session's version if the edits
+     *     are based on another one
+     */
+    @PatchMapping("/edit-sessions/{sessionId}")
+    public ResponseEntity<Map<String, Serializable>> updateEditSession(
+        @PathVariable("sessionId") String sessionId, @RequestBody EditRequest request) {
+        try {
+            EditSessionService.Check check = editSessionService.update(sessionId,
+                request.version(), request.edits() != null ? request.edits() : List.of());
+            if (check == null) {
+                return new ResponseEntity<>(Map.of("code", -1,
+                    "message", "Error: Unknown or expired edit session - " + sessionId),
+                    HttpStatus.NOT_FOUND);
             }
+            return editSessionCheck(check);
+        } catch (EditSessionService.VersionConflictException e) {
+            return new ResponseEntity<>(Map.of("code", -1, "message", "Error: " + e.getMessage(),
+                "version", e.getVersion()), HttpStatus.CONFLICT);
+        } catch (IllegalArgumentException e) {
+            return new ResponseEntity<>(Map.of("code", -1, "message", "Error: " + e.getMessage()),
+                HttpStatus.BAD_REQUEST);
+        } catch (Exception e) {
+            logger.error("Error analyzing edit session: {}", sessionId, e);
+            metrics.error("edit-sessions");
+            return new ResponseEntity<>(Map.of("code", -1, "message", "Error: " + e.getMessage()),
+                HttpStatus.INTERNAL_SERVER_ERROR);
+        }
+    }
 
-            logger.info("Response Body: " + responseStr);
+    /**
+     * Ends an edit session, releasing its memory before it would expire.
+     *
+     * @param sessionId id returned when the session was started
+     */
+    @DeleteMapping("/edit-sessions/{sessionId}")
+    public ResponseEntity<Map<String, Serializable>> closeEditSession(
+        @PathVariable("sessionId") String sessionId) {
+        if (!editSessionService.close(sessionId)) {
+            return new ResponseEntity<>(Map.of("code", -1,
+                "message", "Error: Unknown or expired edit session - " + sessionId),
+                HttpStatus.NOT_FOUND);
+        }
+        return new ResponseEntity<>(Map.of("code", 0), HttpStatus.OK);
+    }
 
-            return responseStr.trim();
+    private ResponseEntity<Map<String, Serializable>> editSessionCheck(
+        EditSessionService.Check check) {
+        AnalysisResult analysisResult = check.result();
+        return new ResponseEntity<>(Map.of("code", analysisResult.code(),
+            "sessionId", check.sessionId(),
+            "version", check.version(),
+            "message", analysisResult.message(),
+            "findings", analysisResult.findings(),
+            "partial", analysisResult.partial(),
+            "degraded", analysisResult.degraded()), HttpStatus.OK);
+    }
+
+    /**
+     * Unified endpoint that handles both text files and images for PII analysis
+     *
+     * @param filename file name from the frontend interface
+     * @return analysis advice based on file type
+     */
+    @GetMapping("/file-advice")
+    public ResponseEntity<Map<String, Serializable>> getFileAdvice(
+        @RequestParam("filename") String filename) {
+        try {
+            AnalysisResult analysisResult = analysisService.analyzeFile(filename);
+            return new ResponseEntity<>(Map.of("code", analysisResult.code(),
+                "message", analysisResult.message(),
+                "findings", analysisResult.findings(),
+                "partial", analysisResult.partial(),
+                "degraded", analysisResult.degraded()), HttpStatus.OK);
+
+        } catch (UnsupportedFileTypeException e) {
+            return new ResponseEntity<>(
+                Map.of("code", -1, "message", "Error: Unsupported file type - " + e.getMimeType()),
+                HttpStatus.BAD_REQUEST);
+        } catch (IOException e) {
+            logger.error("Error reading file: {}", filename, e);
+            metrics.error("file-advice");
+            return new ResponseEntity<>(
+                Map.of("code", -1, "message", "Error: Unable to read file - " + e.getMessage()),
+                HttpStatus.BAD_REQUEST);
         } catch (Exception e) {
-            logger.warn("Error extracting content from response: {}", e.getMessage());
-            return response.toString();
+            logger.error("Error analyzing file: {}", filename, e);
+            metrics.error("file-advice");
+            return new ResponseEntity<>(
+                Map.of("code", -1, "message", "Error analyzing file: " + e.getMessage()),
+                HttpStatus.INTERNAL_SERVER_ERROR);
         }
     }
 
     /**
-     * Parses the Gemini response to extract a list of improvements/findings
-     * Expects a JSON array format from Gemini
+     * Streamed variant of /text-advice. Sends a {@code regex} event with the local
+     * findings as soon as they are ready, a {@code gemini} event for each AI finding as it
+     * arrives, and finally a {@code result} event with the same body /text-advice returns.
+     *
+     * @param input raw text advice from the frontend chat interface
+     * @return the event stream
      */
-    private List<String> parseGeminiResponse(String geminiResponse) {
-        List<String> improvements = new ArrayList<>();
-        
-        try {
-            // Clean up the response - remove markdown code blocks if present
-            String cleanResponse = geminiResponse.trim();
-            if (cleanResponse.startsWith("```json")) {
-                cleanResponse = cleanResponse.substring(7);
+    @GetMapping(value = "/text-advice/stream", produces = "text/event-stream")
+    public SseEmitter streamTextAdvice(@RequestParam("text") String input) {
+        SseEmitter emitter = new SseEmitter(STREAM_TIMEOUT_MS);
+        completeStream(emitter, analysisService.streamText(input, streamListener(emitter)), "text");
+        return emitter;
+    }
+
+    /**
+     * Streamed variant of /file-advice. Sends the same events as /text-advice/stream,
+     * plus {@code status} events while an image goes through OCR.
+     *
+     * @param filename file name from the frontend interface
+     * @return the event stream
+     */
+    @GetMapping(value = "/file-advice/stream", produces = "text/event-stream")
+    public SseEmitter streamFileAdvice(@RequestParam("filename") String filename) {
+        SseEmitter emitter = new SseEmitter(STREAM_TIMEOUT_MS);
+        completeStream(emitter, analysisService.streamFile(filename, streamListener(emitter)),
+            filename);
+        return emitter;
+    }
+
+    private AnalysisListener streamListener(SseEmitter emitter) {
+        return new AnalysisListener() {
+            @Override
+            public void onRegexFindings(List<Finding> findings, List<String> descriptions) {
+                sendEvent(emitter, "regex",
+                    Map.of("findings", findings, "descriptions", descriptions));
             }
-            if (cleanResponse.startsWith("```")) {
-                cleanResponse = cleanResponse.substring(3);
+
+            @Override
+            public void onStatus(String status) {
+                sendEvent(emitter, "status", Map.of("message", status));
             }
-            if (cleanResponse.endsWith("```")) {
-                cleanResponse = cleanResponse.substring(0, cleanResponse.length() - 3);
+
+            @Override
+            public void onGeminiFinding(String finding) {
+                sendEvent(emitter, "gemini", Map.of("finding", finding));
             }
-            cleanResponse = cleanResponse.trim();
-            
-            // Parse the JSON array
-            ObjectMapper mapper = new ObjectMapper();
-            improvements = mapper.readValue(cleanResponse, new TypeReference<List<String>>() {});
-            
-            logger.info("Successfully parsed {} improvements from Gemini response", improvements.size());
-        } catch (Exception e) {
-            logger.warn("Error parsing Gemini response as JSON: {}. Attempting fallback parsing.", e.getMessage());
-            
-            // Fallback: try to extract improvements from text format
-            String[] lines = geminiResponse.split("\n");
-            for (String line : lines) {
-                line = line.trim();
-                // Look for lines that start with bullets or numbers
-                if (line.matches("^[•\\-*]\\s+.*") || line.matches("^\\d+\\.\\s+.*")) {
-                    String improvement = line.replaceFirst("^[•\\-*\\d.]+\\s+", "").trim();
-                    if (!improvement.isEmpty()) {
-                        improvements.add(improvement);
-                    }
+        };
+    }
+
+    private void completeStream(SseEmitter emitter, CompletableFuture<AnalysisResult> analysis,
+                                String subject) {
+        analysis.whenComplete((analysisResult, error) -> {
+            try {
+                if (error == null) {
+                    sendEvent(emitter, "result", Map.of("code", analysisResult.code(),
+                        "message", analysisResult.message(),
+                        "findings", analysisResult.findings(),
+                        "partial", analysisResult.partial(),
+                        "degraded", analysisResult.degraded()));
+                    emitter.complete();
+                    return;
                 }
+                Throwable cause = error instanceof CompletionException ? error.getCause() : error;
+                if (cause instanceof UncheckedIOException) {
+                    // The client went away; there is nobody left to tell
+                    logger.debug("Stream for {} closed by client", subject);
+                    emitter.complete();
+                    return;
+                }
+                logger.error("Error streaming analysis for: {}", subject, cause);
+                String message = cause instanceof UnsupportedFileTypeException unsupported
+                    ? "Error: Unsupported file type - " + unsupported.getMimeType()
+                    : "Error: " + cause.getMessage();
+                sendEvent(emitter, "error", Map.of("code", -1, "message", message));
+                emitter.complete();
+            } catch (UncheckedIOException e) {
+                emitter.completeWithError(e.getCause());
             }
-            
-            // If still empty, return the raw response as a single item
-            if (improvements.isEmpty() && !geminiResponse.trim().isEmpty()) {
-                improvements.add(geminiResponse.trim());
-            }
-        }
-        
-        return improvements;
+        });
     }
 
-    private String analyzeContent(String content, String contentType) {
-        StringBuilder result = new StringBuilder();
+    private void sendEvent(SseEmitter emitter, String name, Object data) {
+        try {
+            emitter.send(SseEmitter.event().name(name).data(data));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
 
-        // First check for sensitive information using our local detector
-        java.util.List<String> sensitiveItems = sensitiveInfoDetector.detectSensitiveInfo(content);
+    /**
+     * Queues an analysis of an uploaded file and returns immediately with the job id.
+     * Responds 429 when too many jobs are already waiting.
+     *
+     * @param filename file name returned by the upload endpoint
+     * @return the job id and its initial status
+     */
+    @PostMapping("/scan-jobs")
+    public ResponseEntity<Map<String, Object>> submitScanJob(
+        @RequestParam("filename") String filename) {
+        Map<String, Object> response = new HashMap<>();
+        try {
+            if (!storageHandler.exists(filename)) {
+                response.put("code", -1);
+                response.put("message", "Error: File not found - " + filename);
+                return new ResponseEntity<>(response, HttpStatus.NOT_FOUND);
+            }
+            ScanJobService.ScanJob job = scanJobService.submit(filename);
+            response.put("code", 0);
+            response.put("jobId", job.id());
+            response.put("status", job.status().name().toLowerCase());
+            return new ResponseEntity<>(response, HttpStatus.ACCEPTED);
+        } catch (RejectedExecutionException e) {
+            logger.warn("Scan job queue is full, rejecting file: {}", filename);
+            response.put("code", -1);
+            response.put("message", "Too many scans in progress, please retry shortly.");
+            return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                .header("Retry-After", "1").body(response);
+        }
+    }
 
-        // Then get AI analysis
-        String geminiAnalysis = analyzeTextWithGemini(content);
-        List<String> geminiFindings = parseGeminiResponse(geminiAnalysis);
+    /**
+     * Reports the status of a scan job, and its result once it has finished.
+     *
+     * @param jobId  id returned when the job was submitted
+     * @param waitMs how long to wait for the job to finish before answering, capped at
+     *               30 seconds; 0 answers immediately
+     * @return the job status, plus the analysis result when done
+     */
+    @GetMapping("/scan-jobs/{jobId}")
+    public ResponseEntity<Map<String, Object>> getScanJob(@PathVariable("jobId") String jobId,
+        @RequestParam(value = "waitMs", defaultValue = "0") long waitMs) {
+        Map<String, Object> response = new HashMap<>();
+        ScanJobService.ScanJob job = scanJobService.get(jobId);
+        if (job == null) {
+            response.put("code", -1);
+            response.put("message", "Error: Unknown or expired scan job - " + jobId);
+            return new ResponseEntity<>(response, HttpStatus.NOT_FOUND);
+        }
+        response.put("jobId", job.id());
+        try {
+            AnalysisResult analysisResult = waitMs > 0
+                ? job.result().get(Math.min(waitMs, MAX_JOB_WAIT_MS), TimeUnit.MILLISECONDS)
+                : job.result().getNow(null);
+            if (analysisResult != null) {
+                response.put("code", analysisResult.code());
+                response.put("message", analysisResult.message());
+                response.put("findings", analysisResult.findings());
+                response.put("partial", analysisResult.partial());
+                response.put("degraded", analysisResult.degraded());
+            } else {
+                response.put("code", 0);
+            }
+        } catch (TimeoutException e) {
+            response.put("code", 0);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            response.put("code", 0);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            response.put("code", -1);
+            response.put("message", cause instanceof UnsupportedFileTypeException unsupported
+                ? "Error: Unsupported file type - " + unsupported.getMimeType()
+                : "Error analyzing file: " + cause.getMessage());
+        }
+        response.put("status", job.status().name().toLowerCase());
+        return new ResponseEntity<>(response, HttpStatus.OK);
+    }
 
-        // Combine both findings into a single list
-        List<String> allFindings = new ArrayList<>();
-        allFindings.addAll(sensitiveItems);
-        allFindings.addAll(geminiFindings);
+    /**
+     * Analyzes many files in one request: uploaded {@code files}, already stored
+     * {@code filenames}, or both. Files are analyzed in parallel, at most
+     * {@code concurrency} at a time (capped by {@code bulk.max-concurrency}), and the
+     * response streams one NDJSON line per file as soon as that file is done. Each line
+     * holds the file's {@code index} in the request (uploads first, then stored names), its
+     * {@code name}, its stored {@code filename}, and the fields /file-advice returns.
+     *
+     * @param files       files to upload and analyze
+     * @param filenames   file names returned by earlier uploads
+     * @param concurrency how many files to analyze at once; 0 for the maximum
+     * @return the NDJSON stream, or a JSON error if no files or too many were given
+     */
+    @PostMapping("/bulk-advice")
+    public ResponseEntity<StreamingResponseBody> bulkAdvice(
+        @RequestParam(value = "files", required = false) List<MultipartFile> files,
+        @RequestParam(value = "filenames", required = false) List<String> filenames,
+        @RequestParam(value = "concurrency", defaultValue = "0") int concurrency) {
+        List<MultipartFile> uploads = files != null ? files : List.of();
+        List<String> storedNames = filenames != null ? filenames : List.of();
+        int total = uploads.size() + storedNames.size();
+        if (total == 0 || total > bulkMaxFiles) {
+            return jsonError(HttpStatus.BAD_REQUEST, total == 0
+                ? "Please select files to scan."
+                : "Too many files; at most " + bulkMaxFiles + " can be scanned per request.");
+        }
 
-        if (!allFindings.isEmpty()) {
-            result.append("**SENSITIVE INFORMATION DETECTED**\n\n");
-            result.append("The following sensitive information was found in your ")
-                .append(contentType).append(":\n\n");
-            for (String item : allFindings) {
-                result.append("- ").append(item).append("\n");
+        // Uploads are stored up front: the multipart data does not outlive this thread
+        List<Map<String, Object>> failedUploads = new ArrayList<>();
+        List<Integer> batchIndexes = new ArrayList<>(total);
+        List<String> batchNames = new ArrayList<>(total);
+        List<String> batchFiles = new ArrayList<>(total);
+        for (int i = 0; i < uploads.size(); i++) {
+            MultipartFile file = uploads.get(i);
+            String name = file.getOriginalFilename();
+            if (file.isEmpty()) {
+                failedUploads.add(bulkLine(i, name, null, -1, "Empty file."));
+                continue;
             }
-        } else {
-            result.append("**No sensitive information detected**\n\n");
-            result.append("Your ").append(contentType).append(" appears to be clear of personally identifiable information.");
+            try {
+                Path storedFilePath = storageHandler.storeFile(file, logger);
+                batchIndexes.add(i);
+                batchNames.add(name);
+                batchFiles.add(storedFilePath.getFileName().toString());
+            } catch (IOException | RuntimeException e) {
+                logger.error("Error storing bulk upload '{}': {}", name, e.getMessage(), e);
+                metrics.error("bulk-advice");
+                failedUploads.add(bulkLine(i, name, null, -3,
+                    "Failed to upload file: " + e.getMessage()));
+            }
+        }
+        for (int i = 0; i < storedNames.size(); i++) {
+            batchIndexes.add(uploads.size() + i);
+            batchNames.add(storedNames.get(i));
+            batchFiles.add(storedNames.get(i));
         }
 
-        return result.toString();
+        StreamingResponseBody body = out -> {
+            for (Map<String, Object> line : failedUploads) {
+                writeLine(out, line);
+            }
+            // Closing the batch when the client goes away stops the remaining analyses
+            try (BulkScanService.Batch batch = bulkScanService.start(batchFiles, concurrency)) {
+                for (BulkScanService.Outcome outcome; (outcome = batch.next()) != null; ) {
+                    writeLine(out, bulkLine(batchIndexes.get(outcome.index()),
+                        batchNames.get(outcome.index()), outcome));
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        };
+        return ResponseEntity.ok().contentType(MediaType.APPLICATION_NDJSON).body(body);
     }
 
     /**
-     * takes in raw text advice
+     * Returns a copy of an uploaded text file with each regex finding replaced by its
+     * category, e.g. {@code [EMAIL]} or {@code [PHONE]}. The copy is streamed: unchanged
+     * parts of the file are transferred from the stored file as they are sent. The number
+     * of masked ranges is in the {@code X-Redactions} header. The upload is kept for
+     * /file-advice.
      *
-     * @param input raw text advice from the frontend chat interface
-     * @return text advice
+     * @param filename file name returned by the upload endpoint
+     * @return the redacted file, or a JSON error
      */
-    @GetMapping("/text-advice")
-    public Map<String, Serializable> getTextAdvice(@RequestParam("text") String input) {
+    @GetMapping("/redacted-file")
+    public ResponseEntity<StreamingResponseBody> getRedactedFile(
+        @RequestParam("filename") String filename) {
         try {
-            String analysisResult = analyzeContent(input, "text input");
-            return Map.of("code", 0, "message", analysisResult);
+            RedactionService.RedactedFile redacted = redactionService.redact(filename);
+            return ResponseEntity.ok()
+                .contentType(new MediaType("text", "plain", StandardCharsets.UTF_8))
+                .contentLength(redacted.size())
+                .header(HttpHeaders.CONTENT_DISPOSITION, ContentDisposition.attachment()
+                    .filename("redacted-" + filename).build().toString())
+                .header("X-Redactions", String.valueOf(redacted.redactions()))
+                .body(redacted::writeTo);
+        } catch (UnsupportedFileTypeException e) {
+            return jsonError(HttpStatus.BAD_REQUEST,
+                "Error: Unsupported file type - " + e.getMimeType());
+        } catch (IOException e) {
+            logger.error("Error reading file for redaction: {}", filename, e);
+            metrics.error("redacted-file");
+            return jsonError(HttpStatus.BAD_REQUEST,
+                "Error: Unable to read file - " + e.getMessage());
         } catch (Exception e) {
-            return Map.of("code", -1, "message", "Error: " + e.getMessage());
+            logger.error("Error redacting file: {}", filename, e);
+            metrics.error("redacted-file");
+            return jsonError(HttpStatus.INTERNAL_SERVER_ERROR,
+                "Error redacting file: " + e.getMessage());
         }
     }
 
     /**
-     * Unified endpoint that handles both text files and images for PII analysis
-     *
-     * @param filename file name from the frontend interface
-     * @return analysis advice based on file type
+     * An error in the usual {@code code}/{@code message} form, for endpoints whose
+     * successful responses are streamed.
      */
-    @GetMapping("/file-advice")
-    public ResponseEntity<Map<String, Serializable>> getFileAdvice(
-        @RequestParam("filename") String filename) {
-        int code = 0;
-        try {
-            Path filePath = storageHandler.fetchFile(filename);
-            String mimeType = storageHandler.mimeType(filePath);
-            String analysisResult;
-
-            if (mimeType.contains("text")) {
-                String fileContent = Files.readString(filePath);
-                analysisResult = analyzeContent(fileContent, "text file");
-                logger.info("Analyzed text file: {}", filename);
-            } else if (mimeType.contains("image")) {
-                // Use OCR to extract text from image, then analyze the text
-                String extractedText = OCRService.extractTextFromImage(filePath.toFile());
-                if (!extractedText.trim().isEmpty()) {
-                    analysisResult = analyzeContent(extractedText, "image text");
-                    logger.info("Analyzed image file with OCR: {}", filename);
-                } else {
-                    code = 1;
-                    // Analyze image directly with Gemini
-                    String directAnalysis = analyzeImageWithGemini(filePath);
-                    List<String> geminiFindings = parseGeminiResponse(directAnalysis);
-                    
-                    StringBuilder result = new StringBuilder();
-                    if (!geminiFindings.isEmpty()) {
-                        result.append("**SENSITIVE INFORMATION DETECTED IN IMAGE**\n\n");
-                        result.append("The following sensitive information was found in the image:\n\n");
-                        for (String item : geminiFindings) {
-                            result.append("- ").append(item).append("\n");
-                        }
-                    } else {
-                        result.append("**No sensitive information detected**\n\n");
-                        result.append("The image appears to be clear of personally identifiable information.");
-                    }
-                    analysisResult = result.toString();
-                    logger.info("Analyzed image file directly: {}", filename);
-                }
+    private ResponseEntity<StreamingResponseBody> jsonError(HttpStatus status, String message) {
+        Map<String, Object> error = Map.of("code", -1, "message", message);
+        return ResponseEntity.status(status).contentType(MediaType.APPLICATION_JSON)
+            .body(out -> objectMapper.writeValue(out, error));
+    }
+
+    private Map<String, Object> bulkLine(int index, String name, BulkScanService.Outcome outcome) {
+        AnalysisResult analysisResult = outcome.result();
+        if (analysisResult == null) {
+            Throwable cause = outcome.error();
+            String message;
+            if (cause instanceof UnsupportedFileTypeException unsupported) {
+                message = "Error: Unsupported file type - " + unsupported.getMimeType();
             } else {
-                logger.error("Unsupported file type: {} for file: {}", mimeType, filename);
-                return new ResponseEntity<>(
-                    Map.of("code", -1, "message", "Error: Unsupported file type - " + mimeType),
-                    HttpStatus.BAD_REQUEST);
+                logger.error("Error analyzing bulk file: {}", outcome.filename(), cause);
+                metrics.error("bulk-advice");
+                message = cause instanceof IOException
+                    ? "Error: Unable to read file - " + cause.getMessage()
+                    : "Error analyzing file: " + cause.getMessage();
             }
+            return bulkLine(index, name, outcome.filename(), -1, message);
+        }
+        Map<String, Object> line = bulkLine(index, name, outcome.filename(),
+            analysisResult.code(), analysisResult.message());
+        line.put("findings", analysisResult.findings());
+        line.put("partial", analysisResult.partial());
+        line.put("degraded", analysisResult.degraded());
+        return line;
+    }
 
-            return new ResponseEntity<>(Map.of("code", code, "message", analysisResult),
-                HttpStatus.OK);
+    private static Map<String, Object> bulkLine(int index, String name, String filename,
+                                                int code, String message) {
+        Map<String, Object> line = new LinkedHashMap<>();
+        line.put("index", index);
+        line.put("name", name);
+        line.put("filename", filename);
+        line.put("code", code);
+        line.put("message", message);
+        return line;
+    }
 
-        } catch (IOException e) {
-            logger.error("Error reading file: {}", filename, e);
-            return new ResponseEntity<>(
-                Map.of("code", -1, "message", "Error: Unable to read file - " + e.getMessage()),
-                HttpStatus.BAD_REQUEST);
-        } catch (Exception e) {
-            logger.error("Error analyzing file: {}", filename, e);
-            return new ResponseEntity<>(
-                Map.of("code", -1, "message", "Error analyzing file: " + e.getMessage()),
-                HttpStatus.INTERNAL_SERVER_ERROR);
-        }
+    private void writeLine(OutputStream out, Map<String, Object> line) throws IOException {
+        out.write(objectMapper.writeValueAsBytes(line));
+        out.write('\n');
+        // Each file's line goes out as soon as it is written
+        out.flush();
     }
 
     /*
@@ -291,12 +669,14 @@ public class RequestController {
     {
       "success": true,
       "code": 0,
-      "message": "..."
+      "message": "...",
+      "findings": [...] // only with scan=true, for text files
     }
      */
     @PostMapping("/upload-file")
     public ResponseEntity<Map<String, Object>> uploadFile(
-        @RequestParam("file") MultipartFile file) {
+        @RequestParam("file") MultipartFile file,
+        @RequestParam(value = "scan", defaultValue = "false") boolean scan) {
         Map<String, Object> response = new HashMap<>();
         if (file.isEmpty()) {
             response.put("success", false);
@@ -315,7 +695,20 @@ public class RequestController {
         try {
             // 3. Store the file to a temporary location on the server
             // This is necessary because SensitiveInfoDetector works with a Path
-            Path storedFilePath = storageHandler.storeFile(file, logger);
+            long uploadStart = System.nanoTime();
+            Path storedFilePath;
+            if (scan) {
+                // Scan text files while they are written, so /file-advice can skip the read
+                AnalysisService.ScannedUpload scannedUpload =
+                    analysisService.storeAndScan(file, logger);
+                storedFilePath = scannedUpload.path();
+                if (scannedUpload.findings() != null) {
+                    response.put("findings", scannedUpload.findings());
+                }
+            } else {
+                storedFilePath = storageHandler.storeFile(file, logger);
+            }
+            metrics.record("upload-write", System.nanoTime() - uploadStart);
 
             // Populate the response map with file metadata
             response.put("success", true); // The upload itself was successful
@@ -0,0 +1,42 @@
+package com.antidoxx.backend;
+
+/**
+ * Byte-at-a-time {@link ByteScanKernel}, used when the Vector API is not available and for
+ * the tail of a chunk that does not fill a whole vector.
+ */
+final class ScalarByteScanKernel implements ByteScanKernel {
+
+    @Override
+    public boolean scan(byte[] chunk, int length, ByteLineCounts counts,
+                        LineBreakListener listener) {
+        return scanRange(chunk, 0, length, counts, listener);
+    }
+
+    static boolean scanRange(byte[] chunk, int from, int to, ByteLineCounts counts,
+                             LineBreakListener listener) {
+        boolean ascii = true;
+        for (int i = from; i < to; i++) {
+            byte b = chunk[i];
+            if (b >= '0' && b <= '9') {
+                counts.digits++;
+                if (++counts.digitRun > counts.longestDigitRun) {
+                    counts.longestDigitRun = counts.digitRun;
+                }
+                continue;
+            }
+            counts.digitRun = 0;
+            switch (b) {
+                case '@' -> counts.at++;
+                case '.' -> counts.dots++;
+                case '-' -> counts.dashes++;
+                case '\n', '\r' -> listener.onLineBreak(i, b);
+                default -> {
+                    if (b < 0) {
+                        ascii = false;
+                    }
+                }
+            }
+        }
+        return ascii;
+    }
+}
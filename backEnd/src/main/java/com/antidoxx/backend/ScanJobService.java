@@ -0,0 +1,152 @@
+package com.antidoxx.backend;
+
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+/**
+ * Runs file analyses as background jobs so the servlet thread is released as soon as a
+ * job is accepted.
+ * <p>
+ * Jobs run on a fixed pool of {@code scan-jobs.workers} threads behind a queue of at most
+ * {@code scan-jobs.queue-capacity} waiting jobs. When the queue is full, {@link #submit}
+ * rejects the job instead of queueing without bound, and the caller is expected to retry
+ * later. Finished jobs are kept for {@code scan-jobs.retention-seconds} so clients can
+ * collect their result, and swept every {@code scan-jobs.eviction-interval-ms}.
+ */
+@Service
+public class ScanJobService {
+    private static final Logger logger = LoggerFactory.getLogger(ScanJobService.class);
+
+    public enum Status { QUEUED, RUNNING, DONE, FAILED }
+
+    /**
+     * A submitted analysis. {@link #result()} completes when the job finishes, either
+     * normally or exceptionally.
+     */
+    public static final class ScanJob {
+        private final String id;
+        private final String filename;
+        private final CompletableFuture<AnalysisResult> result = new CompletableFuture<>();
+        private volatile Status status = Status.QUEUED;
+        private volatile long finishedAt;
+
+        private ScanJob(String id, String filename) {
+            this.id = id;
+            this.filename = filename;
+        }
+
+        public String id() {
+            return id;
+        }
+
+        public String filename() {
+            return filename;
+        }
+
+        public Status status() {
+            return status;
+        }
+
+        public CompletableFuture<AnalysisResult> result() {
+            return result;
+        }
+    }
+
+    private final AnalysisService analysisService;
+    private final ThreadPoolExecutor executor;
+    private final long retentionNanos;
+    private final ConcurrentHashMap<String, ScanJob> jobs = new ConcurrentHashMap<>();
+
+    public ScanJobService(AnalysisService analysisService,
+                          @Value("${scan-jobs.workers:4}") int workers,
+                          @Value("${scan-jobs.queue-capacity:64}") int queueCapacity,
+                          @Value("${scan-jobs.retention-seconds:600}") long retentionSeconds) {
+        this.analysisService = analysisService;
+        this.retentionNanos = TimeUnit.SECONDS.toNanos(retentionSeconds);
+        AtomicInteger threadCount = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(workers, workers, 0L, TimeUnit.MILLISECONDS,
+            new ArrayBlockingQueue<>(queueCapacity),
+            task -> new Thread(task, "scan-job-" + threadCount.incrementAndGet()),
+            new ThreadPoolExecutor.AbortPolicy());
+    }
+
+    /**
+     * Queues an analysis of a stored file.
+     *
+     * @param filename the stored file name returned by the upload endpoint
+     * @return the accepted job
+     * @throws RejectedExecutionException if the queue is full
+     */
+    public ScanJob submit(String filename) {
+        evictExpired();
+        ScanJob job = new ScanJob(UUID.randomUUID().toString(), filename);
+        jobs.put(job.id, job);
+        try {
+            executor.execute(() -> run(job));
+        } catch (RejectedExecutionException e) {
+            jobs.remove(job.id);
+            throw e;
+        }
+        return job;
+    }
+
+    /**
+     * @return the job with the given id, or null if it is unknown or has expired
+     */
+    public ScanJob get(String jobId) {
+        ScanJob job = jobs.get(jobId);
+        if (job != null && isExpired(job, System.nanoTime())) {
+            jobs.remove(jobId, job);
+            return null;
+        }
+        return job;
+    }
+
+    private void run(ScanJob job) {
+        job.status = Status.RUNNING;
+        // finishedAt is set before the result completes, so a done job is never seen
+        // with a finishedAt of 0 and evicted at once
+        try {
+            AnalysisResult result = analysisService.analyzeFile(job.filename);
+            job.status = Status.DONE;
+            job.finishedAt = System.nanoTime();
+            job.result.complete(result);
+        } catch (Exception e) {
+            logger.error("Scan job {} failed for file: {}", job.id, job.filename, e);
+            job.status = Status.FAILED;
+            job.finishedAt = System.nanoTime();
+            job.result.completeExceptionally(e);
+        }
+    }
+
+    /**
+     * Drops finished jobs kept longer than the retention, even while no new jobs arrive.
+     */
+    @Scheduled(fixedDelayString = "${scan-jobs.eviction-interval-ms:60000}")
+    public void evictExpired() {
+        long now = System.nanoTime();
+        jobs.values().removeIf(job -> isExpired(job, now));
+    }
+
+    private boolean isExpired(ScanJob job, long now) {
+        return job.result.isDone() && now - job.finishedAt > retentionNanos;
+    }
+
+    @PreDestroy
+    void shutdown() {
+        executor.shutdownNow();
+    }
+}
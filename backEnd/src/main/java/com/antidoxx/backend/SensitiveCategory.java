@@ -0,0 +1,64 @@
+package com.antidoxx.backend;
+
+import java.util.regex.Pattern;
+
+/**
+ * The categories of sensitive data the regex detector looks for, in reporting order.
+ * <p>
+ * Besides its pattern, each category declares the minimum evidence a line must contain
+ * before the pattern can possibly match (digit count, longest digit run, '@', '.', '-').
+ * These are necessary conditions only, so skipping a line that fails them never changes
+ * the findings.
+ */
+enum SensitiveCategory {
+    // --- Define Regular Expression Patterns for Sensitive Data ---
+    EMAIL("Email Address",
+        Pattern.compile("\\b[A-Za-z0-9._%+-]+@[A-Za-z0-9.-]+\\.[A-Z|a-z]{2,}\\b"),
+        0, 0, 1, 1, 0),
+
+    // Every card alternative is a single run of 13 to 16 digits
+    CREDIT_CARD("Credit Card Number", Pattern.compile(
+        "\\b(?:4[0-9]{12}(?:[0-9]{3})?|5[1-5][0-9]{14}|6(?:011|5[0-9]{2})[0-9]{12}|3[47][0-9]{13}|3(?:0[0-5]|[68][0-9])[0-9]{11}|(?:2131|1800|35\\d{3})\\d{11})\\b"),
+        13, 13, 0, 0, 0),
+
+    PHONE("Phone Number",
+        Pattern.compile("\\b\\(?\\d{3}\\)?[-.\\s]?\\d{3}[-.\\s]?\\d{4}\\b"),
+        10, 0, 0, 0, 0),
+
+    SSN("Social Security Number",
+        Pattern.compile("\\b(?!000|666)[0-8][0-9]{2}-(?!00)[0-9]{2}-(?!0000)[0-9]{4}\\b"),
+        9, 0, 0, 0, 2),
+
+    IP_ADDRESS("IP Address (IPv4)", Pattern.compile(
+        "\\b(?:(?:25[0-5]|2[0-4][0-9]|[01]?[0-9][0-9]?)\\.){3}(?:25[0-5]|2[0-4][0-9]|[01]?[0-9][0-9]?)\\b"),
+        4, 0, 0, 3, 0);
+
+    static final SensitiveCategory[] VALUES = values();
+
+    final String displayName;
+    final Pattern pattern;
+    private final int minDigits;
+    private final int minDigitRun;
+    private final int minAt;
+    private final int minDots;
+    private final int minDashes;
+
+    SensitiveCategory(String displayName, Pattern pattern, int minDigits, int minDigitRun,
+                      int minAt, int minDots, int minDashes) {
+        this.displayName = displayName;
+        this.pattern = pattern;
+        this.minDigits = minDigits;
+        this.minDigitRun = minDigitRun;
+        this.minAt = minAt;
+        this.minDots = minDots;
+        this.minDashes = minDashes;
+    }
+
+    /**
+     * @return whether a line with the given character counts could contain a match
+     */
+    boolean admits(int digits, int longestDigitRun, int at, int dots, int dashes) {
+        return digits >= minDigits && longestDigitRun >= minDigitRun && at >= minAt &&
+            dots >= minDots && dashes >= minDashes;
+    }
+}
@@ -1,101 +1,136 @@
 package com.antidoxx.backend;
 
-import java.io.BufferedReader;
 import java.io.IOException;
-import java.nio.charset.StandardCharsets;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.util.ArrayList;
-import java.util.Arrays;
+import java.nio.file.StandardOpenOption;
 import java.util.List;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.concurrent.ForkJoinPool;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
 @Service // Mark as a Spring service for dependency injection
 public class SensitiveInfoDetector {
-    // --- Define Regular Expression Patterns for Sensitive Data ---
-    private static final Pattern EMAIL_PATTERN =
-        Pattern.compile("\\b[A-Za-z0-9._%+-]+@[A-Za-z0-9.-]+\\.[A-Z|a-z]{2,}\\b");
+    private static final Logger logger = LoggerFactory.getLogger(SensitiveInfoDetector.class);
 
-    private static final Pattern CREDIT_CARD_PATTERN = Pattern.compile(
-        "\\b(?:4[0-9]{12}(?:[0-9]{3})?|5[1-5][0-9]{14}|6(?:011|5[0-9]{2})[0-9]{12}|3[47][0-9]{13}|3(?:0[0-5]|[68][0-9])[0-9]{11}|(?:2131|1800|35\\d{3})\\d{11})\\b");
+    private static final int READ_BUFFER_BYTES = 64 * 1024;
+    private static final int MIN_PARALLEL_LEAF_CHARS = 64 * 1024;
 
-    private static final Pattern PHONE_PATTERN =
-        Pattern.compile("\\b\\(?\\d{3}\\)?[-.\\s]?\\d{3}[-.\\s]?\\d{4}\\b");
+    private final int parallelThreshold;
+    private final ByteScanKernel byteScanKernel;
 
-    private static final Pattern SSN_PATTERN =
-        Pattern.compile("\\b(?!000|666)[0-8][0-9]{2}-(?!00)[0-9]{2}-(?!0000)[0-9]{4}\\b");
-
-    private static final Pattern IP_ADDRESS_PATTERN = Pattern.compile(
-        "\\b(?:(?:25[0-5]|2[0-4][0-9]|[01]?[0-9][0-9]?)\\.){3}(?:25[0-5]|2[0-4][0-9]|[01]?[0-9][0-9]?)\\b");
-
-    private static final List<SensitivePattern> patterns = Arrays.asList(
-        new SensitivePattern("Email Address", EMAIL_PATTERN),
-        new SensitivePattern("Credit Card Number", CREDIT_CARD_PATTERN),
-        new SensitivePattern("Phone Number", PHONE_PATTERN),
-        new SensitivePattern("Social Security Number", SSN_PATTERN),
-        new SensitivePattern("IP Address (IPv4)", IP_ADDRESS_PATTERN)
-    );
+    /**
+     * @param parallelThreshold inputs with at least this many characters are split at
+     *                          line boundaries and scanned on the common fork/join pool
+     * @param vectorScan        whether files may be scanned with the Vector API, when the
+     *                          {@code jdk.incubator.vector} module is present
+     */
+    public SensitiveInfoDetector(
+        @Value("${detector.parallel-threshold:1048576}") int parallelThreshold,
+        @Value("${detector.vector-scan:true}") boolean vectorScan) {
+        this.parallelThreshold = parallelThreshold;
+        this.byteScanKernel = ByteScanKernel.create(vectorScan);
+        logger.info("Scanning files with the {}", byteScanKernel instanceof ScalarByteScanKernel
+            ? "scalar byte scanner" : "Vector API byte scanner");
+    }
 
     /**
      * Scans the content of a text file for predefined sensitive information patterns.
+     * The file is memory-mapped and scanned as bytes; only lines that could contain a
+     * match are decoded. See {@link MappedFileScan}.
      *
      * @param filePath The Path to the text file.
      * @return A list of strings, each describing a detected sensitive item, or an empty list if none found.
      * @throws IOException If there's an error reading the file.
      */
     public List<String> detectSensitiveInfo(Path filePath) throws IOException {
-        List<String> detectedItems = new ArrayList<>();
+        return scan(filePath).descriptions();
+    }
+
+    public List<String> detectSensitiveInfo(String text) {
+        return scan(text).descriptions();
+    }
 
+    /**
+     * Scans a text file like {@link #detectSensitiveInfo(Path)}, but returns the
+     * structured findings instead of their descriptions.
+     *
+     * @param filePath The Path to the text file.
+     * @return The findings, in line order.
+     * @throws IOException If there's an error reading the file.
+     */
+    Findings scan(Path filePath) throws IOException {
         if (!Files.exists(filePath) || !Files.isRegularFile(filePath) ||
             !Files.isReadable(filePath)) {
             throw new IOException(
                 "File does not exist, is not a regular file, or is not readable: " + filePath);
         }
 
-        try (BufferedReader reader = Files.newBufferedReader(filePath, StandardCharsets.UTF_8)) {
-            String line;
-            int lineNumber = 0;
-            while ((line = reader.readLine()) != null) {
-                lineNumber++;
-                for (SensitivePattern sensitivePattern : patterns) {
-                    Matcher matcher = sensitivePattern.pattern.matcher(line);
-                    while (matcher.find()) {
-                        String foundData = matcher.group();
-                        detectedItems.add(
-                            "Line " + lineNumber + ": " + sensitivePattern.name + " detected -> '" +
-                                foundData + "'");
-                    }
-                }
-            }
+        if (Files.size(filePath) <= MappedFileScan.MAX_MAPPED_BYTES) {
+            return new MappedFileScan(byteScanKernel).scan(filePath);
         }
-        return detectedItems;
+        return scanStreaming(filePath);
     }
 
-    public List<String> detectSensitiveInfo(String text) {
-        List<String> detectedItems = new ArrayList<>();
-        if (text == null || text.trim().isEmpty()) {
-            return detectedItems;
-        }
+    /**
+     * Scans UTF-8 content that is mapped or held in memory, with the same line and column
+     * numbering as {@link #scan(Path)}.
+     *
+     * @param content the content, from index 0 to its limit
+     * @return The findings, in line order.
+     * @throws IOException If the content is not valid UTF-8.
+     */
+    Findings scan(ByteBuffer content) throws IOException {
+        return new MappedFileScan(byteScanKernel).scan(content);
+    }
 
-        String[] lines = text.split("\n");
-        for (int i = 0; i < lines.length; i++) {
-            String line = lines[i];
-            int lineNumber = i + 1;
-            for (SensitivePattern sensitivePattern : patterns) {
-                Matcher matcher = sensitivePattern.pattern.matcher(line);
-                while (matcher.find()) {
-                    String foundData = matcher.group();
-                    detectedItems.add(
-                        "Line " + lineNumber + ": " + sensitivePattern.name + " detected -> '" +
-                            foundData + "'");
-                }
+    /**
+     * Scans a text file through a fixed-size window, decoding all of it. Memory use does
+     * not depend on the size of the file or the length of its lines.
+     */
+    Findings scanStreaming(Path filePath) throws IOException {
+        Findings findings = new Findings();
+        StreamingScan scan = new StreamingScan(findings);
+        try (FileChannel channel = FileChannel.open(filePath, StandardOpenOption.READ)) {
+            ByteBuffer buffer = ByteBuffer.allocate(READ_BUFFER_BYTES);
+            while (channel.read(buffer) != -1) {
+                buffer.flip();
+                scan.feed(buffer);
+                buffer.clear();
             }
         }
-        return detectedItems;
+        scan.finish();
+        findings.addCategoryNanos(scan.categoryNanos());
+        return findings;
     }
 
-    private record SensitivePattern(String name, Pattern pattern) {
+    /**
+     * Scans text like {@link #detectSensitiveInfo(String)}, but returns the structured
+     * findings instead of their descriptions. The findings refer back to {@code text}
+     * rather than copying the matches out of it.
+     *
+     * @param text The text to scan.
+     * @return The findings, in line order.
+     */
+    Findings scan(String text) {
+        if (text == null || text.trim().isEmpty()) {
+            return new Findings();
+        }
+
+        if (text.length() < parallelThreshold) {
+            Findings findings = new Findings(text);
+            MultiPatternScanner scanner = new MultiPatternScanner();
+            scanner.scanLines(text, 0, text.length(), 1, 0, findings);
+            findings.addCategoryNanos(scanner.categoryNanos());
+            return findings;
+        }
+        ForkJoinPool pool = ForkJoinPool.commonPool();
+        int leafSize = Math.max(MIN_PARALLEL_LEAF_CHARS,
+            text.length() / (pool.getParallelism() * 4));
+        return pool.invoke(new ParallelScanTask(text, 0, text.length(), leafSize)).findings();
     }
-}
\ No newline at end of file
+}
@@ -1,51 +1,307 @@
 package com.antidoxx.backend;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.FileSystemException;
 import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
 import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 import org.springframework.web.multipart.MultipartFile;
 
+/**
+ * Stores uploads until they are analyzed.
+ * <p>
+ * Small text uploads (up to {@code storage.memory-max-file-bytes}) are kept in memory,
+ * within a total of {@code storage.memory-max-bytes}; everything else goes to the
+ * {@code antidoxx-uploads} directory. A janitor deletes uploads older than
+ * {@code storage.ttl-seconds} and, if the directory is still larger than
+ * {@code storage.max-disk-bytes}, the oldest files until it fits.
+ * <p>
+ * With {@code storage.content-addressed=true}, every distinct content is written once to
+ * {@code antidoxx-uploads/blobs} under its SHA-256 hash, and each upload's file name is a
+ * hard link to its blob. The link count is the reference count: a blob is deleted once
+ * no upload links to it any more. As links share the blob's timestamps, the TTL of each
+ * link runs from when it was stored, as remembered since startup; links from before a
+ * restart fall back to the blob's time, which is that of its newest link. Against the
+ * disk quota, all links to a blob count as one file. Temporary files left in the blob
+ * directory by failed uploads are deleted once not written for the TTL.
+ */
 @Service
 public class StorageHandler {
 
+    private static final Logger logger = LoggerFactory.getLogger(StorageHandler.class);
+    private static final int COPY_BUFFER_BYTES = 64 * 1024;
+    // Stored file names as made by sanitizeFilename: a sanitized name, "_", a UUID, and the
+    // sanitized extension. Nothing else is ever resolved in the upload directory.
+    private static final Pattern ISSUED_NAME = Pattern.compile("[\\p{L}\\p{N}._-]*_"
+        + "\\p{XDigit}{8}-\\p{XDigit}{4}-\\p{XDigit}{4}-\\p{XDigit}{4}-\\p{XDigit}{12}"
+        + "[\\p{L}\\p{N}._-]*");
+
     private final Path storageDirectory;
+    private final Path blobDirectory;
+    private final boolean contentAddressed;
+    // Content hashes of the uploads stored since startup, by stored file name
+    private final ConcurrentHashMap<String, String> contentHashes = new ConcurrentHashMap<>();
+    // When each upload linked to a blob was stored, since startup, by stored file name
+    private final ConcurrentHashMap<String, Long> linkedAt = new ConcurrentHashMap<>();
+    // Guards linking to a blob against the janitor deleting it as unreferenced
+    private final Object blobLock = new Object();
+    private final long ttlMillis;
+    private final long maxDiskBytes;
+    private final long memoryMaxFileBytes;
+    private final long memoryMaxBytes;
+    // In-memory uploads by stored file name, oldest first
+    private final LinkedHashMap<String, MemoryFile> memoryFiles = new LinkedHashMap<>();
+    private long memoryBytes;
+
+    private record MemoryFile(byte[] content, long storedAt) {
+    }
+
+    /**
+     * Receives each chunk of an upload on its way to disk.
+     */
+    @FunctionalInterface
+    public interface UploadTap {
+        /**
+         * @param chunk the next bytes of the upload; only valid during the call
+         */
+        void onChunk(ByteBuffer chunk) throws IOException;
+    }
+
+    @Autowired
+    public StorageHandler(@Value("${storage.ttl-seconds:3600}") long ttlSeconds,
+                          @Value("${storage.max-disk-bytes:1073741824}") long maxDiskBytes,
+                          @Value("${storage.memory-max-file-bytes:65536}") long memoryMaxFileBytes,
+                          @Value("${storage.memory-max-bytes:33554432}") long memoryMaxBytes,
+                          @Value("${storage.content-addressed:false}") boolean contentAddressed)
+        throws IOException {
+        this(Paths.get(System.getProperty("java.io.tmpdir"), "antidoxx-uploads"), ttlSeconds,
+            maxDiskBytes, memoryMaxFileBytes, memoryMaxBytes, contentAddressed);
+    }
 
-    public StorageHandler() throws IOException {
-        String tmpDir = System.getProperty("java.io.tmpdir");
-        this.storageDirectory =
-            Paths.get(tmpDir, "antidoxx-uploads").toAbsolutePath().normalize();
+    StorageHandler(Path directory, long ttlSeconds, long maxDiskBytes, long memoryMaxFileBytes,
+                   long memoryMaxBytes, boolean contentAddressed) throws IOException {
+        this.ttlMillis = ttlSeconds * 1000;
+        this.maxDiskBytes = maxDiskBytes;
+        this.memoryMaxFileBytes = memoryMaxFileBytes;
+        this.memoryMaxBytes = memoryMaxBytes;
+        this.storageDirectory = directory.toAbsolutePath().normalize();
         if (!Files.exists(storageDirectory)) {
             Files.createDirectories(storageDirectory);
             System.out.println("Upload directory created: " + this.storageDirectory);
         }
+        this.contentAddressed = contentAddressed;
+        this.blobDirectory = storageDirectory.resolve("blobs");
+        if (contentAddressed) {
+            Files.createDirectories(blobDirectory);
+        }
     }
 
     /**
-     * Stores the uploaded file to the designated upload directory.
-     * Generates a unique filename to prevent overwrites.
+     * Stores the uploaded file to the designated upload directory, or in memory if it is
+     * a small text file. Generates a unique filename to prevent overwrites.
      *
      * @param file The MultipartFile received from the frontend.
-     * @return The Path to the saved file.
+     * @return The Path to the saved file. For an in-memory upload, only its file name is
+     *     meaningful; read it back with {@link #fetchInMemory}.
      * @throws IOException If there's an error during file storage.
      */
     public Path storeFile(MultipartFile file, Logger logger) throws IOException {
         String cleanedFilename = sanitizeFilename(file.getOriginalFilename());
 
         Path targetLocation = this.storageDirectory.resolve(cleanedFilename);
-        Files.copy(file.getInputStream(), targetLocation, StandardCopyOption.REPLACE_EXISTING);
+        if (storeInMemory(file, targetLocation, null)) {
+            logger.info("File uploaded successfully (in memory): {}", cleanedFilename);
+            return targetLocation;
+        }
+        if (contentAddressed) {
+            storeDeduplicated(file, targetLocation, null);
+        } else {
+            // Moves the multipart temp file into place when the container spooled it to disk
+            file.transferTo(targetLocation.toFile());
+        }
+
+        logger.info("File uploaded successfully: {}", targetLocation.toAbsolutePath());
+
+        return targetLocation;
+    }
+
+    /**
+     * Stores the uploaded file like {@link #storeFile(MultipartFile, Logger)}, passing
+     * every chunk to {@code tap} as it is written, so the upload can be inspected without
+     * reading the stored file back.
+     *
+     * @param file The MultipartFile received from the frontend.
+     * @param tap  Receives the content of the file, in order.
+     * @return The Path to the saved file.
+     * @throws IOException If there's an error during file storage, or thrown by the tap.
+     */
+    public Path storeFile(MultipartFile file, Logger logger, UploadTap tap) throws IOException {
+        String cleanedFilename = sanitizeFilename(file.getOriginalFilename());
+
+        Path targetLocation = this.storageDirectory.resolve(cleanedFilename);
+        if (storeInMemory(file, targetLocation, tap)) {
+            logger.info("File uploaded successfully (in memory): {}", cleanedFilename);
+            return targetLocation;
+        }
+        if (contentAddressed) {
+            storeDeduplicated(file, targetLocation, tap);
+        } else {
+            copyToDisk(file, targetLocation, tap);
+        }
 
         logger.info("File uploaded successfully: {}", targetLocation.toAbsolutePath());
 
         return targetLocation;
     }
 
-    private String sanitizeFilename(String filename) {
+    private void copyToDisk(MultipartFile file, Path targetLocation, UploadTap tap)
+        throws IOException {
+        try (ReadableByteChannel in = Channels.newChannel(file.getInputStream());
+             FileChannel out = FileChannel.open(targetLocation, StandardOpenOption.CREATE,
+                 StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer buffer = ByteBuffer.allocate(COPY_BUFFER_BYTES);
+            while (in.read(buffer) != -1) {
+                buffer.flip();
+                tap.onChunk(buffer.asReadOnlyBuffer());
+                while (buffer.hasRemaining()) {
+                    out.write(buffer);
+                }
+                buffer.clear();
+            }
+        } catch (IOException e) {
+            Files.deleteIfExists(targetLocation);
+            throw e;
+        }
+    }
+
+    /**
+     * Writes the upload to a temporary file while hashing it, keeps it as a blob unless
+     * the same content is already stored, and links the upload's file name to the blob.
+     */
+    private void storeDeduplicated(MultipartFile file, Path targetLocation, UploadTap tap)
+        throws IOException {
+        MessageDigest digest = AnalysisCache.sha256();
+        Path temp = Files.createTempFile(blobDirectory, "upload", ".tmp");
+        try {
+            copyToDisk(file, temp, chunk -> {
+                if (tap != null) {
+                    tap.onChunk(chunk.duplicate());
+                }
+                digest.update(chunk);
+            });
+            String hash = HexFormat.of().formatHex(digest.digest());
+            Path blob = blobDirectory.resolve(hash);
+            synchronized (blobLock) {
+                if (!Files.exists(blob)) {
+                    try {
+                        Files.move(temp, blob, StandardCopyOption.ATOMIC_MOVE);
+                    } catch (AtomicMoveNotSupportedException e) {
+                        Files.move(temp, blob);
+                    }
+                }
+                try {
+                    Files.createLink(targetLocation, blob);
+                    long now = System.currentTimeMillis();
+                    linkedAt.put(targetLocation.getFileName().toString(), now);
+                    // Only used for links stored before a restart: none of them then expires
+                    // earlier than it would have
+                    Files.setLastModifiedTime(blob, FileTime.fromMillis(now));
+                } catch (FileAlreadyExistsException e) {
+                    throw e;
+                } catch (UnsupportedOperationException | FileSystemException e) {
+                    // No hard links here: fall back to a private copy
+                    Files.copy(blob, targetLocation);
+                }
+            }
+            contentHashes.put(targetLocation.getFileName().toString(), hash);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    /**
+     * @return the SHA-256 hash of a stored upload if it was computed while storing it,
+     *     otherwise null
+     */
+    public String knownContentHash(String filename) {
+        return contentHashes.get(filename);
+    }
+
+    /**
+     * Keeps a small text upload in memory, if there is room for it.
+     *
+     * @return whether the upload was stored
+     */
+    private boolean storeInMemory(MultipartFile file, Path targetLocation, UploadTap tap)
+        throws IOException {
+        long size = file.getSize();
+        if (size > memoryMaxFileBytes) {
+            return false;
+        }
+        String mimeType = mimeType(targetLocation);
+        if (mimeType == null || !mimeType.contains("text")) {
+            return false;
+        }
+        synchronized (memoryFiles) {
+            if (memoryBytes + size > memoryMaxBytes) {
+                return false;
+            }
+            // Reserve the space before reading, so concurrent uploads cannot overshoot
+            memoryBytes += size;
+        }
+        byte[] content;
+        try {
+            content = file.getBytes();
+            if (tap != null) {
+                tap.onChunk(ByteBuffer.wrap(content).asReadOnlyBuffer());
+            }
+        } catch (IOException | RuntimeException e) {
+            synchronized (memoryFiles) {
+                memoryBytes -= size;
+            }
+            throw e;
+        }
+        synchronized (memoryFiles) {
+            memoryBytes += content.length - size;
+            memoryFiles.put(targetLocation.getFileName().toString(),
+                new MemoryFile(content, System.currentTimeMillis()));
+        }
+        return true;
+    }
+
+    String sanitizeFilename(String filename) {
         StringBuilder sanitized = new StringBuilder();
 
         if (filename == null || filename.isEmpty()) {
@@ -98,23 +354,206 @@ public class StorageHandler {
         return Files.readString(filePath, StandardCharsets.UTF_8);
     }
 
+    /**
+     * Reads at most {@code maxBytes} from the start of a stored text file. A character
+     * cut in half at the limit is replaced rather than treated as an error.
+     *
+     * @param filePath The Path to the stored file.
+     * @param maxBytes The maximum number of bytes to read.
+     * @return The decoded prefix of the file.
+     * @throws IOException If there's an error reading the file.
+     */
+    public String readFilePrefix(Path filePath, int maxBytes) throws IOException {
+        try (InputStream in = Files.newInputStream(filePath)) {
+            return new String(in.readNBytes(maxBytes), StandardCharsets.UTF_8);
+        }
+    }
+
     public void deleteFile(Path filename) throws IOException {
-        Path filePath = storageDirectory.resolve(filename);
-        Files.deleteIfExists(filePath);
+        Path filePath = uploadPath(filename.toString());
+        if (filePath != null) {
+            Files.deleteIfExists(filePath);
+        }
+    }
+
+    /**
+     * Deletes a stored upload, wherever it is kept.
+     *
+     * @param filename The stored file name.
+     * @throws IOException If the file cannot be deleted.
+     */
+    public void deleteFile(String filename) throws IOException {
+        synchronized (memoryFiles) {
+            MemoryFile removed = memoryFiles.remove(filename);
+            if (removed != null) {
+                memoryBytes -= removed.content().length;
+                return;
+            }
+        }
+        Path filePath = uploadPath(filename);
+        if (filePath != null) {
+            contentHashes.remove(filename);
+            linkedAt.remove(filename);
+            Files.deleteIfExists(filePath);
+        }
     }
 
     public String mimeType(Path path) throws IOException {
         return Files.probeContentType(path);
     }
 
+    /**
+     * @return whether an upload with this stored file name exists, in memory or on disk
+     */
+    public boolean exists(String filename) {
+        synchronized (memoryFiles) {
+            if (memoryFiles.containsKey(filename)) {
+                return true;
+            }
+        }
+        Path filePath = uploadPath(filename);
+        return filePath != null && Files.exists(filePath);
+    }
+
+    /**
+     * @return the content of an upload kept in memory, or null if it is not in memory
+     */
+    public byte[] fetchInMemory(String filename) {
+        synchronized (memoryFiles) {
+            MemoryFile memoryFile = memoryFiles.get(filename);
+            return memoryFile != null ? memoryFile.content() : null;
+        }
+    }
+
+    /**
+     * @return the stored upload with this file name, or null if there is none
+     */
     public Path fetchFile(String filename) throws IOException {
-        Path targetLocation = this.storageDirectory.resolve(filename);
-        if (Files.exists(targetLocation)) {
+        Path targetLocation = uploadPath(filename);
+        if (targetLocation != null && Files.exists(targetLocation)) {
             return targetLocation;
         } else {
             System.out.println("File not found: " + filename);
             return null;
         }
     }
-}
 
+    /**
+     * Resolves a stored file name from a client in the upload directory.
+     *
+     * @return the upload's path, or null if the name is not one this handler issues, so
+     *     that no other file can be read or deleted through it
+     */
+    private Path uploadPath(String filename) {
+        if (filename == null || !ISSUED_NAME.matcher(filename).matches()) {
+            return null;
+        }
+        Path path = storageDirectory.resolve(filename).normalize();
+        return storageDirectory.equals(path.getParent()) ? path : null;
+    }
+
+    /**
+     * Deletes uploads older than the TTL, then the oldest files on disk until the upload
+     * directory is within its quota.
+     */
+    @Scheduled(fixedDelayString = "${storage.janitor-interval-ms:60000}")
+    public void cleanUp() {
+        long expiredBefore = System.currentTimeMillis() - ttlMillis;
+        int removedFromMemory = 0;
+        synchronized (memoryFiles) {
+            Iterator<MemoryFile> oldest = memoryFiles.values().iterator();
+            while (oldest.hasNext()) {
+                MemoryFile memoryFile = oldest.next();
+                if (memoryFile.storedAt() >= expiredBefore) {
+                    break;
+                }
+                memoryBytes -= memoryFile.content().length;
+                oldest.remove();
+                removedFromMemory++;
+            }
+        }
+
+        // Hard links to one blob share its inode, identified by the file key, and count
+        // against the quota once, until the last of them is deleted
+        record StoredFile(Path path, Object inode, long size, long modified) {
+        }
+        List<StoredFile> files = new ArrayList<>();
+        Map<Object, Integer> linksLeft = new HashMap<>();
+        long diskBytes = 0;
+        try (Stream<Path> listing = Files.list(storageDirectory)) {
+            for (Path path : (Iterable<Path>) listing::iterator) {
+                BasicFileAttributes attributes =
+                    Files.readAttributes(path, BasicFileAttributes.class);
+                if (attributes.isRegularFile()) {
+                    Object inode = attributes.fileKey() != null ? attributes.fileKey() : path;
+                    Long stored = linkedAt.get(path.getFileName().toString());
+                    files.add(new StoredFile(path, inode, attributes.size(), stored != null
+                        ? stored : attributes.lastModifiedTime().toMillis()));
+                    if (linksLeft.merge(inode, 1, Integer::sum) == 1) {
+                        diskBytes += attributes.size();
+                    }
+                }
+            }
+        } catch (IOException e) {
+            logger.warn("Cannot list upload directory {}: {}", storageDirectory,
+                e.getMessage());
+            return;
+        }
+
+        files.sort(Comparator.comparingLong(StoredFile::modified));
+        int removedFromDisk = 0;
+        for (StoredFile file : files) {
+            if (file.modified() >= expiredBefore && diskBytes <= maxDiskBytes) {
+                break;
+            }
+            try {
+                Files.deleteIfExists(file.path());
+                contentHashes.remove(file.path().getFileName().toString());
+                linkedAt.remove(file.path().getFileName().toString());
+                if (linksLeft.merge(file.inode(), -1, Integer::sum) == 0) {
+                    // The blob, if any, is now unreferenced and removed below
+                    diskBytes -= file.size();
+                }
+                removedFromDisk++;
+            } catch (IOException e) {
+                logger.warn("Cannot delete upload {}: {}", file.path(), e.getMessage());
+            }
+        }
+        if (contentAddressed) {
+            removeUnreferencedBlobs(expiredBefore);
+        }
+        if (removedFromMemory + removedFromDisk > 0) {
+            logger.info("Removed {} in-memory and {} on-disk uploads; {} bytes left on disk",
+                removedFromMemory, removedFromDisk, diskBytes);
+        }
+    }
+
+    /**
+     * Deletes blobs that no upload links to any more, i.e. whose link count is 1, and
+     * temporary files last written before {@code expiredBefore}.
+     */
+    private void removeUnreferencedBlobs(long expiredBefore) {
+        try (Stream<Path> blobs = Files.list(blobDirectory)) {
+            for (Path blob : (Iterable<Path>) blobs::iterator) {
+                if (blob.getFileName().toString().endsWith(".tmp")) {
+                    // Still being written, unless its upload failed without cleaning up
+                    try {
+                        if (Files.getLastModifiedTime(blob).toMillis() < expiredBefore) {
+                            Files.deleteIfExists(blob);
+                        }
+                    } catch (NoSuchFileException e) {
+                        // Its upload has just finished
+                    }
+                    continue;
+                }
+                synchronized (blobLock) {
+                    if (((Number) Files.getAttribute(blob, "unix:nlink")).intValue() <= 1) {
+                        Files.deleteIfExists(blob);
+                    }
+                }
+            }
+        } catch (IOException | UnsupportedOperationException | IllegalArgumentException e) {
+            logger.warn("Cannot clean up upload blobs in {}: {}", blobDirectory, e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,284 @@
+package com.antidoxx.backend;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Incremental, bounded-memory front end for {@link MultiPatternScanner}.
+ * <p>
+ * Bytes (or already decoded text) are pushed in with {@code feed} as they arrive, decoded
+ * as UTF-8 into a fixed-size character window, and every complete line in the window is
+ * scanned. Only the unfinished last line is carried over into the next window, so memory
+ * stays at one window regardless of input size. Lines end at "\n", "\r" or "\r\n", the
+ * same as {@link java.io.BufferedReader#readLine()}, or only at "\n" for a scan that must
+ * number lines like {@link MultiPatternScanner#scanLines} does for text held in a string.
+ * <p>
+ * A line longer than the window is split into fragments at a character that no pattern
+ * can match across (ASCII punctuation outside the pattern alphabets, or two whitespace
+ * characters in a row), so findings on such lines are still identical to scanning the
+ * whole line. A window-sized run with no such separator is cut anyway, but its last
+ * {@link #MAX_OVERLAP_CHARS} characters (at most a quarter of the window) are scanned again
+ * at the start of the next fragment: matches that start in them are left to that fragment,
+ * and matches there that start inside one already reported are dropped. Only a match
+ * longer than the overlap can still be cut in two.
+ * <p>
+ * The text handed to the {@link MultiPatternScanner.MatchSink} is the reused window, so
+ * sinks must copy anything they keep. Not thread-safe.
+ */
+final class StreamingScan {
+    static final int DEFAULT_WINDOW_CHARS = 64 * 1024;
+    // Well above the longest match any pattern makes in practice (a 16-digit card number,
+    // or an email address)
+    static final int MAX_OVERLAP_CHARS = 256;
+
+    private final MultiPatternScanner scanner = new MultiPatternScanner();
+    private final MultiPatternScanner.MatchSink sink;
+    private final boolean lineFeedOnly;
+    private final CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder()
+        .onMalformedInput(CodingErrorAction.REPORT)
+        .onUnmappableCharacter(CodingErrorAction.REPORT);
+    private final CharBuffer window;
+    private final int overlapChars;
+    // Holds the first bytes of a multi-byte character split across two feeds
+    private final ByteBuffer carry = ByteBuffer.allocate(8);
+
+    // Matches from the fragments of an over-long line, held until the line ends so they
+    // can be reported in category order like any other line
+    private final Findings fragmentMatches = new Findings();
+    private final MultiPatternScanner.MatchSink fragmentSink = this::onFragmentMatch;
+    // End column of the last match of each category kept from the current line's fragments
+    private final int[] fragmentEnds = new int[SensitiveCategory.VALUES.length];
+    // Matches starting at or after this column are left to the next fragment
+    private int overlapColumn = Integer.MAX_VALUE;
+    // Characters at the start of the window kept only as context for the scan after them
+    private int contextChars;
+
+    private int lineNumber = 1;
+    private boolean inFragmentedLine;
+    // Characters of the current line already scanned as earlier fragments
+    private int lineColumn;
+    private boolean skipLineFeed;
+    private boolean finished;
+
+    StreamingScan(MultiPatternScanner.MatchSink sink) {
+        this(sink, DEFAULT_WINDOW_CHARS);
+    }
+
+    StreamingScan(MultiPatternScanner.MatchSink sink, int windowChars) {
+        this(sink, windowChars, false);
+    }
+
+    /**
+     * @param lineFeedOnly whether lines end only at "\n", leaving a "\r" in the line
+     */
+    StreamingScan(MultiPatternScanner.MatchSink sink, int windowChars, boolean lineFeedOnly) {
+        this.sink = sink;
+        this.lineFeedOnly = lineFeedOnly;
+        this.window = CharBuffer.allocate(windowChars);
+        this.overlapChars = Math.min(MAX_OVERLAP_CHARS, windowChars / 4);
+    }
+
+    /**
+     * Decodes and scans all of {@code bytes}. An incomplete trailing UTF-8 sequence is
+     * kept internally and completed by the next call.
+     *
+     * @throws CharacterCodingException if the input is not valid UTF-8
+     */
+    void feed(ByteBuffer bytes) throws CharacterCodingException {
+        while (carry.position() > 0 && bytes.hasRemaining()) {
+            carry.put(bytes.get());
+            carry.flip();
+            decode(carry, false);
+            carry.compact();
+        }
+        decode(bytes, false);
+        if (bytes.hasRemaining()) {
+            carry.put(bytes);
+        }
+    }
+
+    /**
+     * Scans text that has already been decoded, e.g. by a document extractor.
+     */
+    void feed(CharSequence chars) {
+        int offset = 0;
+        int length = chars.length();
+        while (offset < length) {
+            int count = Math.min(window.remaining(), length - offset);
+            window.append(chars, offset, offset + count);
+            offset += count;
+            if (!window.hasRemaining()) {
+                drain(false);
+            }
+        }
+    }
+
+    /**
+     * Scans whatever is left in the window as the final line.
+     *
+     * @throws CharacterCodingException if the input ended inside a UTF-8 sequence
+     */
+    void finish() throws CharacterCodingException {
+        if (finished) {
+            return;
+        }
+        finished = true;
+        carry.flip();
+        decode(carry, true);
+        carry.clear();
+        CoderResult result;
+        while ((result = decoder.flush(window)).isOverflow()) {
+            drain(false);
+        }
+        if (result.isError()) {
+            result.throwException();
+        }
+        drain(true);
+    }
+
+    /**
+     * @return the number of lines ended so far; after {@link #finish()}, the number of
+     *     lines in the input
+     */
+    int lines() {
+        return lineNumber - 1;
+    }
+
+    /**
+     * @return the regex time spent per category so far, indexed by ordinal
+     */
+    long[] categoryNanos() {
+        return scanner.categoryNanos();
+    }
+
+    private void decode(ByteBuffer bytes, boolean endOfInput) throws CharacterCodingException {
+        while (true) {
+            CoderResult result = decoder.decode(bytes, window, endOfInput);
+            if (result.isOverflow()) {
+                drain(false);
+            } else if (result.isError()) {
+                result.throwException();
+            } else {
+                return;
+            }
+        }
+    }
+
+    private void drain(boolean endOfInput) {
+        window.flip();
+        int limit = window.limit();
+        int first = contextChars;
+        contextChars = 0;
+        int lineStart = first;
+        for (int i = first; i < limit; i++) {
+            char c = window.get(i);
+            if (skipLineFeed) {
+                skipLineFeed = false;
+                if (c == '\n') {
+                    lineStart = i + 1;
+                    continue;
+                }
+            }
+            if (c == '\n' || (c == '\r' && !lineFeedOnly)) {
+                endLine(lineStart, i);
+                skipLineFeed = c == '\r';
+                lineStart = i + 1;
+            }
+        }
+
+        if (endOfInput) {
+            if (lineStart < limit || inFragmentedLine) {
+                endLine(lineStart, limit);
+            }
+            lineStart = limit;
+        } else if (lineStart == first && limit == window.capacity()) {
+            // One line fills the whole window: scan the part before the last safe cut
+            inFragmentedLine = true;
+            int cut = safeCut(first, limit);
+            if (cut < limit) {
+                scanner.scanLines(window, first, cut, lineNumber, lineColumn, fragmentSink);
+                lineColumn += cut - first;
+                lineStart = cut;
+            } else {
+                // No safe cut: scan it all, but leave the overlap to the next fragment
+                int overlapStart = limit - overlapChars;
+                overlapColumn = lineColumn + overlapStart - first;
+                scanner.scanLines(window, first, limit, lineNumber, lineColumn, fragmentSink);
+                overlapColumn = Integer.MAX_VALUE;
+                lineColumn += overlapStart - first;
+                // The character before the overlap stays as context for word boundaries
+                lineStart = overlapStart - 1;
+                contextChars = 1;
+            }
+        }
+
+        window.position(lineStart);
+        window.compact();
+    }
+
+    private void endLine(int start, int end) {
+        if (!inFragmentedLine) {
+            scanner.scanLines(window, start, end, lineNumber, 0, sink);
+        } else {
+            scanner.scanLines(window, start, end, lineNumber, lineColumn, fragmentSink);
+            for (SensitiveCategory category : SensitiveCategory.VALUES) {
+                for (int i = 0; i < fragmentMatches.size(); i++) {
+                    if (fragmentMatches.category(i) == category) {
+                        String match = fragmentMatches.value(i);
+                        sink.onMatch(category, lineNumber, fragmentMatches.start(i), match, 0,
+                            match.length());
+                    }
+                }
+            }
+            fragmentMatches.clear();
+            Arrays.fill(fragmentEnds, 0);
+            inFragmentedLine = false;
+            lineColumn = 0;
+        }
+        lineNumber++;
+    }
+
+    private void onFragmentMatch(SensitiveCategory category, int lineNumber, int column,
+                                 CharSequence text, int start, int end) {
+        int ordinal = category.ordinal();
+        if (column >= overlapColumn || column < fragmentEnds[ordinal]) {
+            // Found again, or in full, by the next fragment; or part of a match already kept
+            return;
+        }
+        fragmentEnds[ordinal] = column + end - start;
+        fragmentMatches.onMatch(category, lineNumber, column, text, start, end);
+    }
+
+    /**
+     * @return the end of the longest prefix of the window that no match can extend past,
+     *     or {@code limit} if there is none after {@code from}
+     */
+    private int safeCut(int from, int limit) {
+        for (int i = limit - 1; i > from; i--) {
+            char c = window.get(i);
+            if (isSeparator(c) || (isWhitespace(c) && isWhitespace(window.get(i - 1)))) {
+                return i;
+            }
+        }
+        return limit;
+    }
+
+    // ASCII non-word characters that appear in none of the pattern alphabets
+    private static boolean isSeparator(char c) {
+        if (c >= 128 || (c >= '0' && c <= '9') || (c >= 'A' && c <= 'Z') ||
+            (c >= 'a' && c <= 'z') || isWhitespace(c)) {
+            return false;
+        }
+        return "._%+-@|()".indexOf(c) < 0 && c != '_';
+    }
+
+    private static boolean isWhitespace(char c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == 0x0B || c == '\f' || c == '\r';
+    }
+}
@@ -0,0 +1,17 @@
+package com.antidoxx.backend;
+
+/**
+ * Thrown when a stored file is of a type the analysis pipeline cannot handle.
+ */
+public class UnsupportedFileTypeException extends RuntimeException {
+    private final String mimeType;
+
+    public UnsupportedFileTypeException(String mimeType) {
+        super("Unsupported file type - " + mimeType);
+        this.mimeType = mimeType;
+    }
+
+    public String getMimeType() {
+        return mimeType;
+    }
+}
@@ -0,0 +1,107 @@
+package com.antidoxx.backend;
+
+import jdk.incubator.vector.ByteVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * {@link ByteScanKernel} on the incubating Vector API.
+ * <p>
+ * Each vector of bytes is compared against the digits, '@', '.', '-' and the line breaks
+ * at once, and each comparison is turned into a bit mask with one bit per byte. Counts
+ * are then bit counts, and digit runs are found with bit tricks on the digit mask. Vectors
+ * with none of these bytes, most of them in prose, are skipped after one test. Only
+ * vectors containing a line break are split, at the breaks. Only loaded when the
+ * {@code jdk.incubator.vector} module is present; see {@link ByteScanKernel#create}.
+ */
+final class VectorByteScanKernel implements ByteScanKernel {
+    // Masks are read as a long, so vectors are capped at 64 byte lanes
+    private static final VectorSpecies<Byte> SPECIES = ByteVector.SPECIES_PREFERRED.length() <= 64
+        ? ByteVector.SPECIES_PREFERRED : ByteVector.SPECIES_512;
+    private static final int LANES = SPECIES.length();
+
+    @Override
+    public boolean scan(byte[] chunk, int length, ByteLineCounts counts,
+                        LineBreakListener listener) {
+        boolean ascii = true;
+        int bound = SPECIES.loopBound(length);
+        int i = 0;
+        for (; i < bound; i += LANES) {
+            ByteVector bytes = ByteVector.fromArray(SPECIES, chunk, i);
+            if (ascii && bytes.compare(VectorOperators.LT, (byte) 0).anyTrue()) {
+                ascii = false;
+            }
+            VectorMask<Byte> digitMask = bytes.compare(VectorOperators.GE, (byte) '0')
+                .and(bytes.compare(VectorOperators.LE, (byte) '9'));
+            VectorMask<Byte> atMask = bytes.eq((byte) '@');
+            VectorMask<Byte> dotMask = bytes.eq((byte) '.');
+            VectorMask<Byte> dashMask = bytes.eq((byte) '-');
+            VectorMask<Byte> breakMask = bytes.eq((byte) '\n').or(bytes.eq((byte) '\r'));
+            if (!digitMask.or(atMask).or(dotMask).or(dashMask).or(breakMask).anyTrue()) {
+                // The common case in prose: nothing to count, and any digit run ends here
+                counts.digitRun = 0;
+                continue;
+            }
+            long digits = digitMask.toLong();
+            long at = atMask.toLong();
+            long dots = dotMask.toLong();
+            long dashes = dashMask.toLong();
+            long breaks = breakMask.toLong();
+
+            int segmentStart = 0;
+            while (breaks != 0) {
+                int lane = Long.numberOfTrailingZeros(breaks);
+                breaks &= breaks - 1;
+                count(counts, digits, at, dots, dashes, segmentStart, lane);
+                listener.onLineBreak(i + lane, chunk[i + lane]);
+                segmentStart = lane + 1;
+            }
+            count(counts, digits, at, dots, dashes, segmentStart, LANES);
+        }
+        boolean tailAscii = ScalarByteScanKernel.scanRange(chunk, i, length, counts, listener);
+        return ascii && tailAscii;
+    }
+
+    /**
+     * Adds lanes {@code [from, to)} of the masks to the counts.
+     */
+    private static void count(ByteLineCounts counts, long digitMask, long atMask, long dotMask,
+                              long dashMask, int from, int to) {
+        int width = to - from;
+        if (width == 0) {
+            return;
+        }
+        long lanes = width == 64 ? -1L : (1L << width) - 1;
+        long digits = (digitMask >>> from) & lanes;
+        counts.digits += Long.bitCount(digits);
+        counts.at += Long.bitCount((atMask >>> from) & lanes);
+        counts.dots += Long.bitCount((dotMask >>> from) & lanes);
+        counts.dashes += Long.bitCount((dashMask >>> from) & lanes);
+
+        if (digits == 0) {
+            counts.digitRun = 0;
+        } else if (digits == lanes) {
+            counts.digitRun += width;
+            counts.longestDigitRun = Math.max(counts.longestDigitRun, counts.digitRun);
+        } else {
+            // The run carried in continues through the leading digits of this segment
+            int leading = Long.numberOfTrailingZeros(~digits);
+            counts.longestDigitRun = Math.max(counts.longestDigitRun,
+                Math.max(counts.digitRun + leading, longestRun(digits)));
+            counts.digitRun = width - 64 + Long.numberOfLeadingZeros(~digits & lanes);
+        }
+    }
+
+    /**
+     * @return the length of the longest run of set bits
+     */
+    private static int longestRun(long bits) {
+        int length = 0;
+        while (bits != 0) {
+            bits &= bits >>> 1;
+            length++;
+        }
+        return length;
+    }
+}
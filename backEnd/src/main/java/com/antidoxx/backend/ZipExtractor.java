@@ -0,0 +1,120 @@
+package com.antidoxx.backend;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.net.URLConnection;
+import java.nio.CharBuffer;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+/**
+ * Extracts the text of ZIP archives entry by entry. Each file entry is a part, so entries
+ * are decompressed and scanned in parallel. Text files are decoded as UTF-8 while they
+ * are inflated; documents other extractors support (PDF, DOCX, nested archives) are
+ * extracted as embedded documents; anything else is reported as not scanned.
+ */
+@Service
+public class ZipExtractor implements DocumentExtractor {
+    private static final Set<String> TEXT_EXTENSIONS = Set.of("txt", "text", "csv", "tsv", "md",
+        "markdown", "json", "xml", "html", "htm", "log", "yml", "yaml", "ini", "cfg", "conf",
+        "properties", "sql", "vcf", "ics", "eml", "rtf");
+    private static final int READ_CHARS = 8 * 1024;
+
+    private final int maxEntries;
+
+    public ZipExtractor(@Value("${extract.zip.max-entries:10000}") int maxEntries) {
+        this.maxEntries = maxEntries;
+    }
+
+    @Override
+    public boolean supports(String mimeType, String filename) {
+        return "application/zip".equals(mimeType) || "application/x-zip-compressed".equals(mimeType)
+            || filename.toLowerCase(Locale.ROOT).endsWith(".zip");
+    }
+
+    @Override
+    public Document open(Path file, Limits limits) throws IOException {
+        ZipFile zip = new ZipFile(file.toFile());
+        List<? extends ZipEntry> entries;
+        try {
+            entries = zip.stream().filter(entry -> !entry.isDirectory()).toList();
+        } catch (RuntimeException e) {
+            zip.close();
+            throw new IOException("Unreadable archive: " + e.getMessage(), e);
+        }
+        int scanned = Math.min(entries.size(), maxEntries);
+        int omitted = entries.size() - scanned;
+
+        return new Document() {
+            @Override
+            public int partCount() {
+                // Entries beyond the limit are reported by one extra part
+                return omitted > 0 ? scanned + 1 : scanned;
+            }
+
+            @Override
+            public String partName(int index) {
+                return index < scanned ? entries.get(index).getName() : "remaining entries";
+            }
+
+            @Override
+            public void extract(int index, PartSink sink) throws IOException {
+                if (index == scanned) {
+                    sink.skipped(omitted + " entries beyond the limit of " + maxEntries);
+                    return;
+                }
+                ZipEntry entry = entries.get(index);
+                try (InputStream in = zip.getInputStream(entry)) {
+                    if (isText(entry.getName())) {
+                        extractText(in, sink);
+                    } else if (!sink.embedded(entry.getName(), in)) {
+                        sink.skipped("not a text file or supported document");
+                    }
+                }
+            }
+
+            @Override
+            public void close() throws IOException {
+                zip.close();
+            }
+        };
+    }
+
+    private static boolean isText(String name) {
+        String lowerCase = name.toLowerCase(Locale.ROOT);
+        String extension = lowerCase.substring(lowerCase.lastIndexOf('.') + 1);
+        if (TEXT_EXTENSIONS.contains(extension)) {
+            return true;
+        }
+        String guessed = URLConnection.guessContentTypeFromName(lowerCase);
+        return guessed != null && guessed.startsWith("text/");
+    }
+
+    private static void extractText(InputStream in, PartSink sink) throws IOException {
+        Reader reader = new InputStreamReader(in, StandardCharsets.UTF_8.newDecoder()
+            .onMalformedInput(CodingErrorAction.REPORT)
+            .onUnmappableCharacter(CodingErrorAction.REPORT));
+        char[] chars = new char[READ_CHARS];
+        try {
+            for (int read; (read = reader.read(chars)) >= 0; ) {
+                if (!sink.text(CharBuffer.wrap(chars, 0, read))) {
+                    return;
+                }
+            }
+        } catch (CharacterCodingException e) {
+            sink.skipped("not UTF-8 text");
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package com.antidoxx.backend;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.ArrayList;
+import org.junit.jupiter.api.Test;
+
+class AnalysisCacheTests {
+
+  @Test
+  void evictsLeastRecentlyUsedOverTheMaxWeight() {
+    // Each entry weighs 1 (key) + 9 (message) = 10
+    AnalysisCache cache = new AnalysisCache(30, 600);
+    cache.put("a", result("message a"));
+    cache.put("b", result("message b"));
+    cache.put("c", result("message c"));
+    assertThat(cache.get("a")).isNotNull();
+
+    cache.put("d", result("message d"));
+
+    assertThat(cache.size()).isEqualTo(3);
+    assertThat(cache.get("b")).isNull();
+    assertThat(cache.get("a").message()).isEqualTo("message a");
+    assertThat(cache.get("c")).isNotNull();
+    assertThat(cache.get("d")).isNotNull();
+  }
+
+  @Test
+  void skipsEntriesHeavierThanTheWholeCache() {
+    AnalysisCache cache = new AnalysisCache(30, 600);
+    cache.put("a", result("message a"));
+    cache.put("big", result("x".repeat(28)));
+
+    assertThat(cache.get("big")).isNull();
+    assertThat(cache.get("a")).isNotNull();
+  }
+
+  @Test
+  void replacingAnEntryKeepsTheWeightRight() {
+    AnalysisCache cache = new AnalysisCache(30, 600);
+    for (int i = 0; i < 10; i++) {
+      cache.put("a", result("message " + i));
+    }
+    cache.put("b", result("message b"));
+    cache.put("c", result("message c"));
+
+    assertThat(cache.size()).isEqualTo(3);
+    assertThat(cache.get("a").message()).isEqualTo("message 9");
+  }
+
+  @Test
+  void expiresEntriesAfterTheTtl() throws InterruptedException {
+    AnalysisCache cache = new AnalysisCache(1 << 20, 1);
+    cache.put("a", result("message a"));
+    assertThat(cache.get("a")).isNotNull();
+
+    Thread.sleep(1100);
+
+    assertThat(cache.get("a")).isNull();
+    assertThat(cache.size()).isZero();
+    assertThat(cache.hits()).isEqualTo(1);
+    assertThat(cache.misses()).isEqualTo(1);
+  }
+
+  private static AnalysisResult result(String message) {
+    return new AnalysisResult(0, message, new ArrayList<>(), false, false);
+  }
+}
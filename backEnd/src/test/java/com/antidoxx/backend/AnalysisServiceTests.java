@@ -0,0 +1,26 @@
+package com.antidoxx.backend;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import org.junit.jupiter.api.Test;
+
+class AnalysisServiceTests {
+
+  @Test
+  void geminiPrefixEndsAtACharacterBoundary() {
+    String text = "aé€😀";
+    byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+    // Byte counts at which each character ends: a, é, €, 😀
+    String[] expected = {"", "a", "a", "aé", "aé", "aé", "aé€",
+        "aé€", "aé€", "aé€", text};
+
+    for (int length = 0; length <= bytes.length; length++) {
+      ByteArrayOutputStream prefix = new ByteArrayOutputStream();
+      prefix.write(bytes, 0, length);
+      assertThat(AnalysisService.utf8Prefix(prefix)).as("%d bytes", length)
+          .isEqualTo(expected[length]);
+    }
+  }
+}
@@ -0,0 +1,101 @@
+package com.antidoxx.backend;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.Test;
+
+class BulkScanServiceTests {
+
+  private final AnalysisService analysisService = mock(AnalysisService.class);
+
+  @Test
+  void deliversOneOutcomePerFileWithItsError() throws Exception {
+    when(analysisService.analyzeFile(anyString()))
+        .thenAnswer(invocation -> result(invocation.getArgument(0)));
+    when(analysisService.analyzeFile("missing.txt")).thenThrow(new IOException("not found"));
+    when(analysisService.analyzeFile("broken.pdf"))
+        .thenThrow(new IllegalStateException("corrupt"));
+    when(analysisService.analyzeFile("last.txt")).thenThrow(new StackOverflowError());
+    List<String> filenames = List.of("a.txt", "missing.txt", "b.txt", "broken.pdf", "last.txt");
+
+    Map<Integer, BulkScanService.Outcome> outcomes = new HashMap<>();
+    try (BulkScanService.Batch batch = new BulkScanService(analysisService, 8)
+        .start(filenames, 2)) {
+      for (BulkScanService.Outcome outcome; (outcome = batch.next()) != null; ) {
+        assertThat(outcomes.put(outcome.index(), outcome)).isNull();
+      }
+    }
+
+    assertThat(outcomes).hasSize(filenames.size());
+    for (int i = 0; i < filenames.size(); i++) {
+      assertThat(outcomes.get(i).filename()).isEqualTo(filenames.get(i));
+    }
+    assertThat(outcomes.get(0).result().message()).isEqualTo("a.txt");
+    assertThat(outcomes.get(0).error()).isNull();
+    assertThat(outcomes.get(1).result()).isNull();
+    assertThat(outcomes.get(1).error()).isInstanceOf(IOException.class);
+    assertThat(outcomes.get(2).result().message()).isEqualTo("b.txt");
+    assertThat(outcomes.get(3).error()).hasMessage("corrupt");
+    assertThat(outcomes.get(4).error()).isInstanceOf(StackOverflowError.class);
+  }
+
+  @Test
+  void analyzesAtMostTheRequestedNumberAtOnce() throws Exception {
+    AtomicInteger running = new AtomicInteger();
+    AtomicInteger maxRunning = new AtomicInteger();
+    when(analysisService.analyzeFile(anyString())).thenAnswer(invocation -> {
+      maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+      Thread.sleep(20);
+      running.decrementAndGet();
+      return result(invocation.getArgument(0));
+    });
+    List<String> filenames = new ArrayList<>();
+    for (int i = 0; i < 12; i++) {
+      filenames.add("file" + i + ".txt");
+    }
+    BulkScanService service = new BulkScanService(analysisService, 3);
+
+    assertThat(drain(service.start(filenames, 2))).isEqualTo(12);
+    assertThat(maxRunning.get()).isLessThanOrEqualTo(2);
+
+    // 0 and anything over bulk.max-concurrency mean the maximum
+    maxRunning.set(0);
+    assertThat(drain(service.start(filenames, 0))).isEqualTo(12);
+    assertThat(maxRunning.get()).isLessThanOrEqualTo(3);
+    maxRunning.set(0);
+    assertThat(drain(service.start(filenames, 100))).isEqualTo(12);
+    assertThat(maxRunning.get()).isLessThanOrEqualTo(3);
+  }
+
+  @Test
+  void emptyBatchHasNoOutcomes() throws InterruptedException {
+    try (BulkScanService.Batch batch = new BulkScanService(analysisService, 8)
+        .start(List.of(), 0)) {
+      assertThat(batch.size()).isZero();
+      assertThat(batch.next()).isNull();
+    }
+  }
+
+  private static int drain(BulkScanService.Batch batch) throws InterruptedException {
+    try (batch) {
+      int delivered = 0;
+      while (batch.next() != null) {
+        delivered++;
+      }
+      return delivered;
+    }
+  }
+
+  private static AnalysisResult result(String filename) {
+    return new AnalysisResult(0, filename, new ArrayList<>(), false, false);
+  }
+}
@@ -0,0 +1,141 @@
+package com.antidoxx.backend;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class DocumentExtractionTests {
+
+  private static final String BODY_XML =
+      "<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"yes\"?>"
+          + "<w:document xmlns:w=\"http://schemas.openxmlformats.org/wordprocessingml/2006/main\">"
+          + "<w:body><w:p><w:r><w:t>Call me at</w:t></w:r><w:r><w:tab/><w:t>555-123-4567</w:t></w:r></w:p>"
+          + "<w:p><w:del><w:r><w:delText>ssn 123-45-6789</w:delText></w:r></w:del></w:p>"
+          + "</w:body></w:document>";
+
+  private final DocumentExtraction extraction = new DocumentExtraction(
+      List.of(new DocxExtractor(), new ZipExtractor(10_000)), 4, 1 << 24, 1 << 20, 1 << 20);
+
+  @TempDir
+  Path tempDir;
+
+  @Test
+  void numbersLinesAcrossEntriesAndEmbeddedDocuments() throws IOException {
+    Map<String, byte[]> entries = new LinkedHashMap<>();
+    entries.put("notes/a.txt", "first line\nmail jane.doe@example.com\n".getBytes(StandardCharsets.UTF_8));
+    entries.put("notes/b.docx", zip(Map.of("word/document.xml", BODY_XML.getBytes(StandardCharsets.UTF_8))));
+    entries.put("photo.bin", new byte[] {1, 2, 3});
+    entries.put("c.txt", "server 192.168.1.20".getBytes(StandardCharsets.UTF_8));
+    Path archive = Files.write(tempDir.resolve("upload.zip"), zip(entries));
+
+    DocumentExtraction.Result result = extract(archive, 1 << 20);
+
+    assertThat(result.findings().descriptions()).containsExactly(
+        "Line 2: Email Address detected -> 'jane.doe@example.com'",
+        "Line 3: Phone Number detected -> '555-123-4567'",
+        "Line 4: Social Security Number detected -> '123-45-6789'",
+        "Line 5: IP Address (IPv4) detected -> '192.168.1.20'");
+    assertThat(result.skipped()).containsExactly("photo.bin: not a text file or supported document");
+    assertThat(result.text()).startsWith("first line\nmail jane.doe@example.com\nCall me at\t555-123-4567\n");
+    assertThat(result.truncated()).isFalse();
+  }
+
+  @Test
+  void stopsAtTheDocumentTextLimit() throws IOException {
+    DocumentExtraction limited = new DocumentExtraction(
+        List.of(new DocxExtractor(), new ZipExtractor(10_000)), 1, 1 << 24, 20, 1 << 20);
+    Path archive = Files.write(tempDir.resolve("upload.zip"), zip(Map.of("a.txt",
+        "nothing here\nmail jane.doe@example.com\n".getBytes(StandardCharsets.UTF_8))));
+
+    DocumentExtraction.Result result = limited.extract(archive,
+        limited.extractorFor("application/zip", "upload.zip"), 1 << 20);
+
+    assertThat(result.findings().isEmpty()).isTrue();
+    assertThat(result.truncated()).isTrue();
+    assertThat(result.text()).isEqualTo("nothing here\nmail ja\n");
+  }
+
+  @Test
+  void keepsTheTextForGeminiInPartOrder() throws IOException {
+    // The first part only produces its text once the second one has
+    CountDownLatch secondDone = new CountDownLatch(1);
+    DocumentExtractor extractor = new DocumentExtractor() {
+      @Override
+      public boolean supports(String mimeType, String filename) {
+        return true;
+      }
+
+      @Override
+      public Document open(Path file, Limits limits) {
+        return new Document() {
+          @Override
+          public int partCount() {
+            return 2;
+          }
+
+          @Override
+          public String partName(int index) {
+            return "part " + index;
+          }
+
+          @Override
+          public void extract(int index, PartSink sink) throws IOException {
+            if (index == 1) {
+              sink.text("second part\n");
+              secondDone.countDown();
+              return;
+            }
+            try {
+              assertThat(secondDone.await(10, TimeUnit.SECONDS)).isTrue();
+            } catch (InterruptedException e) {
+              throw new IOException(e);
+            }
+            sink.text("first part\n");
+          }
+
+          @Override
+          public void close() {
+          }
+        };
+      }
+    };
+    DocumentExtraction parallel =
+        new DocumentExtraction(List.of(extractor), 2, 1 << 24, 1 << 20, 1 << 20);
+    Path file = Files.writeString(tempDir.resolve("doc.bin"), "");
+
+    DocumentExtraction.Result result = parallel.extract(file, extractor, 15);
+
+    assertThat(result.text()).isEqualTo("first part\nseco");
+  }
+
+  private DocumentExtraction.Result extract(Path file, int textChars) throws IOException {
+    DocumentExtractor extractor = extraction.extractorFor(null, file.getFileName().toString());
+    assertThat(extractor).isNotNull();
+    return extraction.extract(file, extractor, textChars);
+  }
+
+  private static byte[] zip(Map<String, byte[]> entries) throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    try (ZipOutputStream out = new ZipOutputStream(bytes)) {
+      for (Map.Entry<String, byte[]> entry : entries.entrySet()) {
+        out.putNextEntry(new ZipEntry(entry.getKey()));
+        out.write(entry.getValue());
+        out.closeEntry();
+      }
+    }
+    return bytes.toByteArray();
+  }
+}
@@ -0,0 +1,140 @@
+package com.antidoxx.backend;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.clearInvocations;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+
+class EditSessionServiceTests {
+
+  private static final String TEXT = String.join("\n",
+      "Dear team,",
+      "mail jane.doe@example.com for access",
+      "",
+      "ssn 123-45-6789",
+      "nothing here",
+      "",
+      "call (555) 123-4567 or (555) 765-4321");
+
+  private final SensitiveInfoDetector reference = new SensitiveInfoDetector(1 << 20, true);
+  private SensitiveInfoDetector detector;
+  private AnalysisService analysisService;
+  private final List<List<String>> geminiRequests = new ArrayList<>();
+  private final List<Findings> rendered = new ArrayList<>();
+
+  @BeforeEach
+  void setUp() {
+    detector = spy(new SensitiveInfoDetector(1 << 20, true));
+    analysisService = mock(AnalysisService.class);
+    when(analysisService.analyzeEachWithGemini(anyList())).thenAnswer(invocation -> {
+      List<String> texts = invocation.getArgument(0);
+      geminiRequests.add(List.copyOf(texts));
+      List<List<String>> findings = new ArrayList<>();
+      texts.forEach(text -> findings.add(List.of()));
+      return new AnalysisService.GeminiAnalyses(findings, false, false);
+    });
+    when(analysisService.renderResult(any(), anyList(), anyString(), anyBoolean(),
+        anyBoolean())).thenAnswer(invocation -> {
+          Findings findings = invocation.getArgument(0);
+          rendered.add(findings);
+          return new AnalysisResult(0, "", findings.toList(), invocation.getArgument(3),
+              invocation.getArgument(4));
+        });
+  }
+
+  private EditSessionService service(int maxGeminiParagraphs) {
+    PipelineMetrics metrics = new PipelineMetrics(new SimpleMeterRegistry(),
+        new AnalysisCache(1 << 20, 600));
+    return new EditSessionService(detector, analysisService, metrics, 16, 600,
+        maxGeminiParagraphs, 1 << 20);
+  }
+
+  @Test
+  void rescansOnlyChangedLinesAndMatchesAFullScan() {
+    EditSessionService sessions = service(32);
+    EditSessionService.Check created = sessions.create(TEXT);
+    assertMatchesFullScan(created, TEXT);
+    verify(detector).scan(TEXT);
+    clearInvocations(detector);
+    geminiRequests.clear();
+
+    // Replaces "nothing here" and inserts a line above the first paragraph
+    EditSessionService.Check updated = sessions.update(created.sessionId(), 0, List.of(
+        new EditSessionService.Edit(5, 6, "backup ssn 234-56-7890"),
+        new EditSessionService.Edit(1, 1, "ip 10.0.0.12")));
+    String text = String.join("\n",
+        "ip 10.0.0.12",
+        "Dear team,",
+        "mail jane.doe@example.com for access",
+        "",
+        "ssn 123-45-6789",
+        "backup ssn 234-56-7890",
+        "",
+        "call (555) 123-4567 or (555) 765-4321");
+
+    assertThat(updated.version()).isEqualTo(1);
+    ArgumentCaptor<String> scanned = ArgumentCaptor.forClass(String.class);
+    verify(detector).scan(scanned.capture());
+    assertThat(scanned.getValue()).isEqualTo("ip 10.0.0.12\nbackup ssn 234-56-7890");
+    assertMatchesFullScan(updated, text);
+    // Only the two changed paragraphs go to Gemini; the last one is unchanged
+    assertThat(geminiRequests).containsExactly(List.of(
+        "ip 10.0.0.12\nDear team,\nmail jane.doe@example.com for access\n",
+        "ssn 123-45-6789\nbackup ssn 234-56-7890\n"));
+  }
+
+  @Test
+  void rejectsEditsBasedOnAnotherVersion() {
+    EditSessionService sessions = service(32);
+    EditSessionService.Check created = sessions.create(TEXT);
+    sessions.update(created.sessionId(), 0, List.of(new EditSessionService.Edit(1, 2, "Hi,")));
+
+    assertThatThrownBy(() -> sessions.update(created.sessionId(), 0,
+        List.of(new EditSessionService.Edit(1, 2, "Hello,"))))
+        .isInstanceOfSatisfying(EditSessionService.VersionConflictException.class,
+            e -> assertThat(e.getVersion()).isEqualTo(1));
+    assertThatThrownBy(() -> sessions.update(created.sessionId(), 1,
+        List.of(new EditSessionService.Edit(9, 9, "past the end"))))
+        .isInstanceOf(IllegalArgumentException.class);
+
+    // Neither rejected update changed the text
+    EditSessionService.Check unchanged = sessions.update(created.sessionId(), 1, List.of());
+    assertMatchesFullScan(unchanged, TEXT.replace("Dear team,", "Hi,"));
+    assertThat(sessions.update("unknown", 0, List.of())).isNull();
+  }
+
+  @Test
+  void leavesParagraphsOverTheLimitForTheNextCheck() {
+    EditSessionService sessions = service(2);
+    EditSessionService.Check created = sessions.create(TEXT);
+    assertThat(geminiRequests).hasSize(1);
+    assertThat(geminiRequests.get(0)).hasSize(2);
+    assertThat(created.result().partial()).isTrue();
+
+    EditSessionService.Check next = sessions.update(created.sessionId(), 0, List.of());
+    assertThat(geminiRequests).hasSize(2);
+    assertThat(geminiRequests.get(1))
+        .containsExactly("call (555) 123-4567 or (555) 765-4321\n");
+    assertThat(next.result().partial()).isFalse();
+  }
+
+  private void assertMatchesFullScan(EditSessionService.Check check, String text) {
+    assertThat(check.result().findings()).isEqualTo(reference.scan(text).toList());
+    assertThat(rendered.get(rendered.size() - 1).descriptions())
+        .isEqualTo(reference.detectSensitiveInfo(text));
+  }
+}
@@ -0,0 +1,82 @@
+package com.antidoxx.backend;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import javax.imageio.ImageIO;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class ImagePreprocessorTests {
+
+  @TempDir
+  Path tempDir;
+
+  private final ImagePreprocessor preprocessor = new ImagePreprocessor(500, 0.85f);
+
+  @Test
+  void shrinksLargeImagesToGrayscaleJpeg() throws IOException {
+    Path image = png("photo.png", 2000, 1000);
+    long originalSize = Files.size(image);
+
+    Path prepared = preprocessor.prepare(image);
+    try {
+      assertThat(prepared).isNotEqualTo(image);
+      assertThat(Files.size(prepared)).isLessThan(originalSize);
+      BufferedImage decoded = ImageIO.read(prepared.toFile());
+      assertThat(decoded.getWidth()).isEqualTo(500);
+      assertThat(decoded.getHeight()).isEqualTo(250);
+      assertThat(decoded.getRaster().getNumBands()).isEqualTo(1);
+      assertThat(Files.size(image)).isEqualTo(originalSize);
+    } finally {
+      preprocessor.release(image, prepared);
+    }
+    assertThat(prepared).doesNotExist();
+    assertThat(image).exists();
+  }
+
+  @Test
+  void keepsTheSizeOfSmallImages() throws IOException {
+    Path image = png("small.png", 400, 300);
+
+    Path prepared = preprocessor.prepare(image);
+    try {
+      BufferedImage decoded = ImageIO.read(prepared.toFile());
+      assertThat(decoded.getWidth()).isEqualTo(400);
+      assertThat(decoded.getHeight()).isEqualTo(300);
+    } finally {
+      preprocessor.release(image, prepared);
+    }
+  }
+
+  @Test
+  void returnsTheOriginalWhenNothingIsGained() throws IOException {
+    Path tiny = png("tiny.png", 1, 1);
+    Path text = Files.writeString(tempDir.resolve("notes.png"), "not an image",
+        StandardCharsets.UTF_8);
+
+    assertThat(preprocessor.prepare(tiny)).isEqualTo(tiny);
+    assertThat(preprocessor.prepare(text)).isEqualTo(text);
+    preprocessor.release(tiny, tiny);
+    assertThat(tiny).exists();
+  }
+
+  // Random colors, so the PNG does not compress well and the JPEG copy is smaller
+  private Path png(String name, int width, int height) throws IOException {
+    BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+    Random random = new Random(42);
+    for (int y = 0; y < height; y++) {
+      for (int x = 0; x < width; x++) {
+        image.setRGB(x, y, random.nextInt(1 << 24));
+      }
+    }
+    Path path = tempDir.resolve(name);
+    ImageIO.write(image, "png", path.toFile());
+    return path;
+  }
+}
@@ -0,0 +1,59 @@
+package com.antidoxx.backend;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.stream.Stream;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class OCRCacheTests {
+
+  @TempDir
+  Path tempDir;
+
+  @Test
+  void servesTextsFromDiskAfterARestart() throws IOException {
+    OCRCache before = new OCRCache(tempDir, 1 << 20, 1 << 20);
+    before.put("abc", "ssn 123-45-6789");
+    assertThat(before.get("missing")).isNull();
+
+    OCRCache after = new OCRCache(tempDir, 1 << 20, 1 << 20);
+
+    assertThat(after.get("abc")).isEqualTo("ssn 123-45-6789");
+    assertThat(after.get("missing")).isNull();
+    try (Stream<Path> files = Files.list(tempDir)) {
+      assertThat(files).containsExactly(tempDir.resolve("abc.txt"));
+    }
+  }
+
+  @Test
+  void textsTooLargeForMemoryAreReadFromDisk() throws IOException {
+    OCRCache cache = new OCRCache(tempDir, 4, 1 << 20);
+    cache.put("abc", "longer than four");
+    Files.writeString(tempDir.resolve("abc.txt"), "changed on disk");
+
+    assertThat(cache.get("abc")).isEqualTo("changed on disk");
+  }
+
+  @Test
+  void evictsLeastRecentlyUsedFilesOverTheDiskLimit() throws IOException {
+    OCRCache cache = new OCRCache(tempDir, 0, 25);
+    cache.put("a", "0123456789");
+    cache.put("b", "0123456789");
+    Files.setLastModifiedTime(tempDir.resolve("a.txt"), FileTime.fromMillis(1_000));
+    Files.setLastModifiedTime(tempDir.resolve("b.txt"), FileTime.fromMillis(2_000));
+    // Reading "a" from disk marks it as recently used
+    assertThat(cache.get("a")).isEqualTo("0123456789");
+
+    cache.put("c", "0123456789");
+
+    assertThat(tempDir.resolve("a.txt")).exists();
+    assertThat(tempDir.resolve("b.txt")).doesNotExist();
+    assertThat(tempDir.resolve("c.txt")).exists();
+    assertThat(cache.get("b")).isNull();
+  }
+}
@@ -0,0 +1,133 @@
+package com.antidoxx.backend;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import com.sun.net.httpserver.HttpServer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class OCRServiceTests {
+
+  private static final String OCR_RESPONSE =
+      "{\"ParsedResults\":[{\"ParsedText\":\"call 555-123-4567\\n\"}],\"OCRExitCode\":1}";
+
+  @TempDir
+  Path tempDir;
+
+  private HttpServer server;
+  private final DependencyGuards guards = new DependencyGuards(
+      new PipelineMetrics(new SimpleMeterRegistry(), new AnalysisCache(1 << 20, 600)),
+      64, 10_000, 0.5, 30_000, 16, 15_000, 0.5, 30_000);
+  private final AtomicInteger failuresLeft = new AtomicInteger();
+  private final List<String> requestBodies = new CopyOnWriteArrayList<>();
+  private final List<String> apiKeys = new CopyOnWriteArrayList<>();
+
+  @BeforeEach
+  void startStubServer() throws IOException {
+    server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+    server.createContext("/parse/image", exchange -> {
+      requestBodies.add(new String(exchange.getRequestBody().readAllBytes(),
+          StandardCharsets.ISO_8859_1));
+      apiKeys.add(exchange.getRequestHeaders().getFirst("apikey"));
+      boolean fail = failuresLeft.getAndDecrement() > 0;
+      byte[] body = (fail ? "{}" : OCR_RESPONSE).getBytes(StandardCharsets.UTF_8);
+      exchange.getResponseHeaders().add("Content-Type", "application/json");
+      exchange.sendResponseHeaders(fail ? 503 : 200, body.length);
+      exchange.getResponseBody().write(body);
+      exchange.close();
+    });
+    server.start();
+  }
+
+  @AfterEach
+  void stopStubServer() {
+    server.stop(0);
+  }
+
+  private OCRService client(int maxRetries) {
+    String url = "http://127.0.0.1:" + server.getAddress().getPort() + "/parse/image";
+    return new OCRService(guards, url, "test-key", 1000, 5000, maxRetries, 1);
+  }
+
+  @Test
+  void uploadsImageAsMultipartFilePart() throws IOException {
+    Path image = tempDir.resolve("scan.png");
+    Files.write(image, new byte[] {(byte) 0x89, 'P', 'N', 'G', 1, 2, 3});
+
+    String text = client(0).extractTextFromImage(image.toFile());
+
+    assertThat(text).isEqualTo("call 555-123-4567");
+    assertThat(apiKeys).containsExactly("test-key");
+    assertThat(requestBodies.get(0))
+        .contains("name=\"file\"; filename=\"scan.png\"")
+        .contains("\u0089PNG\u0001\u0002\u0003")
+        .doesNotContain("base64");
+  }
+
+  @Test
+  void retriesServerErrorsAndReusesTheClient() throws IOException {
+    Path image = tempDir.resolve("scan.jpg");
+    Files.write(image, new byte[] {1, 2, 3});
+    failuresLeft.set(2);
+    OCRService ocrService = client(2);
+
+    assertThat(ocrService.extractTextFromImage(image.toFile())).isEqualTo("call 555-123-4567");
+    assertThat(ocrService.extractTextFromImage(image.toFile())).isEqualTo("call 555-123-4567");
+    assertThat(requestBodies).hasSize(4);
+  }
+
+  @Test
+  void givesUpAfterMaxRetries() throws IOException {
+    Path image = tempDir.resolve("scan.gif");
+    Files.write(image, new byte[] {1, 2, 3});
+    failuresLeft.set(5);
+
+    assertThat(client(1).extractTextFromImage(image.toFile())).isEmpty();
+    assertThat(requestBodies).hasSize(2);
+  }
+
+  @Test
+  void opensCircuitAfterRepeatedFailures() throws IOException {
+    Path image = tempDir.resolve("scan.png");
+    Files.write(image, new byte[] {1, 2, 3});
+    failuresLeft.set(100);
+    OCRService ocrService = client(0);
+
+    for (int i = 0; i < 10; i++) {
+      assertThat(ocrService.extractTextFromImage(image.toFile())).isEmpty();
+    }
+    assertThatThrownBy(() -> ocrService.extractTextFromImage(image.toFile()))
+        .isInstanceOf(DependencyUnavailableException.class);
+    assertThat(requestBodies).hasSize(10);
+  }
+
+  @Test
+  void failsAndKeepsTheInterruptWhenCancelledDuringABackoff() throws IOException {
+    Path image = tempDir.resolve("scan.png");
+    Files.write(image, new byte[] {1, 2, 3});
+    failuresLeft.set(5);
+    OCRService ocrService = client(3);
+
+    Thread.currentThread().interrupt();
+    try {
+      assertThatThrownBy(() -> ocrService.extractTextFromImage(image.toFile()))
+          .isInstanceOf(IllegalStateException.class)
+          .hasCauseInstanceOf(InterruptedException.class);
+      assertThat(Thread.currentThread().isInterrupted()).isTrue();
+    } finally {
+      Thread.interrupted();
+    }
+  }
+}
@@ -0,0 +1,105 @@
+package com.antidoxx.backend;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import io.airlift.compress.zstd.ZstdOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.zip.GZIPOutputStream;
+import org.junit.jupiter.api.Test;
+
+class RequestBodiesTests {
+
+  private static final byte[] TEXT =
+      "mail jane.doe@example.com\ncall (555) 123-4567\n".repeat(100)
+          .getBytes(StandardCharsets.UTF_8);
+
+  @Test
+  void bodyOfExactlyTheLimitPasses() throws IOException {
+    for (String encoding : new String[] {null, "identity", "gzip", "zstd"}) {
+      assertThat(read(encode(TEXT, encoding), encoding, TEXT.length)).as(encoding)
+          .isEqualTo(TEXT);
+    }
+  }
+
+  @Test
+  void bodyOneByteOverTheLimitFails() {
+    for (String encoding : new String[] {null, "gzip", "zstd"}) {
+      assertThatThrownBy(() -> read(encode(TEXT, encoding), encoding, TEXT.length - 1))
+          .as(encoding)
+          .isInstanceOf(RequestBodies.TooLargeException.class);
+    }
+  }
+
+  @Test
+  void gzipBombStopsAtTheLimit() throws IOException {
+    // 256 MiB of zeros compress to about 256 KiB
+    ByteArrayOutputStream bomb = new ByteArrayOutputStream();
+    try (OutputStream out = new GZIPOutputStream(bomb)) {
+      byte[] zeros = new byte[1 << 20];
+      for (int i = 0; i < 256; i++) {
+        out.write(zeros);
+      }
+    }
+    byte[] compressed = bomb.toByteArray();
+    assertThat(compressed.length).isLessThan(1 << 20);
+
+    byte[] buffer = new byte[8192];
+    long[] read = {0};
+    assertThatThrownBy(() -> {
+      try (InputStream in = RequestBodies.decode(new ByteArrayInputStream(compressed), "gzip",
+          1 << 20)) {
+        for (int n; (n = in.read(buffer)) >= 0; ) {
+          read[0] += n;
+        }
+      }
+    }).isInstanceOf(RequestBodies.TooLargeException.class);
+    assertThat(read[0]).isLessThanOrEqualTo(1 << 20);
+  }
+
+  @Test
+  void decodesZstdAndIgnoresCaseOfTheEncoding() throws IOException {
+    assertThat(read(encode(TEXT, "zstd"), " ZSTD ", 1 << 20)).isEqualTo(TEXT);
+    assertThat(read(encode(TEXT, "gzip"), "x-gzip", 1 << 20)).isEqualTo(TEXT);
+    assertThat(RequestBodies.supports("br")).isFalse();
+  }
+
+  @Test
+  void corruptBodiesFailWithIOException() throws IOException {
+    byte[] garbage = "not compressed at all".getBytes(StandardCharsets.US_ASCII);
+    assertThatThrownBy(() -> read(garbage, "gzip", 1 << 20)).isInstanceOf(IOException.class);
+    assertThatThrownBy(() -> read(garbage, "zstd", 1 << 20)).isInstanceOf(IOException.class);
+
+    for (String encoding : new String[] {"gzip", "zstd"}) {
+      byte[] compressed = encode(TEXT, encoding);
+      byte[] truncated = Arrays.copyOf(compressed, compressed.length / 2);
+      assertThatThrownBy(() -> read(truncated, encoding, 1 << 20)).as(encoding)
+          .isInstanceOf(IOException.class);
+    }
+  }
+
+  private static byte[] read(byte[] body, String encoding, long maxBytes) throws IOException {
+    try (InputStream in = RequestBodies.decode(new ByteArrayInputStream(body), encoding,
+        maxBytes)) {
+      return in.readAllBytes();
+    }
+  }
+
+  private static byte[] encode(byte[] content, String encoding) throws IOException {
+    ByteArrayOutputStream encoded = new ByteArrayOutputStream();
+    try (OutputStream out = switch (encoding == null ? "" : encoding) {
+      case "gzip" -> new GZIPOutputStream(encoded);
+      case "zstd" -> new ZstdOutputStream(encoded);
+      default -> encoded;
+    }) {
+      out.write(content);
+    }
+    return encoded.toByteArray();
+  }
+}
@@ -0,0 +1,223 @@
+package com.antidoxx.backend;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class SensitiveInfoDetectorTests {
+
+  private final SensitiveInfoDetector detector = new SensitiveInfoDetector(1 << 20, true);
+
+  @Test
+  void reportsFindingsLineByLineInCategoryOrder() {
+    String text = "contact: jane.doe@example.com or 555-123-4567\n"
+        + "nothing to see here\n"
+        + "ssn 123-45-6789 from 192.168.1.20, card 4111111111111111";
+
+    assertThat(detector.detectSensitiveInfo(text)).containsExactly(
+        "Line 1: Email Address detected -> 'jane.doe@example.com'",
+        "Line 1: Phone Number detected -> '555-123-4567'",
+        "Line 3: Credit Card Number detected -> '4111111111111111'",
+        "Line 3: Social Security Number detected -> '123-45-6789'",
+        "Line 3: IP Address (IPv4) detected -> '192.168.1.20'");
+  }
+
+  @Test
+  void skipsLinesWithoutCandidateCharacters() {
+    List<String> findings = detector.detectSensitiveInfo("no digits\nat all @ here\n\n");
+
+    assertThat(findings).isEmpty();
+  }
+
+  @Test
+  void parallelScanMatchesTheSequentialScan() {
+    String text = mixedLines(6000);
+    SensitiveInfoDetector sequential = new SensitiveInfoDetector(Integer.MAX_VALUE, true);
+    // Splits anything longer than one 64K leaf
+    SensitiveInfoDetector parallel = new SensitiveInfoDetector(1, true);
+
+    Findings expected = sequential.scan(text);
+    assertThat(text.length()).isGreaterThan(4 * 64 * 1024);
+    assertThat(expected.size()).isGreaterThan(1000);
+    assertThat(parallel.scan(text).descriptions()).isEqualTo(expected.descriptions());
+    assertThat(parallel.scan(text).toList()).isEqualTo(expected.toList());
+  }
+
+  @Test
+  void parallelLeavesSplitOnlyAtLineBreaks() {
+    // Lines longer than the leaf size straddle several midpoints, so each split has to
+    // look past them to the next line break
+    String text = mixedLines(300) + "\n\n" + "x".repeat(500) + " 10.0.0.1 " + "y".repeat(500);
+    Findings expected = new SensitiveInfoDetector(Integer.MAX_VALUE, true).scan(text);
+
+    for (int leafSize : new int[] {1, 17, 64, 1000}) {
+      Findings findings = ForkJoinPool.commonPool()
+          .invoke(new ParallelScanTask(text, 0, text.length(), leafSize)).findings();
+      assertThat(findings.descriptions()).as("leaf size %d", leafSize)
+          .isEqualTo(expected.descriptions());
+      assertThat(findings.toList()).as("leaf size %d", leafSize).isEqualTo(expected.toList());
+    }
+  }
+
+  // Lines of varying length, some empty and some long, with findings at varying columns
+  private static String mixedLines(int count) {
+    StringBuilder text = new StringBuilder();
+    for (int i = 0; i < count; i++) {
+      text.append("x".repeat(i % 13));
+      switch (i % 5) {
+        case 0 -> text.append("mail user").append(i).append("@example.com");
+        case 1 -> text.append("call 555-123-").append(1000 + i % 9000);
+        case 2 -> text.append("ip 10.0.").append(i % 256).append('.').append(i % 200 + 1);
+        case 3 -> text.append("filler ".repeat(i % 40));
+        default -> {
+        }
+      }
+      text.append(" and ssn 123-45-6789".repeat(i % 3)).append('\n');
+    }
+    return text.toString();
+  }
+
+  @Test
+  void streamsFilesWithTheSameLineNumbering(@TempDir Path dir) throws IOException {
+    Path file = dir.resolve("notes.txt");
+    Files.writeString(file, "first\r\nmail a@b.io\rthird 10.0.0.1\n");
+
+    assertThat(detector.detectSensitiveInfo(file)).containsExactly(
+        "Line 2: Email Address detected -> 'a@b.io'",
+        "Line 3: IP Address (IPv4) detected -> '10.0.0.1'");
+  }
+
+  @Test
+  void splitsLinesLongerThanTheWindowWithoutLosingMatches() throws IOException {
+    StringBuilder line = new StringBuilder();
+    for (int i = 0; i < 20; i++) {
+      line.append("id ").append(i).append(": user").append(i).append("@example.com, ");
+    }
+    String text = line.toString();
+    List<String> streamed = new ArrayList<>();
+    StreamingScan scan = new StreamingScan((category, lineNumber, column, chars, start, end) ->
+        streamed.add("Line " + lineNumber + ": " + category.displayName + " detected -> '"
+            + chars.subSequence(start, end) + "'"), 64);
+
+    byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+    for (int offset = 0; offset < bytes.length; offset += 7) {
+      scan.feed(ByteBuffer.wrap(bytes, offset, Math.min(7, bytes.length - offset)));
+    }
+    scan.finish();
+
+    assertThat(streamed).hasSize(20).isEqualTo(detector.detectSensitiveInfo(text));
+  }
+
+  @Test
+  void cutsRunsWithoutSeparatorsWithAnOverlap() throws IOException {
+    // Single spaces, dots, dashes and '@' only: no safe place to cut the line
+    StringBuilder line = new StringBuilder();
+    for (int i = 0; i < 600; i++) {
+      switch (i % 5) {
+        case 0 -> line.append("user").append(i).append(".x@example.com");
+        case 1 -> line.append("555-").append(100 + i % 900).append('-').append(1000 + i);
+        case 2 -> line.append("10.0.").append(i % 256).append('.').append(i % 7);
+        case 3 -> line.append("4111111111111111");
+        default -> line.append("abc".repeat(i % 11));
+      }
+      line.append(i % 3 == 0 ? "" : " ");
+    }
+    String text = line + "\nssn 123-45-6789\n" + line;
+
+    for (int windowChars : new int[] {256, 1000, 4096}) {
+      Findings streamed = new Findings();
+      StreamingScan scan = new StreamingScan(streamed, windowChars);
+      byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+      for (int offset = 0; offset < bytes.length; offset += 7) {
+        scan.feed(ByteBuffer.wrap(bytes, offset, Math.min(7, bytes.length - offset)));
+      }
+      scan.finish();
+
+      assertThat(streamed.descriptions()).as("window %d", windowChars)
+          .isEqualTo(detector.detectSensitiveInfo(text));
+      assertThat(streamed.toList()).as("window %d", windowChars)
+          .isEqualTo(detector.scan(text).toList());
+    }
+  }
+
+  @Test
+  void byteScannersMatchTheStreamingScan(@TempDir Path dir) throws IOException {
+    StringBuilder text = new StringBuilder();
+    for (int i = 0; i < 400; i++) {
+      // Vary the offsets so matches and line breaks straddle vector and chunk boundaries
+      text.append("x".repeat(i % 67)).append(" caf\u00e9 ").append(i % 3 == 0 ? "\r\n" : "\n")
+          .append("n\u00b0 ").append(i).append(": user").append(i).append("@example.com 555-123-")
+          .append(1000 + i).append(i % 5 == 0 ? "\r" : "\n")
+          .append("4111111111111111 123-45-6789 ").append("7".repeat(i % 20))
+          .append(" 10.0.").append(i % 256).append(".1 \ud83d\ude00\n");
+    }
+    StringBuilder longLine = new StringBuilder();
+    while (longLine.length() < 200_000) {
+      longLine.append("ref ").append(longLine.length()).append(" mail a").append(longLine.length())
+          .append("@b.io, ");
+    }
+    text.append(longLine).append("\r\ntrailing 192.168.0.1");
+    Path file = dir.resolve("mixed.txt");
+    Files.writeString(file, text, StandardCharsets.UTF_8);
+
+    Findings expected = detector.scanStreaming(file);
+    assertThat(expected.size()).isGreaterThan(1000);
+    for (ByteScanKernel kernel : List.of(new ScalarByteScanKernel(), ByteScanKernel.create(true))) {
+      Findings scanned = new MappedFileScan(kernel).scan(file);
+      assertThat(scanned.descriptions()).isEqualTo(expected.descriptions());
+      assertThat(scanned.toList()).isEqualTo(expected.toList());
+    }
+  }
+
+  @Test
+  void byteScannerRejectsInvalidUtf8(@TempDir Path dir) throws IOException {
+    Path file = dir.resolve("broken.txt");
+    byte[] bytes = "mail a@b.io\nplain text\n".getBytes(StandardCharsets.UTF_8);
+    byte[] broken = new byte[bytes.length + 2];
+    System.arraycopy(bytes, 0, broken, 0, bytes.length);
+    broken[bytes.length] = (byte) 0xC3;
+    broken[bytes.length + 1] = (byte) 0x28;
+    Files.write(file, broken);
+
+    assertThatThrownBy(() -> detector.scanStreaming(file))
+        .isInstanceOf(CharacterCodingException.class);
+    assertThatThrownBy(() -> detector.detectSensitiveInfo(file))
+        .isInstanceOf(CharacterCodingException.class);
+  }
+
+  @Test
+  void redactsFindingsInPlaceOfTheirBytes(@TempDir Path dir) throws IOException {
+    String text = "h\u00e9llo \ud83d\ude00 mail jane.doe@example.com\r\n"
+        + "ssn 123-45-6789, ip 10.0.0.1\rlast 555-123-4567";
+    Path file = Files.writeString(dir.resolve("redact.txt"), text, StandardCharsets.UTF_8);
+    ByteBuffer content = ByteBuffer.wrap(Files.readAllBytes(file));
+
+    Redaction redaction = Redaction.plan(content, detector.scan(content));
+    ByteArrayOutputStream fromMemory = new ByteArrayOutputStream();
+    redaction.writeTo(content, Channels.newChannel(fromMemory));
+    ByteArrayOutputStream fromFile = new ByteArrayOutputStream();
+    try (FileChannel channel = FileChannel.open(file)) {
+      redaction.writeTo(channel, Channels.newChannel(fromFile));
+    }
+
+    assertThat(fromMemory.toString(StandardCharsets.UTF_8)).isEqualTo(
+        "h\u00e9llo \ud83d\ude00 mail [EMAIL]\r\nssn [SSN], ip [IP_ADDRESS]\rlast [PHONE]");
+    assertThat(fromFile.toByteArray()).isEqualTo(fromMemory.toByteArray());
+    assertThat(redaction.count()).isEqualTo(4);
+    assertThat(redaction.redactedSize()).isEqualTo(fromMemory.size());
+  }
+}
@@ -0,0 +1,179 @@
+package com.antidoxx.backend;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.mock.web.MockMultipartFile;
+
+class StorageHandlerTests {
+
+  private static final Logger logger = LoggerFactory.getLogger(StorageHandlerTests.class);
+
+  @TempDir
+  Path tempDir;
+
+  @Test
+  void onlyResolvesFileNamesItIssued() throws IOException {
+    Path outside = Files.writeString(tempDir.resolve("secret.txt"), "secret");
+    StorageHandler storage = new StorageHandler(tempDir.resolve("uploads"), 3600, 1 << 30, 0, 0,
+        false);
+    Path stored = storage.storeFile(new MockMultipartFile("file", "report.pdf",
+        "application/pdf", "%PDF-1.7".getBytes(StandardCharsets.US_ASCII)), logger);
+
+    for (String name : List.of(outside.toString(), "../secret.txt", "..", "blobs",
+        "../x_" + UUID.randomUUID() + ".txt", stored.toString())) {
+      assertThat(storage.fetchFile(name)).as(name).isNull();
+      assertThat(storage.exists(name)).as(name).isFalse();
+      storage.deleteFile(name);
+    }
+    assertThat(outside).exists();
+    assertThat(stored).exists();
+
+    String storedName = stored.getFileName().toString();
+    assertThat(storage.fetchFile(storedName)).isEqualTo(stored);
+    storage.deleteFile(storedName);
+    assertThat(stored).doesNotExist();
+  }
+
+  @Test
+  void deduplicatedUploadsExpireOnTheirOwnTtl() throws Exception {
+    Path directory = tempDir.resolve("uploads");
+    StorageHandler storage = new StorageHandler(directory, 1, 1 << 30, 0, 0, true);
+    byte[] content = "%PDF-1.7 same content".getBytes(StandardCharsets.US_ASCII);
+    Path first = storage.storeFile(new MockMultipartFile("file", "a.pdf", "application/pdf",
+        content), logger);
+    Path stale = Files.createTempFile(directory.resolve("blobs"), "upload", ".tmp");
+    Files.setLastModifiedTime(stale, FileTime.fromMillis(System.currentTimeMillis() - 60_000));
+    Thread.sleep(1100);
+    Path second = storage.storeFile(new MockMultipartFile("file", "b.pdf", "application/pdf",
+        content), logger);
+    Path fresh = Files.createTempFile(directory.resolve("blobs"), "upload", ".tmp");
+
+    storage.cleanUp();
+
+    // The second upload does not keep the first one alive through their shared blob
+    assertThat(first).doesNotExist();
+    assertThat(second).exists().hasBinaryContent(content);
+    assertThat(stale).doesNotExist();
+    assertThat(fresh).exists();
+  }
+
+  @Test
+  void janitorDeletesTheOldestFilesOverTheDiskQuota() throws IOException {
+    StorageHandler storage = new StorageHandler(tempDir.resolve("uploads"), 3600, 25, 0, 0,
+        false);
+    List<Path> stored = new ArrayList<>();
+    for (int i = 0; i < 3; i++) {
+      Path path = storage.storeFile(new MockMultipartFile("file", "report" + i + ".pdf",
+          "application/pdf", ("%PDF-1.7 " + i).getBytes(StandardCharsets.US_ASCII)), logger);
+      Files.setLastModifiedTime(path, FileTime.fromMillis(System.currentTimeMillis()
+          - (3 - i) * 60_000L));
+      stored.add(path);
+    }
+
+    storage.cleanUp();
+
+    // 30 bytes on disk: only the oldest file has to go
+    assertThat(stored.get(0)).doesNotExist();
+    assertThat(stored.get(1)).exists();
+    assertThat(stored.get(2)).exists();
+  }
+
+  @Test
+  void janitorDeletesUploadsOlderThanTheTtl() throws Exception {
+    StorageHandler storage = new StorageHandler(tempDir.resolve("uploads"), 1, 1 << 30, 1024,
+        1024, false);
+    String oldText = storage.storeFile(new MockMultipartFile("file", "old.txt", "text/plain",
+        "old text".getBytes(StandardCharsets.UTF_8)), logger).getFileName().toString();
+    Path oldPdf = storage.storeFile(new MockMultipartFile("file", "old.pdf", "application/pdf",
+        "%PDF-1.7 old".getBytes(StandardCharsets.US_ASCII)), logger);
+    assertThat(storage.fetchInMemory(oldText)).isNotNull();
+    Thread.sleep(1100);
+    String newText = storage.storeFile(new MockMultipartFile("file", "new.txt", "text/plain",
+        "new text".getBytes(StandardCharsets.UTF_8)), logger).getFileName().toString();
+    Path newPdf = storage.storeFile(new MockMultipartFile("file", "new.pdf", "application/pdf",
+        "%PDF-1.7 new".getBytes(StandardCharsets.US_ASCII)), logger);
+
+    storage.cleanUp();
+
+    assertThat(storage.exists(oldText)).isFalse();
+    assertThat(oldPdf).doesNotExist();
+    assertThat(storage.fetchInMemory(newText)).isEqualTo("new text".getBytes(
+        StandardCharsets.UTF_8));
+    assertThat(newPdf).exists();
+  }
+
+  @Test
+  void keepsSmallTextInMemoryWithinItsQuota() throws IOException {
+    StorageHandler storage = new StorageHandler(tempDir.resolve("uploads"), 3600, 1 << 30, 16,
+        15, false);
+    List<Path> stored = new ArrayList<>();
+    for (String content : List.of("ten bytes!", "ten bytes?", "this one is over 16")) {
+      stored.add(storage.storeFile(new MockMultipartFile("file", "notes.txt", "text/plain",
+          content.getBytes(StandardCharsets.UTF_8)), logger));
+    }
+
+    // The second no longer fits in memory beside the first; the third is too large
+    assertThat(storage.fetchInMemory(stored.get(0).getFileName().toString())).isNotNull();
+    assertThat(stored.get(0)).doesNotExist();
+    assertThat(storage.fetchInMemory(stored.get(1).getFileName().toString())).isNull();
+    assertThat(stored.get(1)).hasContent("ten bytes?");
+    assertThat(stored.get(2)).hasContent("this one is over 16");
+
+    storage.deleteFile(stored.get(0).getFileName().toString());
+    Path next = storage.storeFile(new MockMultipartFile("file", "notes.txt", "text/plain",
+        "ten bytes.".getBytes(StandardCharsets.UTF_8)), logger);
+    assertThat(storage.fetchInMemory(next.getFileName().toString())).isNotNull();
+  }
+
+  @Test
+  void janitorDeletesBlobsNoUploadLinksTo() throws IOException {
+    Path directory = tempDir.resolve("uploads");
+    StorageHandler storage = new StorageHandler(directory, 3600, 1 << 30, 0, 0, true);
+    byte[] content = "%PDF-1.7 shared".getBytes(StandardCharsets.US_ASCII);
+    Path first = storage.storeFile(new MockMultipartFile("file", "a.pdf", "application/pdf",
+        content), logger);
+    Path second = storage.storeFile(new MockMultipartFile("file", "b.pdf", "application/pdf",
+        content), logger);
+    Path blob = directory.resolve("blobs").resolve(storage.knownContentHash(
+        first.getFileName().toString()));
+
+    storage.deleteFile(first.getFileName().toString());
+    storage.cleanUp();
+    assertThat(blob).exists();
+    assertThat(second).hasBinaryContent(content);
+
+    storage.deleteFile(second.getFileName().toString());
+    storage.cleanUp();
+    assertThat(blob).doesNotExist();
+  }
+
+  @Test
+  void deduplicatedUploadsCountOnceAgainstTheDiskQuota() throws IOException {
+    StorageHandler storage = new StorageHandler(tempDir.resolve("uploads"), 3600, 25, 0, 0,
+        true);
+    List<Path> stored = new ArrayList<>();
+    for (String content : List.of("%PDF-1.7 a", "%PDF-1.7 a", "%PDF-1.7 a", "%PDF-1.7 b")) {
+      stored.add(storage.storeFile(new MockMultipartFile("file", "report.pdf",
+          "application/pdf", content.getBytes(StandardCharsets.US_ASCII)), logger));
+    }
+
+    storage.cleanUp();
+
+    // Two distinct contents of 10 bytes each fit in 25 bytes
+    for (Path path : stored) {
+      assertThat(path).exists();
+    }
+  }
+}
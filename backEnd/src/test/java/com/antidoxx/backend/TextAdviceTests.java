@@ -0,0 +1,50 @@
+package com.antidoxx.backend;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.nio.charset.StandardCharsets;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.ResultActions;
+
+// Without the cache, both requests are analyzed rather than one answering the other
+@SpringBootTest(properties = {"gemini.base-url=http://127.0.0.1:9", "gemini.api-key=test-key",
+    "analysis.deadline-ms=1000", "analysis-cache.max-weight=0"})
+@AutoConfigureMockMvc
+class TextAdviceTests {
+
+  @Autowired
+  MockMvc mockMvc;
+
+  @Autowired
+  ObjectMapper objectMapper;
+
+  @Test
+  void postAndGetFindTheSameInCrlfText() throws Exception {
+    String text = "ssn 123-45-6789\r\nmail jane.doe@example.com\rcall (555) 123-4567\r\n"
+        + "\r\ncard 4111 1111 1111 1111\r\n";
+
+    JsonNode fromGet = findings(mockMvc.perform(get("/text-advice").param("text", text)));
+    JsonNode fromPost = findings(mockMvc.perform(post("/text-advice")
+        .contentType(MediaType.TEXT_PLAIN)
+        .content(text.getBytes(StandardCharsets.UTF_8))));
+
+    assertThat(fromGet).isNotEmpty();
+    assertThat(fromPost).isEqualTo(fromGet);
+  }
+
+  private JsonNode findings(ResultActions actions) throws Exception {
+    String body = actions.andExpect(status().isOk()).andReturn().getResponse()
+        .getContentAsString(StandardCharsets.UTF_8);
+    return objectMapper.readTree(body).get("findings");
+  }
+}
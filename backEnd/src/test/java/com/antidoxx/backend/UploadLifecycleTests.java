@@ -0,0 +1,74 @@
+package com.antidoxx.backend;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.multipart;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.nio.charset.StandardCharsets;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+
+// Gemini points at a closed port, so analyses finish degraded with the regex findings only
+@SpringBootTest(properties = {"gemini.base-url=http://127.0.0.1:9", "gemini.api-key=test-key",
+    "analysis.deadline-ms=1000"})
+@AutoConfigureMockMvc
+class UploadLifecycleTests {
+
+  @Autowired
+  MockMvc mockMvc;
+
+  @Autowired
+  ObjectMapper objectMapper;
+
+  @Test
+  void uploadCanBeRedactedAfterItWasAnalyzed() throws Exception {
+    MockMultipartFile file = new MockMultipartFile("file", "notes.txt", "text/plain",
+        "mail jane.doe@example.com\n".getBytes(StandardCharsets.UTF_8));
+    String body = mockMvc.perform(multipart("/upload-file").file(file))
+        .andExpect(status().isOk())
+        .andReturn().getResponse().getContentAsString();
+    String filename = objectMapper.readTree(body).get("filename").asText();
+
+    for (int i = 0; i < 2; i++) {
+      mockMvc.perform(get("/file-advice").param("filename", filename))
+          .andExpect(status().isOk())
+          .andExpect(jsonPath("$.code").value(0))
+          .andExpect(jsonPath("$.findings[0].category").value("EMAIL"));
+    }
+
+    MvcResult redacted = mockMvc.perform(get("/redacted-file").param("filename", filename))
+        .andExpect(request().asyncStarted())
+        .andReturn();
+    mockMvc.perform(asyncDispatch(redacted))
+        .andExpect(status().isOk())
+        .andExpect(content().string("mail [EMAIL]\n"));
+    assertThat(redacted.getResponse().getHeader("X-Redactions")).isEqualTo("1");
+  }
+
+  @Test
+  void uploadScanGoesByTheFileTypeRatherThanTheContentType() throws Exception {
+    byte[] mail = "mail jane.doe@example.com\n".getBytes(StandardCharsets.UTF_8);
+    MockMultipartFile text = new MockMultipartFile("file", "notes.txt",
+        "application/octet-stream", mail);
+    mockMvc.perform(multipart("/upload-file").file(text).param("scan", "true"))
+        .andExpect(status().isOk())
+        .andExpect(jsonPath("$.findings[0].category").value("EMAIL"));
+
+    MockMultipartFile pdf = new MockMultipartFile("file", "report.pdf", "text/plain",
+        "%PDF-1.7 mail jane.doe@example.com".getBytes(StandardCharsets.US_ASCII));
+    mockMvc.perform(multipart("/upload-file").file(pdf).param("scan", "true"))
+        .andExpect(status().isOk())
+        .andExpect(jsonPath("$.findings").doesNotExist());
+  }
+}
@@ -8,6 +8,21 @@ function URLfy(path) {
     return URL + path;
 }
 
+// Pastes at least this long are gzip-compressed before they are sent
+const COMPRESS_TEXT_CHARS = 16 * 1024;
+
+// The text goes in the request body, so long pastes are not limited by URL length
+async function textRequest(text) {
+    const headers = { 'Content-Type': 'text/plain; charset=utf-8' };
+    let body = text;
+    if (text.length >= COMPRESS_TEXT_CHARS && typeof CompressionStream !== 'undefined') {
+        const compressed = new Blob([text]).stream().pipeThrough(new CompressionStream('gzip'));
+        body = await new Response(compressed).arrayBuffer();
+        headers['Content-Encoding'] = 'gzip';
+    }
+    return { method: 'POST', headers, body };
+}
+
 function displayFormattedResponse(message) {
     const responsePanel = document.getElementById('response-panel');
 
@@ -115,7 +130,7 @@ document.addEventListener('DOMContentLoaded', () => {
 
         let uploadResponse;
         try {
-            uploadResponse = await fetch(URLfy('/upload-file'), { // **Replace with your backend URL**
+            uploadResponse = await fetch(URLfy('/upload-file?scan=true'), { // **Replace with your backend URL**
                 method: 'POST',
                 // When using FormData, the 'Content-Type' header 
                 // is automatically set correctly by the browser, 
@@ -192,12 +207,7 @@ document.addEventListener('DOMContentLoaded', () => {
         loader.classList.remove('active');
         try {
             // **Replace with your backend URL for text submission**
-            const response = await fetch(URLfy(`/text-advice?text=${encodeURIComponent(text)}`), {
-                method: 'GET',
-                headers: {
-                    'Content-Type': 'application/json',
-                }
-            });
+            const response = await fetch(URLfy('/text-advice'), await textRequest(text));
 
             if (response.ok) {
                 let result;